@@ -0,0 +1,27 @@
+package benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the GC profiler attached, so every result reports allocation rates
+ * (gc.alloc.rate.norm is bytes allocated per operation) next to throughput.
+ *
+ * With no arguments every benchmark in this package runs. Otherwise each argument is a regular
+ * expression selecting benchmarks, e.g. "GenerationBenchmark.draw.*".
+ */
+public class BenchmarkRunner {
+    public static void main(String[] args) throws RunnerException {
+        ChainedOptionsBuilder options = new OptionsBuilder().addProfiler(GCProfiler.class);
+        if (args.length == 0) {
+            options.include(BenchmarkRunner.class.getPackageName() + ".*");
+        }
+        for (String pattern : args) {
+            options.include(pattern);
+        }
+        new Runner(options.build()).run();
+    }
+}
@@ -0,0 +1,90 @@
+package benchmarks;
+
+import core.DistanceField;
+import core.GeneratedWorld;
+import core.PathFinder;
+import core.WorldGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import tileengine.TileGrid;
+import tileengine.Tileset;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks keeping the avatar's distance field up to date as the avatar steps back and forth,
+ * against recomputing it, and reading an NPC's next step from it. Compare nextStep with
+ * {@link PathFinderBenchmark#nextStep()}, which searches for the same move.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Thread)
+public class DistanceFieldBenchmark {
+    @Param({"1", "42", "987654321"})
+    public long seed;
+
+    @Param({"70x45", "280x180"})
+    public String size;
+
+    private TileGrid world;
+    private DistanceField field;
+    private int[] oski;
+    private int[] avatar;
+    private int[] other; // A grass cell next to the avatar to step to
+    private boolean stepped;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        String[] parts = size.split("x");
+        GeneratedWorld generated = WorldGenerator.generate(seed, Integer.parseInt(parts[0]),
+                Integer.parseInt(parts[1]));
+        world = generated.getGrid();
+        oski = generated.getOskiPosition();
+        avatar = generated.getAvatarPosition();
+        int[][] moves = {{1, 0}, {-1, 0}, {0, 1}, {0, -1}};
+        for (int[] move : moves) {
+            int x = avatar[0] + move[0];
+            int y = avatar[1] + move[1];
+            if (world.isValid(x, y) && world.get(x, y) == Tileset.GRASS) {
+                other = new int[]{x, y};
+                break;
+            }
+        }
+        field = new DistanceField(world, PathFinder.GRASS, avatar[0], avatar[1]);
+    }
+
+    @Benchmark
+    public int step() {
+        int[] from = stepped ? other : avatar;
+        int[] to = stepped ? avatar : other;
+        stepped = !stepped;
+        world.set(from[0], from[1], Tileset.GRASS);
+        world.set(to[0], to[1], Tileset.AVATAR);
+        field.moveSource(to[0], to[1]);
+        return field.distance(oski[0], oski[1]);
+    }
+
+    @Benchmark
+    public int recompute() {
+        field.recompute();
+        return field.distance(oski[0], oski[1]);
+    }
+
+    @Benchmark
+    public int nextStep() {
+        return field.nextStep(oski[0], oski[1]);
+    }
+}
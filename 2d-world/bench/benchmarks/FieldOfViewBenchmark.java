@@ -0,0 +1,65 @@
+package benchmarks;
+
+import core.FieldOfView;
+import core.WalkableIndex;
+import core.WorldGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import tileengine.TileGrid;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks computing the field of view after a move, from grass cells spread over a large
+ * generated world. The cost should depend on the radius only.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Thread)
+public class FieldOfViewBenchmark {
+    @Param({"280x180", "1024x1024"})
+    public String size;
+
+    @Param({"8", "16"})
+    public int radius;
+
+    private FieldOfView fieldOfView;
+    private int[][] positions;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        String[] parts = size.split("x");
+        TileGrid world = WorldGenerator.generate(42, Integer.parseInt(parts[0]),
+                Integer.parseInt(parts[1])).getGrid();
+        fieldOfView = new FieldOfView(world, radius);
+        WalkableIndex walkable = WalkableIndex.of(world);
+        Random random = new Random(42);
+        positions = new int[1024][];
+        for (int i = 0; i < positions.length; i++) {
+            positions[i] = walkable.pick(random);
+        }
+    }
+
+    @Benchmark
+    public int compute() {
+        int[] position = positions[next];
+        next = (next + 1) % positions.length;
+        fieldOfView.compute(position[0], position[1]);
+        return fieldOfView.visibleCount();
+    }
+}
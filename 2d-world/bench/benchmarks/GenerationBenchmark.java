@@ -0,0 +1,172 @@
+package benchmarks;
+
+import core.ParallelWorldGenerator;
+import core.World;
+import core.WorldGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import tileengine.TileGrid;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks world generation end to end and one pass at a time.
+ *
+ * Every pass changes the map it runs on, so each per-pass benchmark has its own state that
+ * replays the earlier passes before every invocation. That setup is not part of the measured time.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class GenerationBenchmark {
+    private static final int ROOMS = 1;
+    private static final int LINES = 2;
+    private static final int WALLS = 3;
+    private static final int ITEMS = 4;
+
+    /**
+     * The seed and world size shared by every benchmark in this class.
+     */
+    @State(Scope.Benchmark)
+    public static class WorldParams {
+        @Param({"1", "42", "987654321"})
+        public long seed;
+
+        @Param({"70x45", "280x180", "2048x2048"})
+        public String size;
+
+        int width;
+        int height;
+
+        @Setup(Level.Trial)
+        public void parseSize() {
+            String[] parts = size.split("x");
+            width = Integer.parseInt(parts[0]);
+            height = Integer.parseInt(parts[1]);
+        }
+    }
+
+    /**
+     * A fresh generator and map with the first passesDone passes already applied.
+     */
+    public abstract static class Stage {
+        WorldGenerator generator;
+        TileGrid world;
+
+        void prepare(WorldParams params, int passesDone) {
+            generator = new WorldGenerator(params.seed, params.width, params.height);
+            world = generator.emptyWorld();
+            if (passesDone >= ROOMS) {
+                generator.drawRooms(world, WorldGenerator.ROOM_MIN, WorldGenerator.ROOM_MAX);
+            }
+            if (passesDone >= LINES) {
+                generator.drawLines(world);
+            }
+            if (passesDone >= WALLS) {
+                generator.drawWalls(world);
+            }
+            if (passesDone >= ITEMS) {
+                generator.placeItems(world);
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class BeforeRooms extends Stage {
+        @Setup(Level.Invocation)
+        public void setUp(WorldParams params) {
+            prepare(params, 0);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class BeforeLines extends Stage {
+        @Setup(Level.Invocation)
+        public void setUp(WorldParams params) {
+            prepare(params, ROOMS);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class BeforeWalls extends Stage {
+        @Setup(Level.Invocation)
+        public void setUp(WorldParams params) {
+            prepare(params, LINES);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class BeforeItems extends Stage {
+        @Setup(Level.Invocation)
+        public void setUp(WorldParams params) {
+            prepare(params, WALLS);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class BeforeOski extends Stage {
+        @Setup(Level.Invocation)
+        public void setUp(WorldParams params) {
+            prepare(params, ITEMS);
+        }
+    }
+
+    @Benchmark
+    public Object generateWorld(WorldParams params) {
+        return WorldGenerator.generate(params.seed, params.width, params.height);
+    }
+
+    @Benchmark
+    public Object generateWorldParallel(WorldParams params) {
+        return ParallelWorldGenerator.generate(params.seed, params.width, params.height);
+    }
+
+    @Benchmark
+    public TileGrid worldGenerateWorld(WorldParams params) {
+        TileGrid world = new TileGrid(params.width, params.height);
+        new World().generateWorld(world, params.seed);
+        return world;
+    }
+
+    @Benchmark
+    public TileGrid drawRooms(BeforeRooms stage) {
+        stage.generator.drawRooms(stage.world, WorldGenerator.ROOM_MIN, WorldGenerator.ROOM_MAX);
+        return stage.world;
+    }
+
+    @Benchmark
+    public TileGrid drawLines(BeforeLines stage) {
+        stage.generator.drawLines(stage.world);
+        return stage.world;
+    }
+
+    @Benchmark
+    public TileGrid drawWalls(BeforeWalls stage) {
+        stage.generator.drawWalls(stage.world);
+        return stage.world;
+    }
+
+    @Benchmark
+    public TileGrid placeItems(BeforeItems stage) {
+        stage.generator.placeItems(stage.world);
+        return stage.world;
+    }
+
+    @Benchmark
+    public TileGrid spawnOski(BeforeOski stage) {
+        stage.generator.spawnOski(stage.world);
+        return stage.world;
+    }
+}
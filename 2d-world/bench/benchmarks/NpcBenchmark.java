@@ -0,0 +1,78 @@
+package benchmarks;
+
+import core.DistanceField;
+import core.GeneratedWorld;
+import core.NpcStore;
+import core.NpcSystems;
+import core.PathFinder;
+import core.WalkableIndex;
+import core.WorldGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import tileengine.TileGrid;
+import tileengine.Tileset;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks one tick of the NPC systems on a large generated world, for a number of NPCs and
+ * threads, to see how the systems scale across cores.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Thread)
+public class NpcBenchmark {
+    @Param({"10000", "100000"})
+    public int npcCount;
+
+    @Param({"1", "4"})
+    public int threads;
+
+    private TileGrid world;
+    private DistanceField avatarDistances;
+    private NpcStore npcs;
+    private ForkJoinPool pool;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        GeneratedWorld generated = WorldGenerator.generate(42, 1024, 1024);
+        world = generated.getGrid();
+        int[] avatar = generated.getAvatarPosition();
+        avatarDistances = new DistanceField(world, PathFinder.GRASS, avatar[0], avatar[1]);
+        WalkableIndex walkable = WalkableIndex.of(world);
+        Random random = new Random(42);
+        npcs = new NpcStore();
+        for (int i = 0; i < npcCount; i++) {
+            int[] spawn = walkable.pick(random);
+            npcs.add(Tileset.OSKI, spawn[0], spawn[1], WorldGenerator.subSeed(42, i, 0));
+        }
+        pool = new ForkJoinPool(threads);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public int tick() {
+        NpcSystems.tick(npcs, world, avatarDistances, pool);
+        return npcs.x(0);
+    }
+}
@@ -0,0 +1,71 @@
+package benchmarks;
+
+import core.GeneratedWorld;
+import core.HierarchicalPathFinder;
+import core.PathFinder;
+import core.WorldGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import tileengine.TileGrid;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks A* from Oski to the avatar on a generated world, and the hierarchical search of the
+ * same route. Run with the GC profiler (see {@link BenchmarkRunner}) to check that nextStep
+ * allocates nothing per search.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Thread)
+public class PathFinderBenchmark {
+    @Param({"1", "42", "987654321"})
+    public long seed;
+
+    @Param({"70x45", "280x180", "1024x1024"})
+    public String size;
+
+    private TileGrid world;
+    private HierarchicalPathFinder routes;
+    private int[] from;
+    private int[] to;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        String[] parts = size.split("x");
+        GeneratedWorld generated = WorldGenerator.generate(seed, Integer.parseInt(parts[0]),
+                Integer.parseInt(parts[1]));
+        world = generated.getGrid();
+        from = generated.getOskiPosition();
+        to = generated.getAvatarPosition();
+        routes = new HierarchicalPathFinder(world, PathFinder.GRASS);
+    }
+
+    @Benchmark
+    public int[] findPath() {
+        return PathFinder.findPath(world, from[0], from[1], to[0], to[1], PathFinder.GRASS);
+    }
+
+    @Benchmark
+    public int nextStep() {
+        return PathFinder.nextStep(world, from[0], from[1], to[0], to[1], PathFinder.GRASS);
+    }
+
+    @Benchmark
+    public HierarchicalPathFinder.Route findRoute() {
+        return routes.findRoute(from[0], from[1], to[0], to[1]);
+    }
+}
@@ -0,0 +1,90 @@
+package benchmarks;
+
+import core.WorldGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import tileengine.MappedTileStore;
+import tileengine.TERenderer;
+import tileengine.TETile;
+import tileengine.TileGrid;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks drawing a whole generated world with {@link TERenderer#drawTiles} onto an
+ * offscreen image, so it runs without a display. The world is drawn from a tile array, a
+ * TileGrid, and a MappedTileStore in a temporary file.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Thread)
+public class RenderBenchmark {
+    @Param({"1", "42", "987654321"})
+    public long seed;
+
+    @Param({"70x45", "280x180"})
+    public String size;
+
+    private TETile[][] world;
+    private TileGrid grid;
+    private Path mappedFile;
+    private MappedTileStore mapped;
+    private TERenderer renderer;
+    private BufferedImage target;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        String[] parts = size.split("x");
+        int width = Integer.parseInt(parts[0]);
+        int height = Integer.parseInt(parts[1]);
+        grid = WorldGenerator.generate(seed, width, height).getGrid();
+        world = grid.toArray();
+        mappedFile = Files.createTempFile("render-bench", ".map");
+        Files.delete(mappedFile);
+        mapped = MappedTileStore.copyOf(mappedFile, grid);
+        renderer = new TERenderer();
+        target = TERenderer.createOffscreenTarget(width, height);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        mapped.close();
+        Files.deleteIfExists(mappedFile);
+    }
+
+    @Benchmark
+    public BufferedImage drawTiles() {
+        renderer.drawTiles(world, target);
+        return target;
+    }
+
+    @Benchmark
+    public BufferedImage drawTilesGrid() {
+        renderer.drawTiles(grid, target);
+        return target;
+    }
+
+    @Benchmark
+    public BufferedImage drawTilesMapped() {
+        renderer.drawTiles(mapped, target);
+        return target;
+    }
+}
@@ -0,0 +1,75 @@
+package benchmarks;
+
+import core.SaveState;
+import core.World;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks saving a started game to disk and loading it back. Each fork writes to its own
+ * temporary file. SaveState reports every save and load on stdout, so stdout is silenced while
+ * the benchmark runs.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Thread)
+public class SaveStateBenchmark {
+    @Param({"1", "42", "987654321"})
+    public long seed;
+
+    @Param({"70x45", "280x180"})
+    public String size;
+
+    private World world;
+    private Path saveFile;
+    private PrintStream stdout;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        String[] parts = size.split("x");
+        world = new World();
+        world.startGame(seed, Integer.parseInt(parts[0]), Integer.parseInt(parts[1]));
+        saveFile = Files.createTempFile("save-bench", ".bin");
+        stdout = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        SaveState.saveGame(world, saveFile.toString());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        System.setOut(stdout);
+        Files.deleteIfExists(saveFile);
+    }
+
+    @Benchmark
+    public World saveGame() {
+        SaveState.saveGame(world, saveFile.toString());
+        return world;
+    }
+
+    @Benchmark
+    public World loadGame() {
+        return SaveState.loadGame(saveFile.toString());
+    }
+}
@@ -0,0 +1,113 @@
+package benchmarks;
+
+import core.SessionServer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * A load test of the session server over loopback: a number of clients start a game each and
+ * then sit idle, while one more client sends a move at a time and waits for the answer. Each
+ * idle session holds two sockets in this process, so the file descriptor limit (ulimit -n) must
+ * be over twice the number of sessions.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Benchmark)
+public class SessionServerBenchmark {
+    @Param({"0", "1000", "5000"})
+    public int idleSessions;
+
+    private SessionServer server;
+    private Thread acceptor;
+    private Path directory;
+    private final List<Socket> clients = new ArrayList<>();
+    private BufferedReader in;
+    private PrintWriter out;
+    private boolean right;
+    private PrintStream stdout;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        stdout = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        directory = Files.createTempDirectory("session-bench");
+        server = new SessionServer(0, directory);
+        acceptor = new Thread(server::serve);
+        acceptor.start();
+
+        List<BufferedReader> idle = new ArrayList<>();
+        for (int i = 0; i < idleSessions; i++) {
+            idle.add(connect("n" + i + "s"));
+        }
+        for (BufferedReader reader : idle) {
+            reader.readLine();
+        }
+        in = connect("n42s");
+        in.readLine();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException, InterruptedException {
+        for (Socket client : clients) {
+            client.close();
+        }
+        server.close();
+        acceptor.join();
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(file);
+            }
+        }
+        System.setOut(stdout);
+    }
+
+    /**
+     * Sends one line of keys and waits for the session's status.
+     */
+    @Benchmark
+    public String roundTrip() throws IOException {
+        right = !right;
+        out.println(right ? "d" : "a");
+        return in.readLine();
+    }
+
+    private BufferedReader connect(String firstLine) throws IOException {
+        Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.port());
+        socket.setTcpNoDelay(true);
+        clients.add(socket);
+        out = new PrintWriter(socket.getOutputStream(), true, StandardCharsets.UTF_8);
+        out.println(firstLine);
+        return new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,67 @@
+package benchmarks;
+
+import core.WorldGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import tileengine.TETile;
+import tileengine.TileGrid;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the static helpers on {@link TETile} that walk a whole tile array, next to the
+ * same operations on a {@link TileGrid}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Thread)
+public class TileArrayBenchmark {
+    @Param({"1", "42", "987654321"})
+    public long seed;
+
+    @Param({"70x45", "280x180"})
+    public String size;
+
+    private TETile[][] world;
+    private TileGrid grid;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        String[] parts = size.split("x");
+        grid = WorldGenerator.generate(seed, Integer.parseInt(parts[0]), Integer.parseInt(parts[1])).getGrid();
+        world = grid.toArray();
+    }
+
+    @Benchmark
+    public String tilesToString() {
+        return TETile.toString(world);
+    }
+
+    @Benchmark
+    public TETile[][] copyOf() {
+        return TETile.copyOf(world);
+    }
+
+    @Benchmark
+    public String gridToString() {
+        return grid.toString();
+    }
+
+    @Benchmark
+    public TileGrid gridCopy() {
+        return grid.copy();
+    }
+}
@@ -1,6 +1,6 @@
 package core;
 
-import tileengine.TETile;
+import tileengine.TileStore;
 import tileengine.Tileset;
 import java.io.Serializable;
 
@@ -64,32 +64,33 @@ public class Avatar implements Serializable {
 
     /**
      * Moves the avatar based on the given input character.
-     * The movement is controlled using WASD keys for directional movement and 'e' for interaction.
+     * The movement is controlled using WASD keys for directional movement and 'e' for interaction,
+     * in either case.
      *
      * @param input The character input for movement or interaction.
      * @param tileMap The tile map representing the game world.
      */
-    public void move(char input, TETile[][] tileMap) {
-        int width = tileMap.length;
-        int height = tileMap[0].length;
-        switch (input) {
+    public void move(char input, TileStore tileMap) {
+        int width = tileMap.width();
+        int height = tileMap.height();
+        switch (Character.toLowerCase(input)) {
             case 'w':
-                if (y + 1 < height && tileMap[x][y + 1] == Tileset.GRASS) {
+                if (y + 1 < height && tileMap.is(x, y + 1, Tileset.GRASS)) {
                     y += 1; // Move up
                 }
                 break;
             case 's':
-                if (y - 1 >= 0 && tileMap[x][y - 1] == Tileset.GRASS) {
+                if (y - 1 >= 0 && tileMap.is(x, y - 1, Tileset.GRASS)) {
                     y -= 1; // Move down
                 }
                 break;
             case 'a':
-                if (x - 1 >= 0 && tileMap[x - 1][y] == Tileset.GRASS) {
+                if (x - 1 >= 0 && tileMap.is(x - 1, y, Tileset.GRASS)) {
                     x -= 1; // Move left
                 }
                 break;
             case 'd':
-                if (x + 1 < width && tileMap[x + 1][y] == Tileset.GRASS) {
+                if (x + 1 < width && tileMap.is(x + 1, y, Tileset.GRASS)) {
                     x += 1; // Move right
                 }
                 break;
@@ -98,7 +99,9 @@ public class Avatar implements Serializable {
                 this.world.interactWithOski(tileMap); // Add this line for dialogue interaction
                 return;
             default:
-                System.out.println("Invalid input");
+                if (!world.isHeadless()) {
+                    System.out.println("Invalid input");
+                }
                 break;
         }
     }
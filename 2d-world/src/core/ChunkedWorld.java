@@ -0,0 +1,433 @@
+package core;
+
+import tileengine.TETile;
+import tileengine.TileGrid;
+import tileengine.TileStore;
+import tileengine.Tileset;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * An unbounded world split into square chunks of {@link #CHUNK_SIZE} tiles. A chunk is only
+ * generated when something reads or writes one of its tiles, and only the most recently used
+ * chunks are kept in memory. Memory use therefore stays the same however far the player walks,
+ * and starting a world costs one chunk instead of the whole map.
+ *
+ * Every chunk is generated by a {@link WorldGenerator} seeded from (seed, chunkX, chunkY), so the
+ * same chunk always comes out the same. Each edge between two chunks has one doorway, placed from
+ * the seed and the edge, which both chunks connect to their nearest room. A chunk that has
+ * changed since it was generated is written to the chunk directory when it is evicted, and read
+ * back from there instead of being generated again. Chunk files are written under a temporary
+ * name and renamed into place, so a crash leaves either the old chunk or the new one, and a chunk
+ * file that cannot be read anyway is reported and the chunk generated again. A world without a
+ * chunk directory keeps its changed chunks in memory instead, and leaves nothing on disk.
+ *
+ * Tiles are addressed with world coordinates, which may be negative. Oski lives in chunk (0, 0).
+ * The items and Oski in resident chunks are kept in an {@link EntityIndex}. Chunks on disk only
+ * hold tiles, so a chunk's entities are found from its tiles when it is loaded, and dropped from
+ * the index when it is evicted.
+ * A chunked world is not safe to use from more than one thread at once.
+ */
+public class ChunkedWorld {
+    public static final int CHUNK_SIZE = 64;
+    public static final int DEFAULT_RESIDENT_CHUNKS = 32;
+    private static final int CHUNK_MAGIC = 0x32445743; // "2DWC"
+    private static final int CHUNK_VERSION = 1;
+    private static final int CHUNK_HEADER_BYTES = 3 * Integer.BYTES;
+
+    private final long seed;
+    private final Path chunkDirectory;
+    private final Map<Long, Chunk> resident;
+    private final Map<Long, TileGrid> kept = new HashMap<>(); // Changed chunks evicted when there is no chunk directory
+    private final EntityIndex<TETile> entities = new EntityIndex<>();
+    private Chunk lastChunk; // The chunk of the previous access, which is usually the next one too
+
+    /**
+     * Creates a chunked world. Nothing is generated until tiles are used.
+     * @param seed the seed every chunk is derived from.
+     * @param chunkDirectory where changed chunks are written when evicted, or null to keep them in
+     *                       memory.
+     * @param maxResidentChunks how many chunks to keep in memory at most.
+     */
+    public ChunkedWorld(long seed, Path chunkDirectory, int maxResidentChunks) {
+        if (maxResidentChunks < 1) {
+            throw new IllegalArgumentException("must keep at least one chunk: " + maxResidentChunks);
+        }
+        this.seed = seed;
+        this.chunkDirectory = chunkDirectory;
+        this.resident = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Chunk> eldest) {
+                if (size() <= maxResidentChunks) {
+                    return false;
+                }
+                evict(eldest.getValue());
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Get the seed.
+     * @return the seed every chunk is derived from.
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Get the number of chunks in memory.
+     * @return how many chunks are resident.
+     */
+    public int residentChunks() {
+        return resident.size();
+    }
+
+    /**
+     * Get the items and Oski of the resident chunks, by world position. Chunks loaded later add
+     * theirs, and evicted chunks take theirs out.
+     * @return the entity index, with each entity's tile as its value.
+     */
+    public EntityIndex<TETile> entities() {
+        return entities;
+    }
+
+    /**
+     * Returns the id of the tile at a position, loading or generating its chunk if needed.
+     * @param x the x-coordinate in the world.
+     * @param y the y-coordinate in the world.
+     * @return the tile id.
+     */
+    public int getId(int x, int y) {
+        return chunkAt(x, y).tiles.getId(Math.floorMod(x, CHUNK_SIZE), Math.floorMod(y, CHUNK_SIZE));
+    }
+
+    /**
+     * Returns the tile at a position, loading or generating its chunk if needed.
+     * @param x the x-coordinate in the world.
+     * @param y the y-coordinate in the world.
+     * @return the tile.
+     */
+    public TETile get(int x, int y) {
+        return Tileset.byId(getId(x, y));
+    }
+
+    /**
+     * Puts a tile at a position, loading or generating its chunk if needed.
+     * @param x the x-coordinate in the world.
+     * @param y the y-coordinate in the world.
+     * @param tile the tile, which must be registered in Tileset.
+     */
+    public void set(int x, int y, TETile tile) {
+        Chunk chunk = chunkAt(x, y);
+        int localX = Math.floorMod(x, CHUNK_SIZE);
+        int localY = Math.floorMod(y, CHUNK_SIZE);
+        if (!chunk.tiles.is(localX, localY, tile)) {
+            chunk.tiles.set(localX, localY, tile);
+            chunk.dirty = true;
+        }
+    }
+
+    /**
+     * Makes sure the chunks around a position are in memory, so walking nearby does not stop to
+     * generate them. Chunks further away may be evicted to make room.
+     * @param x the x-coordinate in the world.
+     * @param y the y-coordinate in the world.
+     * @param radius how many chunks to load in each direction around the position's chunk.
+     */
+    public void loadAround(int x, int y, int radius) {
+        int centerX = Math.floorDiv(x, CHUNK_SIZE);
+        int centerY = Math.floorDiv(y, CHUNK_SIZE);
+        for (int cy = centerY - radius; cy <= centerY + radius; cy++) {
+            for (int cx = centerX - radius; cx <= centerX + radius; cx++) {
+                chunk(cx, cy);
+            }
+        }
+    }
+
+    /**
+     * Picks a grass tile in chunk (0, 0) from the seed, where a new game starts.
+     * @return the {x, y} world position of the grass tile.
+     */
+    public int[] findSpawn() {
+        return WorldGenerator.findGrass(chunk(0, 0).tiles, seed);
+    }
+
+    /**
+     * Writes every changed chunk in memory to the chunk directory, if there is one.
+     * @throws UncheckedIOException if a chunk cannot be written.
+     */
+    public void flush() {
+        for (Chunk chunk : resident.values()) {
+            if (chunk.dirty) {
+                write(chunk);
+            }
+        }
+    }
+
+    /**
+     * Makes a fixed-size window onto this world that can be moved around, for code that works on
+     * a bounded {@link TileStore} such as the renderer and the avatar.
+     * @param originX the world x-coordinate of the window's bottom left cell.
+     * @param originY the world y-coordinate of the window's bottom left cell.
+     * @param width width of the window in tiles.
+     * @param height height of the window in tiles.
+     * @return the window.
+     */
+    public Window window(int originX, int originY, int width, int height) {
+        return new Window(originX, originY, width, height);
+    }
+
+    /**
+     * Generates one chunk, without reading anything from disk.
+     * @param seed the seed of the world.
+     * @param chunkX the chunk's x-coordinate, in chunks.
+     * @param chunkY the chunk's y-coordinate, in chunks.
+     * @return the chunk's tiles, with (0, 0) at world position (chunkX, chunkY) * CHUNK_SIZE.
+     */
+    public static TileGrid generateChunk(long seed, int chunkX, int chunkY) {
+        WorldGenerator generator = new WorldGenerator(WorldGenerator.subSeed(seed, chunkX, chunkY),
+                CHUNK_SIZE, CHUNK_SIZE);
+        TileGrid tiles = generator.emptyWorld();
+        generator.drawRooms(tiles, WorldGenerator.ROOM_MIN, WorldGenerator.ROOM_MAX);
+        generator.drawLines(tiles);
+        generator.drawDoorways(tiles,
+                WorldGenerator.doorway(seed, true, chunkX, chunkY, CHUNK_SIZE),
+                WorldGenerator.doorway(seed, true, chunkX + 1, chunkY, CHUNK_SIZE),
+                WorldGenerator.doorway(seed, false, chunkX, chunkY, CHUNK_SIZE),
+                WorldGenerator.doorway(seed, false, chunkX, chunkY + 1, CHUNK_SIZE));
+        generator.drawWalls(tiles);
+        generator.placeItems(tiles);
+        if (chunkX == 0 && chunkY == 0) {
+            generator.spawnOski(tiles);
+        }
+        return tiles;
+    }
+
+    private Chunk chunkAt(int x, int y) {
+        return chunk(Math.floorDiv(x, CHUNK_SIZE), Math.floorDiv(y, CHUNK_SIZE));
+    }
+
+    private Chunk chunk(int chunkX, int chunkY) {
+        Chunk last = lastChunk;
+        if (last != null && last.chunkX == chunkX && last.chunkY == chunkY) {
+            return last;
+        }
+        long key = key(chunkX, chunkY);
+        Chunk chunk = resident.get(key);
+        if (chunk == null) {
+            chunk = new Chunk(chunkX, chunkY, load(chunkX, chunkY));
+            indexEntities(chunk);
+            resident.put(key, chunk);
+        }
+        lastChunk = chunk;
+        return chunk;
+    }
+
+    private void evict(Chunk chunk) {
+        if (chunk.dirty) {
+            write(chunk);
+        }
+        if (lastChunk == chunk) {
+            lastChunk = null;
+        }
+        int minX = chunk.chunkX * CHUNK_SIZE;
+        int minY = chunk.chunkY * CHUNK_SIZE;
+        for (int handle : entities.withinRect(minX, minY, minX + CHUNK_SIZE - 1, minY + CHUNK_SIZE - 1)) {
+            entities.remove(handle);
+        }
+    }
+
+    private void indexEntities(Chunk chunk) {
+        for (int y = 0; y < CHUNK_SIZE; y++) {
+            for (int x = 0; x < CHUNK_SIZE; x++) {
+                TETile tile = chunk.tiles.get(x, y);
+                if (tile == Tileset.BEER || tile == Tileset.CLIPPER_CARD || tile == Tileset.OSKI) {
+                    entities.add(tile, chunk.chunkX * CHUNK_SIZE + x, chunk.chunkY * CHUNK_SIZE + y);
+                }
+            }
+        }
+    }
+
+    private static long key(int chunkX, int chunkY) {
+        return ((long) chunkX << 32) | (chunkY & 0xFFFFFFFFL);
+    }
+
+    private Path chunkFile(int chunkX, int chunkY) {
+        return chunkDirectory.resolve("chunk_" + chunkX + "_" + chunkY + ".bin");
+    }
+
+    /**
+     * Reads a chunk written by an earlier eviction, or generates it if there is none or it
+     * cannot be read.
+     */
+    private TileGrid load(int chunkX, int chunkY) {
+        if (chunkDirectory == null) {
+            TileGrid tiles = kept.get(key(chunkX, chunkY));
+            return tiles != null ? tiles : generateChunk(seed, chunkX, chunkY);
+        }
+        Path file = chunkFile(chunkX, chunkY);
+        if (!Files.exists(file)) {
+            return generateChunk(seed, chunkX, chunkY);
+        }
+        try {
+            return read(file);
+        } catch (IOException | IllegalArgumentException e) {
+            System.out.println("Chunk (" + chunkX + ", " + chunkY + ") could not be read, so it is generated again: "
+                    + e.getMessage());
+            return generateChunk(seed, chunkX, chunkY);
+        }
+    }
+
+    private static TileGrid read(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(CHUNK_HEADER_BYTES + 2 * CHUNK_SIZE * CHUNK_SIZE);
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                // keep reading until the buffer is full or the file ends
+            }
+            buffer.flip();
+            if (buffer.remaining() != buffer.capacity() || buffer.getInt() != CHUNK_MAGIC
+                    || buffer.getInt() != CHUNK_VERSION || buffer.getInt() != CHUNK_SIZE) {
+                throw new IllegalArgumentException(file + " is not a chunk of this world");
+            }
+            TileGrid tiles = new TileGrid(CHUNK_SIZE, CHUNK_SIZE);
+            for (int i = 0; i < CHUNK_SIZE * CHUNK_SIZE; i++) {
+                tiles.setId(i, buffer.getShort());
+            }
+            return tiles;
+        }
+    }
+
+    private void write(Chunk chunk) {
+        if (chunkDirectory == null) {
+            kept.put(key(chunk.chunkX, chunk.chunkY), chunk.tiles);
+            chunk.dirty = false;
+            return;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(CHUNK_HEADER_BYTES + 2 * CHUNK_SIZE * CHUNK_SIZE);
+        buffer.putInt(CHUNK_MAGIC).putInt(CHUNK_VERSION).putInt(CHUNK_SIZE);
+        for (int i = 0; i < CHUNK_SIZE * CHUNK_SIZE; i++) {
+            buffer.putShort((short) chunk.tiles.getId(i));
+        }
+        buffer.flip();
+        try {
+            Files.createDirectories(chunkDirectory);
+            SaveJournal.writeAtomically(chunkFile(chunk.chunkX, chunk.chunkY), buffer);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        chunk.dirty = false;
+    }
+
+    /**
+     * One resident chunk and whether it has changed since it was generated or last written.
+     */
+    private static final class Chunk {
+        final int chunkX;
+        final int chunkY;
+        final TileGrid tiles;
+        boolean dirty;
+
+        Chunk(int chunkX, int chunkY, TileGrid tiles) {
+            this.chunkX = chunkX;
+            this.chunkY = chunkY;
+            this.tiles = tiles;
+        }
+    }
+
+    /**
+     * A fixed-size view of part of the chunked world. Position (0, 0) of the window is the world
+     * position (originX, originY), and moving the window shows a different part of the world
+     * without copying anything.
+     */
+    public class Window implements TileStore {
+        private final int width;
+        private final int height;
+        private int originX;
+        private int originY;
+
+        Window(int originX, int originY, int width, int height) {
+            if (width <= 0 || height <= 0) {
+                throw new IllegalArgumentException("window must not be empty: " + width + "x" + height);
+            }
+            this.originX = originX;
+            this.originY = originY;
+            this.width = width;
+            this.height = height;
+        }
+
+        /**
+         * Get the world x-coordinate of the window's bottom left cell.
+         * @return the x-coordinate of the origin.
+         */
+        public int getOriginX() {
+            return originX;
+        }
+
+        /**
+         * Get the world y-coordinate of the window's bottom left cell.
+         * @return the y-coordinate of the origin.
+         */
+        public int getOriginY() {
+            return originY;
+        }
+
+        /**
+         * Moves the window over the world.
+         * @param dx how far to move right, in tiles.
+         * @param dy how far to move up, in tiles.
+         */
+        public void moveBy(int dx, int dy) {
+            originX += dx;
+            originY += dy;
+        }
+
+        @Override
+        public int width() {
+            return width;
+        }
+
+        @Override
+        public int height() {
+            return height;
+        }
+
+        @Override
+        public int getId(int x, int y) {
+            checkBounds(x, y);
+            return ChunkedWorld.this.getId(originX + x, originY + y);
+        }
+
+        @Override
+        public int getId(int index) {
+            return getId(index % width, index / width);
+        }
+
+        @Override
+        public void set(int x, int y, TETile tile) {
+            checkBounds(x, y);
+            ChunkedWorld.this.set(originX + x, originY + y, tile);
+        }
+
+        @Override
+        public void setId(int index, int id) {
+            set(index % width, index / width, Tileset.byId(id));
+        }
+
+        private void checkBounds(int x, int y) {
+            if (!isValid(x, y)) {
+                throw new IndexOutOfBoundsException("(" + x + ", " + y + ") is outside the "
+                        + width + "x" + height + " window");
+            }
+        }
+    }
+}
@@ -0,0 +1,376 @@
+package core;
+
+import tileengine.TileStore;
+
+import java.util.Arrays;
+import java.util.function.IntPredicate;
+
+/**
+ * How many moves every cell of a map is from one source cell, usually the avatar, as an int per
+ * cell. Any number of NPCs can share one field: each reads its next step toward the source from
+ * the four cells around it, instead of running its own search.
+ *
+ * The field is kept up to date incrementally. When the source moves, or a tile changes between
+ * passable and blocked, only the cells whose distance changes are visited: cells that lost the
+ * path their distance came from are cleared in order of their old distance, given the best
+ * distance their remaining neighbours offer, and the improvements are spread outwards in order
+ * of distance, as in Dijkstra's algorithm with unit steps.
+ *
+ * The map must be told about every tile change through {@link #update(int, int)}. A field is not
+ * safe to use from more than one thread at once, but may be read by many NPCs on one thread.
+ */
+public final class DistanceField {
+    /**
+     * The distance of cells the source cannot be reached from.
+     */
+    public static final int UNREACHABLE = Integer.MAX_VALUE;
+
+    private static final int[] DX = {1, -1, 0, 0};
+    private static final int[] DY = {0, 0, 1, -1};
+
+    private final TileStore world;
+    private final IntPredicate passable;
+    private final int width;
+    private final int height;
+    private final int[] distance;
+    private final long[] passableCells; // One bit per cell, read from the map when told it changed
+    private final int[] queue; // Cells waiting to be visited, as a ring
+    private final long[] seeds; // (distance << 32 | cell) of cells that restart a propagation
+    private final int[] cleared; // Cells that lost their distance in the last invalidation
+    private final int[] queuedIn; // The repair that last queued each cell
+    private int repair;
+    private int source;
+
+    /**
+     * Computes the field from a source cell.
+     * @param world the tilemap for world.
+     * @param passable which tile ids can be walked through. The source is always passable.
+     * @param sourceX the x-coordinate of the source.
+     * @param sourceY the y-coordinate of the source.
+     */
+    public DistanceField(TileStore world, IntPredicate passable, int sourceX, int sourceY) {
+        this.world = world;
+        this.passable = passable;
+        this.width = world.width();
+        this.height = world.height();
+        int cells = Math.multiplyExact(width, height);
+        this.distance = new int[cells];
+        this.passableCells = new long[(cells + 63) >>> 6];
+        this.queue = new int[cells];
+        this.seeds = new long[cells];
+        this.cleared = new int[cells];
+        this.queuedIn = new int[cells];
+        this.source = index(sourceX, sourceY);
+        recompute();
+    }
+
+    /**
+     * Reads the whole map again and recomputes every distance from scratch, for when much of the
+     * map changed at once.
+     */
+    public void recompute() {
+        for (int cell = 0; cell < distance.length; cell++) {
+            readTile(cell);
+        }
+        Arrays.fill(distance, UNREACHABLE);
+        distance[source] = 0;
+        seeds[0] = source;
+        propagate(1);
+    }
+
+    /**
+     * Get the distance of a cell from the source.
+     * @param x the x-coordinate.
+     * @param y the y-coordinate.
+     * @return the number of moves, or {@link #UNREACHABLE}.
+     */
+    public int distance(int x, int y) {
+        return distance[index(x, y)];
+    }
+
+    /**
+     * Get the source's position.
+     * @return the {x, y} position of the source.
+     */
+    public int[] getSource() {
+        return new int[]{source % width, source / width};
+    }
+
+    /**
+     * Finds the move toward the source from a cell, which need not be passable itself (an NPC
+     * usually stands on its own tile). Of equally good moves the first of right, left, up and
+     * down is taken.
+     * @param x the x-coordinate.
+     * @param y the y-coordinate.
+     * @return the row-major index of the neighbouring cell to move to, or -1 if the cell is the
+     *         source or no neighbour is nearer to it.
+     */
+    public int nextStep(int x, int y) {
+        int cell = index(x, y);
+        int best = -1;
+        int bestDistance = distance[cell];
+        for (int direction = 0; direction < 4; direction++) {
+            int nx = x + DX[direction];
+            int ny = y + DY[direction];
+            if (nx < 0 || nx >= width || ny < 0 || ny >= height) {
+                continue;
+            }
+            int next = cell + DX[direction] + DY[direction] * width;
+            if (distance[next] < bestDistance) {
+                best = next;
+                bestDistance = distance[next];
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Moves the source, for example after the avatar moved. Only the distances that change are
+     * updated. The map should already show the move, so the old cell is judged by its new tile.
+     * @param x the new x-coordinate of the source.
+     * @param y the new y-coordinate of the source.
+     */
+    public void moveSource(int x, int y) {
+        int oldSource = source;
+        source = index(x, y);
+        if (source == oldSource) {
+            return;
+        }
+        readTile(oldSource);
+        boolean step = distance[source] == 1 && isPassable(oldSource) && isNeighbour(source, oldSource);
+        // Everything nearer the new source first, then whatever leaned on the old one
+        distance[source] = 0;
+        seeds[0] = source;
+        propagate(1);
+        if (step) {
+            raiseByOne(oldSource);
+        } else {
+            invalidate(oldSource);
+        }
+    }
+
+    /**
+     * Updates the field after the tile at a cell changed.
+     * @param x the x-coordinate.
+     * @param y the y-coordinate.
+     */
+    public void update(int x, int y) {
+        int cell = index(x, y);
+        readTile(cell);
+        if (cell == source) {
+            return;
+        }
+        if (isPassable(cell)) {
+            int best = bestFromNeighbours(cell);
+            if (best < distance[cell]) {
+                distance[cell] = best;
+                seeds[0] = (long) best << 32 | cell;
+                propagate(1);
+            }
+        } else if (distance[cell] != UNREACHABLE) {
+            invalidate(cell);
+        }
+    }
+
+    /**
+     * Clears the distances that can no longer be trusted after a cell lost its own (it stopped
+     * being the source, or was blocked), then gives the cleared cells the best distance their
+     * neighbours still offer and spreads it.
+     */
+    private void invalidate(int start) {
+        beginRepair();
+        int clearedCount = 0;
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = start;
+        queuedIn[start] = repair;
+        // Visited in order of old distance, so a cell's supporters are settled before the cell
+        while (head != tail) {
+            int cell = queue[head++];
+            int old = distance[cell];
+            if (old == UNREACHABLE || (isPassable(cell) && isSupported(cell, old))) {
+                continue;
+            }
+            distance[cell] = UNREACHABLE;
+            cleared[clearedCount++] = cell;
+            int x = cell % width;
+            int y = cell / width;
+            for (int direction = 0; direction < 4; direction++) {
+                int nx = x + DX[direction];
+                int ny = y + DY[direction];
+                if (nx < 0 || nx >= width || ny < 0 || ny >= height) {
+                    continue;
+                }
+                int next = cell + DX[direction] + DY[direction] * width;
+                if (distance[next] == old + 1 && queuedIn[next] != repair) {
+                    queuedIn[next] = repair;
+                    queue[tail++] = next;
+                }
+            }
+        }
+
+        int seedCount = 0;
+        for (int i = 0; i < clearedCount; i++) {
+            int cell = cleared[i];
+            if (isPassable(cell)) {
+                int best = bestFromNeighbours(cell);
+                if (best != UNREACHABLE) {
+                    distance[cell] = best;
+                    seeds[seedCount++] = (long) best << 32 | cell;
+                }
+            }
+        }
+        Arrays.sort(seeds, 0, seedCount);
+        propagate(seedCount);
+    }
+
+    /**
+     * Repairs the field after the source moved one step from start, once the cells nearer the new
+     * source have been lowered. A step changes no distance by more than one, so a cell left without
+     * a neighbour one move nearer is one move further than before; raising it may in turn leave
+     * its neighbours without support. Unlike {@link #invalidate(int)} this needs no reseeding.
+     */
+    private void raiseByOne(int start) {
+        beginRepair();
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = start;
+        queuedIn[start] = repair;
+        // Visited in order of old distance, so a cell's supporters are settled before the cell
+        while (head != tail) {
+            int cell = queue[head++];
+            int old = distance[cell];
+            if (isSupported(cell, old)) {
+                continue;
+            }
+            distance[cell] = old + 1;
+            int x = cell % width;
+            int y = cell / width;
+            for (int direction = 0; direction < 4; direction++) {
+                int nx = x + DX[direction];
+                int ny = y + DY[direction];
+                if (nx < 0 || nx >= width || ny < 0 || ny >= height) {
+                    continue;
+                }
+                int next = cell + DX[direction] + DY[direction] * width;
+                if (distance[next] == old + 1 && queuedIn[next] != repair) {
+                    queuedIn[next] = repair;
+                    queue[tail++] = next;
+                }
+            }
+        }
+    }
+
+    /**
+     * Spreads distances outwards from the first count seeds, which must be sorted by distance and
+     * already hold their distance. Seeds and the cells they reach are merged in order of
+     * distance, so every cell is settled the first time it is improved.
+     */
+    private void propagate(int count) {
+        int seed = 0;
+        int head = 0;
+        int tail = 0;
+        int queued = 0; // Cells in the ring, which may wrap around
+        while (seed < count || queued > 0) {
+            int cell;
+            if (queued == 0 || (seed < count && (int) (seeds[seed] >>> 32) <= distance[queue[head]])) {
+                cell = (int) seeds[seed++];
+                if ((int) (seeds[seed - 1] >>> 32) != distance[cell]) {
+                    continue; // Improved since it was seeded
+                }
+            } else {
+                cell = queue[head];
+                head = head + 1 == queue.length ? 0 : head + 1;
+                queued--;
+            }
+            int next = distance[cell] + 1;
+            int x = cell % width;
+            int y = cell / width;
+            for (int direction = 0; direction < 4; direction++) {
+                int nx = x + DX[direction];
+                int ny = y + DY[direction];
+                if (nx < 0 || nx >= width || ny < 0 || ny >= height) {
+                    continue;
+                }
+                int neighbour = cell + DX[direction] + DY[direction] * width;
+                if (distance[neighbour] > next && isPassable(neighbour)) {
+                    distance[neighbour] = next;
+                    queue[tail] = neighbour;
+                    tail = tail + 1 == queue.length ? 0 : tail + 1;
+                    queued++;
+                }
+            }
+        }
+    }
+
+    /**
+     * Starts a new mark for the cells queued by one repair, instead of clearing the marks.
+     */
+    private void beginRepair() {
+        if (++repair == 0) {
+            // The counter wrapped around: old marks could look current again
+            Arrays.fill(queuedIn, 0);
+            repair = 1;
+        }
+    }
+
+    private boolean isNeighbour(int cell, int other) {
+        int dx = Math.abs(cell % width - other % width);
+        int dy = Math.abs(cell / width - other / width);
+        return dx + dy == 1;
+    }
+
+    private boolean isSupported(int cell, int old) {
+        if (cell == source) {
+            return old == 0;
+        }
+        int x = cell % width;
+        int y = cell / width;
+        for (int direction = 0; direction < 4; direction++) {
+            int nx = x + DX[direction];
+            int ny = y + DY[direction];
+            if (nx >= 0 && nx < width && ny >= 0 && ny < height
+                    && distance[cell + DX[direction] + DY[direction] * width] == old - 1) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private int bestFromNeighbours(int cell) {
+        int x = cell % width;
+        int y = cell / width;
+        int best = UNREACHABLE;
+        for (int direction = 0; direction < 4; direction++) {
+            int nx = x + DX[direction];
+            int ny = y + DY[direction];
+            if (nx >= 0 && nx < width && ny >= 0 && ny < height) {
+                int d = distance[cell + DX[direction] + DY[direction] * width];
+                if (d != UNREACHABLE && d + 1 < best) {
+                    best = d + 1;
+                }
+            }
+        }
+        return best;
+    }
+
+    private void readTile(int cell) {
+        if (passable.test(world.getId(cell))) {
+            passableCells[cell >>> 6] |= 1L << cell;
+        } else {
+            passableCells[cell >>> 6] &= ~(1L << cell);
+        }
+    }
+
+    private boolean isPassable(int cell) {
+        return cell == source || (passableCells[cell >>> 6] & (1L << cell)) != 0;
+    }
+
+    private int index(int x, int y) {
+        if (x < 0 || x >= width || y < 0 || y >= height) {
+            throw new IndexOutOfBoundsException("(" + x + ", " + y + ") is outside the "
+                    + width + "x" + height + " map");
+        }
+        return y * width + x;
+    }
+}
@@ -0,0 +1,389 @@
+package core;
+
+import java.util.Arrays;
+import java.util.function.Predicate;
+
+/**
+ * Where the entities of a world are, for finding the ones near a position without looking at the
+ * map. The world is cut into square buckets of {@link #BUCKET_SIZE} cells, and each bucket that
+ * holds an entity keeps a list of them, so a query only visits the buckets its area overlaps.
+ * Buckets are found by their packed position (see {@link ItemIndex#pack(int, int)}) in an
+ * open-addressing hash table, as items are in {@link ItemIndex}, so looking one up allocates
+ * nothing.
+ *
+ * An entity is added with a value saying what it is (for example its tile) and gets a handle, a
+ * small int used to move, remove and read it afterwards. Handles of removed entities are reused.
+ * Distances are measured in moves including diagonals, so the cells within radius 1 of a position
+ * are the 3x3 square around it. Positions may be negative.
+ *
+ * @param <T> what the values of the entities are.
+ */
+public final class EntityIndex<T> {
+    public static final int BUCKET_SIZE = 16;
+    private static final int FREE = Integer.MIN_VALUE; // Bucket slot of a handle that is not in use
+
+    private long[] bucketKeys = new long[16]; // Packed bucket position of each slot of the table
+    private Bucket[] buckets = new Bucket[16]; // The bucket in each slot, or null where free
+    private int bucketCount;
+    private Object[] values = new Object[16];
+    private int[] xs = new int[16];
+    private int[] ys = new int[16];
+    private int[] bucketSlots = new int[16]; // Where each handle is in its bucket, or FREE
+    private int[] freeHandles = new int[16];
+    private int freeCount;
+    private int handleCount; // Handles ever given out
+    private int size;
+
+    /**
+     * Get the number of entities.
+     * @return the number of entities in the index.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Adds an entity.
+     * @param value what the entity is.
+     * @param x the x-coordinate.
+     * @param y the y-coordinate.
+     * @return the entity's handle.
+     */
+    public int add(T value, int x, int y) {
+        int handle;
+        if (freeCount > 0) {
+            handle = freeHandles[--freeCount];
+        } else {
+            handle = handleCount++;
+            if (handle == values.length) {
+                int length = values.length * 2;
+                values = Arrays.copyOf(values, length);
+                xs = Arrays.copyOf(xs, length);
+                ys = Arrays.copyOf(ys, length);
+                bucketSlots = Arrays.copyOf(bucketSlots, length);
+            }
+        }
+        values[handle] = value;
+        xs[handle] = x;
+        ys[handle] = y;
+        insert(handle);
+        size++;
+        return handle;
+    }
+
+    /**
+     * Moves an entity.
+     * @param handle the entity's handle.
+     * @param x the new x-coordinate.
+     * @param y the new y-coordinate.
+     */
+    public void move(int handle, int x, int y) {
+        checkHandle(handle);
+        if (bucketKey(xs[handle], ys[handle]) != bucketKey(x, y)) {
+            unlink(handle);
+            xs[handle] = x;
+            ys[handle] = y;
+            insert(handle);
+        } else {
+            xs[handle] = x;
+            ys[handle] = y;
+        }
+    }
+
+    /**
+     * Removes an entity. Its handle may be given to an entity added later.
+     * @param handle the entity's handle.
+     */
+    public void remove(int handle) {
+        checkHandle(handle);
+        unlink(handle);
+        bucketSlots[handle] = FREE;
+        values[handle] = null;
+        if (freeCount == freeHandles.length) {
+            freeHandles = Arrays.copyOf(freeHandles, freeCount * 2);
+        }
+        freeHandles[freeCount++] = handle;
+        size--;
+    }
+
+    /**
+     * Checks whether a handle belongs to an entity in the index.
+     * @param handle a handle.
+     * @return true if the handle was given out and its entity has not been removed.
+     */
+    public boolean contains(int handle) {
+        return handle >= 0 && handle < handleCount && bucketSlots[handle] != FREE;
+    }
+
+    /**
+     * Get what an entity is.
+     * @param handle the entity's handle.
+     * @return the value it was added with.
+     */
+    @SuppressWarnings("unchecked")
+    public T get(int handle) {
+        checkHandle(handle);
+        return (T) values[handle];
+    }
+
+    /**
+     * Get the x-coordinate of an entity.
+     * @param handle the entity's handle.
+     * @return the x-coordinate.
+     */
+    public int x(int handle) {
+        checkHandle(handle);
+        return xs[handle];
+    }
+
+    /**
+     * Get the y-coordinate of an entity.
+     * @param handle the entity's handle.
+     * @return the y-coordinate.
+     */
+    public int y(int handle) {
+        checkHandle(handle);
+        return ys[handle];
+    }
+
+    /**
+     * Finds the entities within a distance of a position.
+     * @param x the x-coordinate.
+     * @param y the y-coordinate.
+     * @param radius the largest distance, in moves including diagonals.
+     * @return the handles of the entities found, ordered by x-coordinate, then y-coordinate.
+     */
+    public int[] within(int x, int y, int radius) {
+        if (radius < 0) {
+            throw new IllegalArgumentException("radius must not be negative: " + radius);
+        }
+        return withinRect(x - radius, y - radius, x + radius, y + radius);
+    }
+
+    /**
+     * Finds the entities in a rectangle.
+     * @param minX the smallest x-coordinate, inclusive.
+     * @param minY the smallest y-coordinate, inclusive.
+     * @param maxX the largest x-coordinate, inclusive.
+     * @param maxY the largest y-coordinate, inclusive.
+     * @return the handles of the entities found, ordered by x-coordinate, then y-coordinate.
+     */
+    public int[] withinRect(int minX, int minY, int maxX, int maxY) {
+        int[] found = new int[8];
+        int count = 0;
+        for (int by = Math.floorDiv(minY, BUCKET_SIZE); by <= Math.floorDiv(maxY, BUCKET_SIZE); by++) {
+            for (int bx = Math.floorDiv(minX, BUCKET_SIZE); bx <= Math.floorDiv(maxX, BUCKET_SIZE); bx++) {
+                Bucket bucket = buckets[findSlot(ItemIndex.pack(bx, by))];
+                if (bucket == null) {
+                    continue;
+                }
+                for (int i = 0; i < bucket.count; i++) {
+                    int handle = bucket.handles[i];
+                    if (xs[handle] >= minX && xs[handle] <= maxX && ys[handle] >= minY && ys[handle] <= maxY) {
+                        if (count == found.length) {
+                            found = Arrays.copyOf(found, count * 2);
+                        }
+                        found[count++] = handle;
+                    }
+                }
+            }
+        }
+        found = Arrays.copyOf(found, count);
+        sortByPosition(found);
+        return found;
+    }
+
+    /**
+     * Finds the nearest entity to a position whose value passes a filter. Buckets are searched in
+     * rings outwards from the position's bucket, stopping once no unsearched bucket can hold
+     * anything nearer. Of entities at the same distance, the one nearest in a straight line wins,
+     * then the one with the lowest x-coordinate, then the lowest y-coordinate.
+     * @param x the x-coordinate.
+     * @param y the y-coordinate.
+     * @param radius the largest distance, in moves including diagonals.
+     * @param filter which values to consider.
+     * @return the handle of the nearest entity, or -1 if none is within the radius.
+     */
+    public int nearest(int x, int y, int radius, Predicate<? super T> filter) {
+        if (radius < 0) {
+            throw new IllegalArgumentException("radius must not be negative: " + radius);
+        }
+        int centerX = Math.floorDiv(x, BUCKET_SIZE);
+        int centerY = Math.floorDiv(y, BUCKET_SIZE);
+        int maxRing = Math.floorDiv(radius, BUCKET_SIZE) + 1;
+        int best = -1;
+        int bestDistance = radius;
+        for (int ring = 0; ring <= maxRing; ring++) {
+            // Every cell in this ring is at least (ring - 1) * BUCKET_SIZE + 1 moves away
+            if (best != -1 && (ring - 1) * BUCKET_SIZE + 1 > bestDistance) {
+                break;
+            }
+            for (int by = centerY - ring; by <= centerY + ring; by++) {
+                boolean edgeRow = by == centerY - ring || by == centerY + ring;
+                int step = edgeRow ? 1 : 2 * ring;
+                for (int bx = centerX - ring; bx <= centerX + ring; bx += step) {
+                    Bucket bucket = buckets[findSlot(ItemIndex.pack(bx, by))];
+                    if (bucket == null) {
+                        continue;
+                    }
+                    for (int i = 0; i < bucket.count; i++) {
+                        int handle = bucket.handles[i];
+                        int distance = Math.max(Math.abs(xs[handle] - x), Math.abs(ys[handle] - y));
+                        if (distance > bestDistance || (best != -1 && distance == bestDistance
+                                && !nearerInLine(handle, best, x, y))) {
+                            continue;
+                        }
+                        @SuppressWarnings("unchecked")
+                        T value = (T) values[handle];
+                        if (filter.test(value)) {
+                            best = handle;
+                            bestDistance = distance;
+                        }
+                    }
+                }
+            }
+        }
+        return best;
+    }
+
+    private boolean nearerInLine(int handle, int other, int x, int y) {
+        long dx = xs[handle] - x;
+        long dy = ys[handle] - y;
+        long otherDx = xs[other] - x;
+        long otherDy = ys[other] - y;
+        long squared = dx * dx + dy * dy;
+        long otherSquared = otherDx * otherDx + otherDy * otherDy;
+        if (squared != otherSquared) {
+            return squared < otherSquared;
+        }
+        return comparePositions(handle, other) < 0;
+    }
+
+    private int comparePositions(int handle, int other) {
+        int byX = Integer.compare(xs[handle], xs[other]);
+        return byX != 0 ? byX : Integer.compare(ys[handle], ys[other]);
+    }
+
+    /**
+     * Insertion sort, since queries near the avatar find a handful of entities.
+     */
+    private void sortByPosition(int[] handles) {
+        for (int i = 1; i < handles.length; i++) {
+            int handle = handles[i];
+            int j = i - 1;
+            while (j >= 0 && comparePositions(handles[j], handle) > 0) {
+                handles[j + 1] = handles[j];
+                j--;
+            }
+            handles[j + 1] = handle;
+        }
+    }
+
+    private void insert(int handle) {
+        long key = bucketKey(xs[handle], ys[handle]);
+        int tableSlot = findSlot(key);
+        Bucket bucket = buckets[tableSlot];
+        if (bucket == null) {
+            if ((bucketCount + 1) * 2 > buckets.length) {
+                rehash(buckets.length * 2);
+                tableSlot = findSlot(key);
+            }
+            bucket = new Bucket();
+            bucketKeys[tableSlot] = key;
+            buckets[tableSlot] = bucket;
+            bucketCount++;
+        }
+        if (bucket.count == bucket.handles.length) {
+            bucket.handles = Arrays.copyOf(bucket.handles, bucket.count * 2);
+        }
+        bucketSlots[handle] = bucket.count;
+        bucket.handles[bucket.count++] = handle;
+    }
+
+    /**
+     * Takes a handle out of its bucket, moving the bucket's last handle into its slot.
+     */
+    private void unlink(int handle) {
+        int tableSlot = findSlot(bucketKey(xs[handle], ys[handle]));
+        Bucket bucket = buckets[tableSlot];
+        int slot = bucketSlots[handle];
+        int last = bucket.handles[--bucket.count];
+        bucket.handles[slot] = last;
+        bucketSlots[last] = slot;
+        if (bucket.count == 0) {
+            deleteSlot(tableSlot);
+            bucketCount--;
+        }
+    }
+
+    /**
+     * Finds the slot of the table holding a bucket, or the free slot where it would go.
+     */
+    private int findSlot(long key) {
+        int mask = buckets.length - 1;
+        int slot = ItemIndex.hash(key) & mask;
+        while (buckets[slot] != null && bucketKeys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /**
+     * Frees a slot of the table, moving later buckets of the same probe run back so that none of
+     * them is cut off from its home slot.
+     */
+    private void deleteSlot(int slot) {
+        int mask = buckets.length - 1;
+        int hole = slot;
+        int next = (hole + 1) & mask;
+        while (buckets[next] != null) {
+            int home = ItemIndex.hash(bucketKeys[next]) & mask;
+            // Move the bucket into the hole unless its home lies cyclically in (hole, next]
+            boolean reachable = hole <= next ? hole < home && home <= next : hole < home || home <= next;
+            if (!reachable) {
+                bucketKeys[hole] = bucketKeys[next];
+                buckets[hole] = buckets[next];
+                hole = next;
+            }
+            next = (next + 1) & mask;
+        }
+        buckets[hole] = null;
+    }
+
+    private void rehash(int slotCount) {
+        long[] oldKeys = bucketKeys;
+        Bucket[] oldBuckets = buckets;
+        bucketKeys = new long[slotCount];
+        buckets = new Bucket[slotCount];
+        int mask = slotCount - 1;
+        for (int i = 0; i < oldBuckets.length; i++) {
+            if (oldBuckets[i] == null) {
+                continue;
+            }
+            int slot = ItemIndex.hash(oldKeys[i]) & mask;
+            while (buckets[slot] != null) {
+                slot = (slot + 1) & mask;
+            }
+            bucketKeys[slot] = oldKeys[i];
+            buckets[slot] = oldBuckets[i];
+        }
+    }
+
+    private void checkHandle(int handle) {
+        if (!contains(handle)) {
+            throw new IllegalArgumentException("no entity with handle " + handle);
+        }
+    }
+
+    private static long bucketKey(int x, int y) {
+        return ItemIndex.pack(Math.floorDiv(x, BUCKET_SIZE), Math.floorDiv(y, BUCKET_SIZE));
+    }
+
+    /**
+     * The handles of the entities in one bucket, in no particular order.
+     */
+    private static final class Bucket {
+        int[] handles = new int[4];
+        int count;
+    }
+}
@@ -0,0 +1,200 @@
+package core;
+
+import tileengine.TileStore;
+import tileengine.Tileset;
+
+import java.util.Arrays;
+
+/**
+ * What the avatar can see, for fog of war. Sight is worked out with recursive shadowcasting: each
+ * of the eight octants around the viewer is scanned row by row outwards, and a tile that blocks
+ * sight (see {@link Tileset#blocksSight(int)}) narrows the slopes the next rows are scanned
+ * between, so tiles in its shadow are never looked at. Only cells within the sight radius are
+ * visited, so the cost of a move depends on the radius and not on the size of the map.
+ *
+ * Which cells block sight is kept in a bitset made from the map once, and refreshed for the cells
+ * reported through {@link #update(int, int)}. The visible cells are a bitset too, which
+ * {@link tileengine.TERenderer#drawChangedTiles(TileStore, long[])} takes as it is.
+ */
+public final class FieldOfView {
+    public static final int DEFAULT_RADIUS = 10;
+
+    // How each octant's (column, row) maps onto (dx, dy)
+    private static final int[] XX = {1, 0, 0, -1, -1, 0, 0, 1};
+    private static final int[] XY = {0, 1, -1, 0, 0, -1, 1, 0};
+    private static final int[] YX = {0, 1, 1, 0, 0, -1, -1, 0};
+    private static final int[] YY = {1, 0, 0, 1, -1, 0, 0, -1};
+
+    private final TileStore world;
+    private final int width;
+    private final int height;
+    private final int radius;
+    private final long[] opaque; // One bit per cell
+    private final long[] visible; // One bit per cell
+    private int[] visibleCells = new int[64]; // The cells set in visible, to clear them cheaply
+    private int visibleCount;
+    private int originX = -1;
+    private int originY = -1;
+    private boolean stale = true; // Whether a cell in sight changed since the last computation
+
+    /**
+     * Makes a field of view over a map, with nothing visible yet.
+     * @param world the tilemap for world.
+     * @param radius how far can be seen, in tiles.
+     */
+    public FieldOfView(TileStore world, int radius) {
+        if (radius < 0) {
+            throw new IllegalArgumentException("radius must not be negative: " + radius);
+        }
+        this.world = world;
+        this.width = world.width();
+        this.height = world.height();
+        this.radius = radius;
+        int words = (Math.multiplyExact(width, height) + 63) >>> 6;
+        this.opaque = new long[words];
+        this.visible = new long[words];
+        for (int cell = 0; cell < width * height; cell++) {
+            if (Tileset.blocksSight(world.getId(cell))) {
+                opaque[cell >>> 6] |= 1L << cell;
+            }
+        }
+    }
+
+    /**
+     * Works out what can be seen from a position. Nothing is done if the position is the one
+     * last computed and no tile in sight has changed since.
+     * @param x the x-coordinate of the viewer.
+     * @param y the y-coordinate of the viewer.
+     * @return true if the visible cells were computed again.
+     */
+    public boolean compute(int x, int y) {
+        if (!world.isValid(x, y)) {
+            throw new IndexOutOfBoundsException("(" + x + ", " + y + ") is outside the "
+                    + width + "x" + height + " map");
+        }
+        if (!stale && x == originX && y == originY) {
+            return false;
+        }
+        for (int i = 0; i < visibleCount; i++) {
+            int cell = visibleCells[i];
+            visible[cell >>> 6] &= ~(1L << cell);
+        }
+        visibleCount = 0;
+        originX = x;
+        originY = y;
+        stale = false;
+        reveal(x, y);
+        for (int octant = 0; octant < 8; octant++) {
+            castLight(1, 1.0, 0.0, XX[octant], XY[octant], YX[octant], YY[octant]);
+        }
+        return true;
+    }
+
+    /**
+     * Records that the tile at a cell changed, so a change in what blocks sight is seen by the
+     * next {@link #compute}.
+     * @param x the x-coordinate.
+     * @param y the y-coordinate.
+     */
+    public void update(int x, int y) {
+        int cell = y * width + x;
+        boolean blocks = Tileset.blocksSight(world.getId(x, y));
+        if (blocks != ((opaque[cell >>> 6] & (1L << cell)) != 0)) {
+            opaque[cell >>> 6] ^= 1L << cell;
+            if (Math.abs(x - originX) <= radius && Math.abs(y - originY) <= radius) {
+                stale = true;
+            }
+        }
+    }
+
+    /**
+     * Checks whether a cell can be seen.
+     * @param x the x-coordinate.
+     * @param y the y-coordinate.
+     * @return true if the cell was visible in the last computation.
+     */
+    public boolean isVisible(int x, int y) {
+        if (!world.isValid(x, y)) {
+            return false;
+        }
+        int cell = y * width + x;
+        return (visible[cell >>> 6] & (1L << cell)) != 0;
+    }
+
+    /**
+     * Get the number of visible cells.
+     * @return how many cells were visible in the last computation.
+     */
+    public int visibleCount() {
+        return visibleCount;
+    }
+
+    /**
+     * Get the visible cells as a bitset, for the renderer. The array is this field of view's
+     * own and changes with the next computation; it must not be changed.
+     * @return one bit per cell in row-major order, set for the cells that can be seen.
+     */
+    public long[] visibleMask() {
+        return visible;
+    }
+
+    /**
+     * Scans one octant from a row outwards, between two slopes (columns over rows, from 1 at
+     * the diagonal down to 0 straight ahead).
+     */
+    private void castLight(int row, double start, double end, int xx, int xy, int yx, int yy) {
+        if (start < end) {
+            return;
+        }
+        long radiusSquared = (long) radius * radius;
+        double newStart = 0;
+        for (int distance = row; distance <= radius; distance++) {
+            boolean blocked = false;
+            int dy = -distance;
+            for (int dx = -distance; dx <= 0; dx++) {
+                double leftSlope = (dx - 0.5) / (dy + 0.5);
+                double rightSlope = (dx + 0.5) / (dy - 0.5);
+                if (start < rightSlope) {
+                    continue;
+                } else if (end > leftSlope) {
+                    break;
+                }
+                int x = originX + dx * xx + dy * xy;
+                int y = originY + dx * yx + dy * yy;
+                boolean inside = x >= 0 && x < width && y >= 0 && y < height;
+                if (inside && (long) dx * dx + (long) dy * dy <= radiusSquared) {
+                    reveal(x, y);
+                }
+                // Beyond the edge of the map counts as blocking sight
+                boolean blocks = !inside || (opaque[(y * width + x) >>> 6] & (1L << (y * width + x))) != 0;
+                if (blocked) {
+                    if (blocks) {
+                        newStart = rightSlope;
+                    } else {
+                        blocked = false;
+                        start = newStart;
+                    }
+                } else if (blocks && distance < radius) {
+                    blocked = true;
+                    castLight(distance + 1, start, leftSlope, xx, xy, yx, yy);
+                    newStart = rightSlope;
+                }
+            }
+            if (blocked) {
+                break;
+            }
+        }
+    }
+
+    private void reveal(int x, int y) {
+        int cell = y * width + x;
+        long bit = 1L << cell;
+        if ((visible[cell >>> 6] & bit) == 0) {
+            visible[cell >>> 6] |= bit;
+            if (visibleCount == visibleCells.length) {
+                visibleCells = Arrays.copyOf(visibleCells, visibleCount * 2);
+            }
+            visibleCells[visibleCount++] = cell;
+        }
+    }
+}
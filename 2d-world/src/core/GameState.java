@@ -0,0 +1,18 @@
+package core;
+
+/**
+ * The screens the game can be on. {@link World#run(InputSource)} handles input differently
+ * depending on which one is active.
+ */
+public enum GameState {
+    /** The main menu, waiting for N, L, Q or I. */
+    MENU,
+    /** The seed prompt, collecting digits until S. */
+    SEED_ENTRY,
+    /** Walking around the world, simulated in fixed ticks. */
+    PLAYING,
+    /** Talking to Oski, waiting for a choice or showing his answer. */
+    DIALOGUE,
+    /** The final screen, shown for a few seconds before the game ends. */
+    END_SCREEN
+}
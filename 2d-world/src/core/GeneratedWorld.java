@@ -0,0 +1,138 @@
+package core;
+
+import tileengine.TETile;
+import tileengine.TileGrid;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The immutable result of a {@link WorldGenerator} run: the finished tile map together with
+ * where the generator put the hallways, items, Oski and the avatar.
+ *
+ * Every accessor hands out copies, so a generated world can be shared freely between threads.
+ */
+public final class GeneratedWorld {
+    private final long seed;
+    private final TileGrid tiles;
+    private final List<int[]> hallwayCoords;
+    private final List<int[]> alcoholPositions;
+    private final List<int[]> clipperCardPositions;
+    private final int[] oskiPosition;
+    private final int[] avatarPosition;
+
+    GeneratedWorld(long seed, TileGrid tiles, List<int[]> hallwayCoords, List<int[]> alcoholPositions,
+                   List<int[]> clipperCardPositions, int[] oskiPosition, int[] avatarPosition) {
+        this.seed = seed;
+        this.tiles = tiles.copy();
+        this.hallwayCoords = copyPositions(hallwayCoords);
+        this.alcoholPositions = copyPositions(alcoholPositions);
+        this.clipperCardPositions = copyPositions(clipperCardPositions);
+        this.oskiPosition = oskiPosition.clone();
+        this.avatarPosition = avatarPosition.clone();
+    }
+
+    /**
+     * Get the seed this world was generated from.
+     * @return the seed.
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Get the width of the world.
+     * @return width in tiles.
+     */
+    public int getWidth() {
+        return tiles.width();
+    }
+
+    /**
+     * Get the height of the world.
+     * @return height in tiles.
+     */
+    public int getHeight() {
+        return tiles.height();
+    }
+
+    /**
+     * Get a single tile without copying the map.
+     * @param x the x-coordinate.
+     * @param y the y-coordinate.
+     * @return the tile at (x, y).
+     */
+    public TETile getTile(int x, int y) {
+        return tiles.get(x, y);
+    }
+
+    /**
+     * Get a mutable copy of the tile map, with the avatar, Oski and items drawn in.
+     * @return a fresh copy of the tiles.
+     */
+    public TETile[][] getTiles() {
+        return tiles.toArray();
+    }
+
+    /**
+     * Get a mutable copy of the tile map as a grid, with the avatar, Oski and items drawn in.
+     * @return a fresh copy of the grid.
+     */
+    public TileGrid getGrid() {
+        return tiles.copy();
+    }
+
+    /**
+     * Get the hallway anchors, one per room, in the order hallways were drawn between them.
+     * @return a copy of the hallway coordinates.
+     */
+    public List<int[]> getHallwayCoords() {
+        return copyPositions(hallwayCoords);
+    }
+
+    /**
+     * Get the positions of the beers.
+     * @return a copy of the beer positions.
+     */
+    public List<int[]> getAlcoholPositions() {
+        return copyPositions(alcoholPositions);
+    }
+
+    /**
+     * Get the positions of the clipper cards.
+     * @return a copy of the clipper card positions.
+     */
+    public List<int[]> getClipperCardPositions() {
+        return copyPositions(clipperCardPositions);
+    }
+
+    /**
+     * Get Oski's spawn position.
+     * @return a copy of the {x, y} position.
+     */
+    public int[] getOskiPosition() {
+        return oskiPosition.clone();
+    }
+
+    /**
+     * Get the avatar's spawn position.
+     * @return a copy of the {x, y} position.
+     */
+    public int[] getAvatarPosition() {
+        return avatarPosition.clone();
+    }
+
+    /**
+     * Deep copies a list of positions so callers cannot change ours.
+     * @param positions the positions to copy.
+     * @return an unmodifiable deep copy.
+     */
+    static List<int[]> copyPositions(List<int[]> positions) {
+        List<int[]> copy = new ArrayList<>(positions.size());
+        for (int[] pos : positions) {
+            copy.add(pos.clone());
+        }
+        return Collections.unmodifiableList(copy);
+    }
+}
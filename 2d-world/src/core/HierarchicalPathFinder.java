@@ -0,0 +1,608 @@
+package core;
+
+import tileengine.TileStore;
+
+import java.util.Arrays;
+import java.util.function.IntPredicate;
+
+/**
+ * Finds paths over large maps with hierarchical A* (HPA*). The map is cut into square clusters of
+ * {@link #CLUSTER_SIZE} cells. Wherever cells on both sides of the edge between two clusters can
+ * be walked through, the crossing is an entrance: one pair of cells in its middle, or one at each
+ * end if it is wide, like the mouth of a room. Inside each cluster the distances between its
+ * entrances are found once, and a search only walks this small graph of entrances, joined to the
+ * start and goal by searches of their own clusters, instead of every cell in between.
+ *
+ * The route found is a list of entrances. The cells between two of them are only worked out when
+ * the route gets there, and the cells between two entrances of a cluster are cached until the
+ * cluster changes. A route leaves a cluster only through its entrances, so it can be longer than
+ * the one {@link PathFinder} would find, and there is no bound on how much longer. On maps of rooms
+ * and corridors, like the generated worlds, entrances sit in the doorways a shortest path takes
+ * anyway, and routes come out at most about ten moves longer. On open maps with scattered walls a
+ * crossing is often far from the entrance in its middle, and routes can be over a hundred moves
+ * longer; use {@link PathFinder} where a route must be shortest.
+ *
+ * The finder must be told about every tile change through {@link #update(int, int)}. A change only
+ * invalidates the cluster it is in, and the next cluster over if it is on their shared edge; those
+ * are rebuilt when a search next needs them. A finder is not safe to use from more than one thread
+ * at once.
+ */
+public final class HierarchicalPathFinder {
+    public static final int CLUSTER_SIZE = 16;
+    private static final int WIDE_ENTRANCE = 6; // Entrances this wide get a crossing at each end
+    private static final int UNREACHABLE = Integer.MAX_VALUE;
+    private static final int[] DX = {1, -1, 0, 0};
+    private static final int[] DY = {0, 0, 1, -1};
+
+    private final TileStore world;
+    private final IntPredicate passable;
+    private final int width;
+    private final int height;
+    private final int clustersX;
+    private final int clustersY;
+    private final Cluster[] clusters;
+    private final int[] entranceSlots; // Where each cell is among its cluster's entrances, or -1
+    private final int[][] eastCrossings; // Rows where each cluster can be left to the east
+    private final int[][] northCrossings; // Columns where each cluster can be left to the north
+    private final PathFinder.Scratch scratch = new PathFinder.Scratch();
+
+    // One search of a single cluster, indexed by cell within the cluster
+    private final int[] localDistance = new int[CLUSTER_SIZE * CLUSTER_SIZE];
+    private final int[] localParent = new int[CLUSTER_SIZE * CLUSTER_SIZE];
+    private final int[] localQueue = new int[CLUSTER_SIZE * CLUSTER_SIZE];
+
+    /**
+     * Builds the graph of entrances for a map.
+     * @param world the tilemap for world.
+     * @param passable which tile ids can be walked through.
+     */
+    public HierarchicalPathFinder(TileStore world, IntPredicate passable) {
+        this.world = world;
+        this.passable = passable;
+        this.width = world.width();
+        this.height = world.height();
+        this.clustersX = (width + CLUSTER_SIZE - 1) / CLUSTER_SIZE;
+        this.clustersY = (height + CLUSTER_SIZE - 1) / CLUSTER_SIZE;
+        this.clusters = new Cluster[clustersX * clustersY];
+        this.entranceSlots = new int[Math.multiplyExact(width, height)];
+        this.eastCrossings = new int[clusters.length][];
+        this.northCrossings = new int[clusters.length][];
+        Arrays.fill(entranceSlots, -1);
+        for (int cy = 0; cy < clustersY; cy++) {
+            for (int cx = 0; cx < clustersX; cx++) {
+                clusters[cy * clustersX + cx] = new Cluster(cx * CLUSTER_SIZE, cy * CLUSTER_SIZE,
+                        Math.min((cx + 1) * CLUSTER_SIZE, width), Math.min((cy + 1) * CLUSTER_SIZE, height));
+            }
+        }
+        for (int i = 0; i < clusters.length; i++) {
+            findEastCrossings(i);
+            findNorthCrossings(i);
+        }
+        for (Cluster cluster : clusters) {
+            build(cluster);
+        }
+    }
+
+    /**
+     * Get the number of clusters the map is cut into.
+     * @return the number of clusters.
+     */
+    public int clusterCount() {
+        return clusters.length;
+    }
+
+    /**
+     * Updates the graph after the tile at a cell changed. The clusters it affects are rebuilt
+     * when a search next needs them.
+     * @param x the x-coordinate.
+     * @param y the y-coordinate.
+     */
+    public void update(int x, int y) {
+        int index = clusterIndex(x, y);
+        Cluster cluster = clusters[index];
+        invalidate(cluster);
+        // A cell on an edge decides which crossings that edge has, for the clusters on both sides
+        if (x == cluster.minX && x > 0) {
+            findEastCrossings(index - 1);
+            invalidate(clusters[index - 1]);
+        }
+        if (x == cluster.maxX - 1 && x < width - 1) {
+            findEastCrossings(index);
+            invalidate(clusters[index + 1]);
+        }
+        if (y == cluster.minY && y > 0) {
+            findNorthCrossings(index - clustersX);
+            invalidate(clusters[index - clustersX]);
+        }
+        if (y == cluster.maxY - 1 && y < height - 1) {
+            findNorthCrossings(index);
+            invalidate(clusters[index + clustersX]);
+        }
+    }
+
+    /**
+     * Finds a route between two cells. The start need not be passable, and the goal is always
+     * allowed, so a route can lead from an NPC to the avatar.
+     * @param fromX the x-coordinate of the start.
+     * @param fromY the y-coordinate of the start.
+     * @param toX the x-coordinate of the goal.
+     * @param toY the y-coordinate of the goal.
+     * @return the route, which has no moves if the start is the goal, or null if the goal cannot
+     *         be reached.
+     */
+    public Route findRoute(int fromX, int fromY, int toX, int toY) {
+        if (!world.isValid(fromX, fromY) || !world.isValid(toX, toY)) {
+            throw new IndexOutOfBoundsException("route from (" + fromX + ", " + fromY + ") to ("
+                    + toX + ", " + toY + ") leaves the " + width + "x" + height + " map");
+        }
+        int start = fromY * width + fromX;
+        int goal = toY * width + toX;
+        if (start == goal) {
+            return new Route(new int[]{start});
+        }
+        int[] waypoints = search(start, goal);
+        if (waypoints == null) {
+            // A start or goal that cannot be walked through may itself block the only crossing
+            // between two clusters, so the graph misses routes that step over the edge beside it
+            waypoints = searchOverEdges(start, goal);
+        }
+        return waypoints == null ? null : new Route(waypoints);
+    }
+
+    /**
+     * Searches the graph again for a route whose first move steps from the start over the edge of
+     * its cluster, or whose last move steps over the edge of the goal's cluster onto the goal.
+     * Each search starts or ends just over the edge, so none of them walks more of the map than
+     * the graph does.
+     * @return the cells the route passes through, from the start to the goal, or null.
+     */
+    private int[] searchOverEdges(int start, int goal) {
+        if (manhattan(start, goal % width, goal / width) == 1) {
+            return new int[]{start, goal};
+        }
+        int[] froms = overEdges(start);
+        int[] tos = overEdges(goal);
+        // Index -1 stands for the start or goal itself, which the first search already tried
+        for (int i = -1; i < froms.length; i++) {
+            for (int j = i < 0 ? 0 : -1; j < tos.length; j++) {
+                int from = i < 0 ? start : froms[i];
+                int to = j < 0 ? goal : tos[j];
+                int[] middle = from == to ? new int[]{from} : search(from, to);
+                if (middle == null) {
+                    continue;
+                }
+                int before = i < 0 ? 0 : 1;
+                int[] waypoints = new int[before + middle.length + (j < 0 ? 0 : 1)];
+                waypoints[0] = start;
+                System.arraycopy(middle, 0, waypoints, before, middle.length);
+                waypoints[waypoints.length - 1] = goal;
+                return waypoints;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Finds the passable cells next to a cell that are in another cluster.
+     * @return their row-major indices; none unless the cell is on the edge of its cluster.
+     */
+    private int[] overEdges(int cell) {
+        Cluster cluster = clusterOf(cell);
+        int x = cell % width;
+        int y = cell / width;
+        int[] found = new int[2];
+        int count = 0;
+        for (int direction = 0; direction < 4; direction++) {
+            int nx = x + DX[direction];
+            int ny = y + DY[direction];
+            if (!world.isValid(nx, ny)) {
+                continue;
+            }
+            int next = ny * width + nx;
+            if (clusterOf(next) != cluster && isPassable(next)) {
+                found[count++] = next;
+            }
+        }
+        return Arrays.copyOf(found, count);
+    }
+
+    /**
+     * Searches the graph of entrances, with the start and goal joined to the entrances of their
+     * clusters.
+     * @return the cells the route passes through, from the start to the goal, or null.
+     */
+    private int[] search(int start, int goal) {
+        Cluster startCluster = clusterOf(start);
+        Cluster goalCluster = clusterOf(goal);
+        ensureBuilt(startCluster);
+        ensureBuilt(goalCluster);
+        int[] startLinks = linkToEntrances(startCluster, start, goal);
+        int direct = startCluster == goalCluster ? localDistance[localIndex(startCluster, goal)] : UNREACHABLE;
+        int[] goalLinks = linkToEntrances(goalCluster, goal, -1);
+        int goalX = goal % width;
+        int goalY = goal / width;
+
+        scratch.begin(entranceSlots.length);
+        scratch.open(start, 0, manhattan(start, goalX, goalY));
+        while (scratch.heapSize > 0) {
+            int cell = scratch.pop();
+            if (cell == goal) {
+                return waypointsTo(start, goal);
+            }
+            int g = scratch.gScore[cell];
+            if (cell == start) {
+                for (int i = 0; i < startLinks.length; i++) {
+                    relax(cell, startCluster.entrances[i], g, startLinks[i], goalX, goalY);
+                }
+                relax(cell, goal, g, direct, goalX, goalY);
+            }
+            int slot = entranceSlots[cell];
+            if (slot < 0) {
+                continue;
+            }
+            Cluster cluster = clusterOf(cell);
+            int count = cluster.entrances.length;
+            for (int i = 0; i < count; i++) {
+                relax(cell, cluster.entrances[i], g, cluster.distances[slot * count + i], goalX, goalY);
+            }
+            if (cluster == goalCluster) {
+                relax(cell, goal, g, goalLinks[slot], goalX, goalY);
+            }
+            int x = cell % width;
+            int y = cell / width;
+            for (int direction = 0; direction < 4; direction++) {
+                int nx = x + DX[direction];
+                int ny = y + DY[direction];
+                if (!world.isValid(nx, ny)) {
+                    continue;
+                }
+                int next = ny * width + nx;
+                Cluster other = clusterOf(next);
+                if (other != cluster) {
+                    ensureBuilt(other);
+                    if (entranceSlots[next] >= 0) {
+                        relax(cell, next, g, 1, goalX, goalY);
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    private void relax(int from, int next, int g, int cost, int goalX, int goalY) {
+        if (cost == UNREACHABLE || next == from) {
+            return;
+        }
+        int nextG = g + cost;
+        if (scratch.isClosed(next) || (scratch.isSeen(next) && scratch.gScore[next] <= nextG)) {
+            return;
+        }
+        scratch.cameFrom[next] = from;
+        scratch.open(next, nextG, nextG + manhattan(next, goalX, goalY));
+    }
+
+    private int[] waypointsTo(int start, int goal) {
+        int count = 1;
+        for (int cell = goal; cell != start; cell = scratch.cameFrom[cell]) {
+            count++;
+        }
+        int[] waypoints = new int[count];
+        int cell = goal;
+        for (int i = count - 1; i > 0; i--) {
+            waypoints[i] = cell;
+            cell = scratch.cameFrom[cell];
+        }
+        waypoints[0] = start;
+        return waypoints;
+    }
+
+    /**
+     * Searches a cluster from a cell and reads off how far each of its entrances is.
+     * @param allowed a cell that counts as passable whatever its tile, or -1.
+     * @return the distance to each entrance, or UNREACHABLE.
+     */
+    private int[] linkToEntrances(Cluster cluster, int from, int allowed) {
+        exploreCluster(cluster, from, allowed);
+        int[] links = new int[cluster.entrances.length];
+        for (int i = 0; i < links.length; i++) {
+            links[i] = localDistance[localIndex(cluster, cluster.entrances[i])];
+        }
+        return links;
+    }
+
+    /**
+     * Finds the entrances of a cluster from the crossings on its four edges, and the distances
+     * between them.
+     */
+    private void build(Cluster cluster) {
+        for (int entrance : cluster.entrances) {
+            entranceSlots[entrance] = -1;
+        }
+        int index = clusterIndex(cluster.minX, cluster.minY);
+        int[] found = new int[4 * CLUSTER_SIZE];
+        int count = 0;
+        count = addEntrances(found, count, eastCrossings[index], cluster.maxX - 1, true);
+        count = addEntrances(found, count, northCrossings[index], cluster.maxY - 1, false);
+        if (cluster.minX > 0) {
+            count = addEntrances(found, count, eastCrossings[index - 1], cluster.minX, true);
+        }
+        if (cluster.minY > 0) {
+            count = addEntrances(found, count, northCrossings[index - clustersX], cluster.minY, false);
+        }
+        cluster.entrances = Arrays.copyOf(found, count);
+        cluster.distances = new int[count * count];
+        cluster.paths = new int[count * count][];
+        for (int i = 0; i < count; i++) {
+            exploreCluster(cluster, cluster.entrances[i], -1);
+            for (int j = 0; j < count; j++) {
+                cluster.distances[i * count + j] = localDistance[localIndex(cluster, cluster.entrances[j])];
+            }
+        }
+        cluster.dirty = false;
+    }
+
+    /**
+     * Adds the cells of crossings along one edge of a cluster as entrances, skipping cells that
+     * already are one (a corner can be on two edges).
+     * @param line the column of the crossings if vertical, or else their row.
+     * @param vertical whether the crossings are rows on a vertical edge.
+     */
+    private int addEntrances(int[] found, int count, int[] crossings, int line, boolean vertical) {
+        for (int crossing : crossings) {
+            int cell = vertical ? crossing * width + line : line * width + crossing;
+            if (entranceSlots[cell] < 0) {
+                entranceSlots[cell] = count;
+                found[count++] = cell;
+            }
+        }
+        return count;
+    }
+
+    private void findEastCrossings(int index) {
+        Cluster cluster = clusters[index];
+        if (cluster.maxX == width) {
+            eastCrossings[index] = new int[0];
+            return;
+        }
+        int x = cluster.maxX - 1;
+        eastCrossings[index] = findCrossings(cluster.minY, cluster.maxY, y -> isPassable(y * width + x)
+                && isPassable(y * width + x + 1));
+    }
+
+    private void findNorthCrossings(int index) {
+        Cluster cluster = clusters[index];
+        if (cluster.maxY == height) {
+            northCrossings[index] = new int[0];
+            return;
+        }
+        int y = cluster.maxY - 1;
+        northCrossings[index] = findCrossings(cluster.minX, cluster.maxX, x -> isPassable(y * width + x)
+                && isPassable((y + 1) * width + x));
+    }
+
+    /**
+     * Finds where an edge can be crossed: the middle of each run of open positions along it, or
+     * both ends of a wide run.
+     * @param open whether the cells on both sides of the edge at a position are passable.
+     * @return the positions of the crossings along the edge.
+     */
+    private static int[] findCrossings(int from, int to, IntPredicate open) {
+        int[] crossings = new int[to - from];
+        int count = 0;
+        int position = from;
+        while (position < to) {
+            if (!open.test(position)) {
+                position++;
+                continue;
+            }
+            int runStart = position;
+            while (position < to && open.test(position)) {
+                position++;
+            }
+            int runEnd = position - 1;
+            if (runEnd - runStart + 1 >= WIDE_ENTRANCE) {
+                crossings[count++] = runStart;
+                crossings[count++] = runEnd;
+            } else {
+                crossings[count++] = (runStart + runEnd) / 2;
+            }
+        }
+        return Arrays.copyOf(crossings, count);
+    }
+
+    /**
+     * Searches one cluster breadth-first from a cell, leaving the distance of every cell of the
+     * cluster in localDistance and the way back in localParent.
+     * @param allowed a cell that counts as passable whatever its tile, or -1.
+     */
+    private void exploreCluster(Cluster cluster, int from, int allowed) {
+        Arrays.fill(localDistance, UNREACHABLE);
+        int head = 0;
+        int tail = 0;
+        int origin = localIndex(cluster, from);
+        localDistance[origin] = 0;
+        localParent[origin] = -1;
+        localQueue[tail++] = from;
+        while (head < tail) {
+            int cell = localQueue[head++];
+            int next = localDistance[localIndex(cluster, cell)] + 1;
+            int x = cell % width;
+            int y = cell / width;
+            for (int direction = 0; direction < 4; direction++) {
+                int nx = x + DX[direction];
+                int ny = y + DY[direction];
+                if (nx < cluster.minX || nx >= cluster.maxX || ny < cluster.minY || ny >= cluster.maxY) {
+                    continue;
+                }
+                int neighbour = ny * width + nx;
+                int local = localIndex(cluster, neighbour);
+                if (localDistance[local] != UNREACHABLE || (neighbour != allowed && !isPassable(neighbour))) {
+                    continue;
+                }
+                localDistance[local] = next;
+                localParent[local] = localIndex(cluster, cell);
+                localQueue[tail++] = neighbour;
+            }
+        }
+    }
+
+    /**
+     * Works out the cells between two waypoints of a route, which are in the same cluster unless
+     * they are next to each other.
+     * @param version the cluster's version when the route was found.
+     * @return the cells after from, up to and including to.
+     */
+    private int[] refine(int from, int to, int version) {
+        if (Math.abs(from % width - to % width) + Math.abs(from / width - to / width) == 1) {
+            return new int[]{to};
+        }
+        Cluster cluster = clusterOf(from);
+        boolean unchanged = !cluster.dirty && cluster.version == version;
+        int fromSlot = entranceSlots[from];
+        int toSlot = entranceSlots[to];
+        int cached = fromSlot * cluster.entrances.length + toSlot;
+        if (unchanged && fromSlot >= 0 && toSlot >= 0 && cluster.paths[cached] != null) {
+            return cluster.paths[cached];
+        }
+        exploreCluster(cluster, from, to);
+        int local = localIndex(cluster, to);
+        int length = localDistance[local];
+        if (length == UNREACHABLE) {
+            throw new IllegalStateException("the route was blocked after it was found");
+        }
+        int[] cells = new int[length];
+        for (int i = length - 1; i >= 0; i--) {
+            cells[i] = (cluster.minY + local / CLUSTER_SIZE) * width + cluster.minX + local % CLUSTER_SIZE;
+            local = localParent[local];
+        }
+        if (unchanged && fromSlot >= 0 && toSlot >= 0) {
+            cluster.paths[cached] = cells;
+        }
+        return cells;
+    }
+
+    private void ensureBuilt(Cluster cluster) {
+        if (cluster.dirty) {
+            build(cluster);
+        }
+    }
+
+    private void invalidate(Cluster cluster) {
+        cluster.dirty = true;
+        cluster.version++;
+    }
+
+    private boolean isPassable(int cell) {
+        return passable.test(world.getId(cell));
+    }
+
+    private int manhattan(int cell, int toX, int toY) {
+        return Math.abs(cell % width - toX) + Math.abs(cell / width - toY);
+    }
+
+    private Cluster clusterOf(int cell) {
+        return clusters[clusterIndex(cell % width, cell / width)];
+    }
+
+    private int clusterIndex(int x, int y) {
+        if (x < 0 || x >= width || y < 0 || y >= height) {
+            throw new IndexOutOfBoundsException("(" + x + ", " + y + ") is outside the "
+                    + width + "x" + height + " map");
+        }
+        return (y / CLUSTER_SIZE) * clustersX + x / CLUSTER_SIZE;
+    }
+
+    private int localIndex(Cluster cluster, int cell) {
+        return (cell / width - cluster.minY) * CLUSTER_SIZE + cell % width - cluster.minX;
+    }
+
+    /**
+     * A route found by {@link #findRoute}, walked one move at a time. Only the stretch up to the
+     * next waypoint is worked out in cells.
+     */
+    public final class Route {
+        private final int[] waypoints; // Cells the route passes through, from the start to the goal
+        private final int[] versions; // Version of each waypoint's cluster when the route was found
+        private int waypoint; // The waypoint the current stretch leads from
+        private int[] stretch = new int[0];
+        private int step;
+
+        private Route(int[] waypoints) {
+            this.waypoints = waypoints;
+            this.versions = new int[waypoints.length];
+            for (int i = 0; i < waypoints.length; i++) {
+                versions[i] = clusterOf(waypoints[i]).version;
+            }
+        }
+
+        /**
+         * Checks whether the route has moves left.
+         * @return true if the goal has not been reached.
+         */
+        public boolean hasNext() {
+            return step < stretch.length || waypoint < waypoints.length - 1;
+        }
+
+        /**
+         * Takes the next move of the route.
+         * @return the row-major index of the cell to move to, or -1 once the goal has been reached.
+         * @throws IllegalStateException if a tile change has cut the route since it was found.
+         */
+        public int next() {
+            if (step == stretch.length) {
+                if (waypoint == waypoints.length - 1) {
+                    return -1;
+                }
+                stretch = refine(waypoints[waypoint], waypoints[waypoint + 1], versions[waypoint]);
+                waypoint++;
+                step = 0;
+            }
+            return stretch[step++];
+        }
+
+        /**
+         * Checks whether a cluster the rest of the route runs through has changed since the route
+         * was found, in which case finding a new route may give a shorter one, or the only one.
+         * @return true if the route may no longer be the best.
+         */
+        public boolean isStale() {
+            for (int i = Math.max(waypoint - 1, 0); i < waypoints.length; i++) {
+                if (clusterOf(waypoints[i]).version != versions[i]) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Get the number of waypoints, which is how many cells of the route are known before it is
+         * walked.
+         * @return the number of waypoints, counting the start and the goal.
+         */
+        public int waypointCount() {
+            return waypoints.length;
+        }
+    }
+
+    /**
+     * A square of the map, with its entrances and the distances between them.
+     */
+    private static final class Cluster {
+        final int minX;
+        final int minY;
+        final int maxX; // Exclusive
+        final int maxY; // Exclusive
+        int[] entrances = new int[0]; // Row-major indices of the entrance cells
+        int[] distances; // Between each pair of entrances, row-major by entrance, or UNREACHABLE
+        int[][] paths; // Cells between each pair of entrances, cached once walked
+        int version; // Counts the changes to the cluster
+        boolean dirty = true;
+
+        Cluster(int minX, int minY, int maxX, int maxY) {
+            this.minX = minX;
+            this.minY = minY;
+            this.maxX = maxX;
+            this.maxY = maxY;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package core;
+
+/**
+ * A single thing the player did: typed a key, or clicked the mouse at a position given in the
+ * coordinates of the screen being shown.
+ */
+public final class InputEvent {
+    private final char key;
+    private final double x;
+    private final double y;
+    private final boolean click;
+
+    private InputEvent(char key, double x, double y, boolean click) {
+        this.key = key;
+        this.x = x;
+        this.y = y;
+        this.click = click;
+    }
+
+    /**
+     * Makes a key typed event.
+     * @param key the character typed.
+     * @return the event.
+     */
+    public static InputEvent key(char key) {
+        return new InputEvent(key, 0, 0, false);
+    }
+
+    /**
+     * Makes a mouse click event.
+     * @param x the x-coordinate of the click.
+     * @param y the y-coordinate of the click.
+     * @return the event.
+     */
+    public static InputEvent click(double x, double y) {
+        return new InputEvent('\0', x, y, true);
+    }
+
+    /**
+     * Checks whether this is a mouse click rather than a key.
+     * @return true for a click.
+     */
+    public boolean isClick() {
+        return click;
+    }
+
+    /**
+     * Get the key.
+     * @return the character typed, or '\0' for a click.
+     */
+    public char getKey() {
+        return key;
+    }
+
+    /**
+     * Get the x-coordinate of a click.
+     * @return the x-coordinate, or 0 for a key.
+     */
+    public double getX() {
+        return x;
+    }
+
+    /**
+     * Get the y-coordinate of a click.
+     * @return the y-coordinate, or 0 for a key.
+     */
+    public double getY() {
+        return y;
+    }
+
+    @Override
+    public String toString() {
+        return click ? "click(" + x + ", " + y + ")" : "key(" + key + ")";
+    }
+}
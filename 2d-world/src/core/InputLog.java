@@ -0,0 +1,305 @@
+package core;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/* The keys a game was played with, so it can be replayed exactly with Replay.
+ *
+ * A game is deterministic given its seed and which keys were handled on which tick, so that is
+ * all a log holds, in a small binary format (numbers big-endian):
+ *
+ *   int    magic "2DWR"
+ *   short  format version
+ *   long   seed
+ *   int width, int height   size of the map
+ *   records, each a byte type, a varint of the ticks since the previous record, and then
+ *     KEY:           varint   the key handled during the tick
+ *     DIALOGUE_KEY:  varint   a key typed while talking to Oski, which takes no ticks
+ *     CHECKPOINT:    long     World.stateHash() after the tick
+ *     END:           long     World.stateHash() when the game ended, always the last record
+ *
+ * A checkpoint is written every CHECKPOINT_TICKS, so a replay that goes its own way is caught
+ * near where it did. Version 1 logs have no dialogue keys, and their hashes leave out how the
+ * game ended, so they are no longer read.
+ */
+public final class InputLog {
+    /**
+     * How many ticks apart the state hash is written.
+     */
+    public static final int CHECKPOINT_TICKS = 250;
+    public static final byte KEY = 1;
+    public static final byte CHECKPOINT = 2;
+    public static final byte END = 3;
+    public static final byte DIALOGUE_KEY = 4;
+
+    private static final int MAGIC = 0x32445752; // "2DWR"
+    private static final short VERSION = 2;
+
+    private InputLog() {
+    }
+
+    /**
+     * Writes a log as a game is played. Records must come in order of their ticks.
+     */
+    public static final class Writer implements Closeable {
+        private final DataOutputStream out;
+        private long lastTick;
+
+        /**
+         * Creates a log, replacing any file at the path, and writes its header.
+         * @param path the file to write.
+         * @param seed the seed the game was started with.
+         * @param width the width of the map.
+         * @param height the height of the map.
+         * @throws UncheckedIOException if the file cannot be written.
+         */
+        public Writer(Path path, long seed, int width, int height) {
+            try {
+                out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)));
+                out.writeInt(MAGIC);
+                out.writeShort(VERSION);
+                out.writeLong(seed);
+                out.writeInt(width);
+                out.writeInt(height);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        /**
+         * Records a key handled during a tick.
+         * @param tick the tick, counted from the start of the game.
+         * @param key the key.
+         */
+        public void key(long tick, char key) {
+            try {
+                writeHeader(KEY, tick);
+                writeVarLong(key);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        /**
+         * Records a key typed while talking to Oski, which happens between ticks.
+         * @param tick the number of ticks played before it.
+         * @param key the key.
+         */
+        public void dialogueKey(long tick, char key) {
+            try {
+                writeHeader(DIALOGUE_KEY, tick);
+                writeVarLong(key);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        /**
+         * Records the state after a tick.
+         * @param tick the tick, counted from the start of the game.
+         * @param stateHash the world's {@link World#stateHash()}.
+         */
+        public void checkpoint(long tick, long stateHash) {
+            try {
+                writeHeader(CHECKPOINT, tick);
+                out.writeLong(stateHash);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        /**
+         * Records the state the game ended in and closes the log.
+         * @param tick the number of ticks the game ran.
+         * @param stateHash the world's {@link World#stateHash()}.
+         */
+        public void end(long tick, long stateHash) {
+            try {
+                writeHeader(END, tick);
+                out.writeLong(stateHash);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } finally {
+                close();
+            }
+        }
+
+        @Override
+        public void close() {
+            try {
+                out.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private void writeHeader(byte type, long tick) throws IOException {
+            if (tick < lastTick) {
+                throw new IllegalArgumentException("tick " + tick + " is before tick " + lastTick);
+            }
+            out.writeByte(type);
+            writeVarLong(tick - lastTick);
+            lastTick = tick;
+        }
+
+        /**
+         * Writes an unsigned long seven bits at a time, lowest bits first.
+         */
+        private void writeVarLong(long value) throws IOException {
+            while ((value & ~0x7FL) != 0) {
+                out.writeByte((int) (value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            out.writeByte((int) value);
+        }
+    }
+
+    /**
+     * Reads a log one record at a time: call {@link #next()}, then the getters for the record.
+     */
+    public static final class Reader implements Closeable {
+        private final DataInputStream in;
+        private final long seed;
+        private final int width;
+        private final int height;
+        private byte type;
+        private long tick;
+        private char key;
+        private long stateHash;
+
+        /**
+         * Opens a log and reads its header.
+         * @param path the file to read.
+         * @throws UncheckedIOException if the file cannot be read.
+         * @throws IllegalArgumentException if the file is not a log, or from an unknown version.
+         */
+        public Reader(Path path) {
+            try {
+                in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)));
+                try {
+                    if (in.readInt() != MAGIC) {
+                        throw new IllegalArgumentException("not an input log");
+                    }
+                    short version = in.readShort();
+                    if (version != VERSION) {
+                        throw new IllegalArgumentException("unsupported input log version " + version);
+                    }
+                    seed = in.readLong();
+                    width = in.readInt();
+                    height = in.readInt();
+                } catch (EOFException e) {
+                    in.close();
+                    throw new IllegalArgumentException("input log is truncated");
+                } catch (IllegalArgumentException e) {
+                    in.close();
+                    throw e;
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        /**
+         * Get the seed the game was started with.
+         * @return the seed.
+         */
+        public long seed() {
+            return seed;
+        }
+
+        /**
+         * Get the width of the map.
+         * @return the width in tiles.
+         */
+        public int width() {
+            return width;
+        }
+
+        /**
+         * Get the height of the map.
+         * @return the height in tiles.
+         */
+        public int height() {
+            return height;
+        }
+
+        /**
+         * Reads the next record.
+         * @return {@link #KEY}, {@link #DIALOGUE_KEY}, {@link #CHECKPOINT} or {@link #END}, or 0
+         *         after the end record.
+         * @throws IllegalArgumentException if the log is corrupt or stops before its end record.
+         */
+        public byte next() {
+            if (type == END) {
+                return 0;
+            }
+            try {
+                type = in.readByte();
+                tick += readVarLong();
+                switch (type) {
+                    case KEY, DIALOGUE_KEY -> key = (char) readVarLong();
+                    case CHECKPOINT, END -> stateHash = in.readLong();
+                    default -> throw new IllegalArgumentException("input log is corrupt: unknown record " + type);
+                }
+                return type;
+            } catch (EOFException e) {
+                throw new IllegalArgumentException("input log is truncated after tick " + tick);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        /**
+         * Get the tick of the current record.
+         * @return the tick, counted from the start of the game.
+         */
+        public long tick() {
+            return tick;
+        }
+
+        /**
+         * Get the key of the current {@link #KEY} or {@link #DIALOGUE_KEY} record.
+         * @return the key.
+         */
+        public char key() {
+            return key;
+        }
+
+        /**
+         * Get the state hash of the current {@link #CHECKPOINT} or {@link #END} record.
+         * @return the hash the recorded game had.
+         */
+        public long stateHash() {
+            return stateHash;
+        }
+
+        @Override
+        public void close() {
+            try {
+                in.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private long readVarLong() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                byte b = in.readByte();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IllegalArgumentException("input log is corrupt: varint too long");
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package core;
+
+/**
+ * Where the game gets the player's input from. The game loop blocks on {@link #poll} when it
+ * has nothing else to do, so a source should wake it as soon as an event arrives.
+ */
+public interface InputSource {
+
+    /**
+     * Waits for the next event.
+     * @param timeoutNanos how long to wait at most; 0 returns at once, and a negative value
+     *                     waits until an event arrives.
+     * @return the next event, or null if none arrived in time.
+     * @throws InterruptedException if the thread is interrupted while waiting.
+     */
+    InputEvent poll(long timeoutNanos) throws InterruptedException;
+
+    /**
+     * Get the x-coordinate of the mouse, for showing what is under it.
+     * @return the x-coordinate in the coordinates of the screen being shown.
+     */
+    double mouseX();
+
+    /**
+     * Get the y-coordinate of the mouse, for showing what is under it.
+     * @return the y-coordinate in the coordinates of the screen being shown.
+     */
+    double mouseY();
+
+    /**
+     * Whether no more events will ever arrive, as with a script that has been played to its end.
+     * A headless game ends once it has handled everything from an exhausted source.
+     * @return true if {@link #poll} will never return another event.
+     */
+    default boolean isExhausted() {
+        return false;
+    }
+}
@@ -0,0 +1,328 @@
+package core;
+
+import tileengine.TETile;
+import tileengine.Tileset;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * The items placed in a world, keyed by their position. Each position is packed into one long
+ * (see {@link #pack(int, int)}) and kept in an open-addressing hash table, so looking up, adding,
+ * picking up and removing an item take constant time and allocate nothing.
+ *
+ * Items are kept in the order they were added, which is the order they are saved in. They can be
+ * walked by entry number, from 0 to {@link #size()}, without an iterator:
+ * <pre>
+ *     for (int i = 0; i < items.size(); i++) {
+ *         world.set(items.x(i), items.y(i), items.isPickedUp(i) ? Tileset.GRASS : items.item(i));
+ *     }
+ * </pre>
+ * Removing an item moves the last entry into its place.
+ */
+public final class ItemIndex implements Serializable {
+    private static final long serialVersionUID = 1L;
+    private static final int EMPTY = -1;
+
+    private long[] positions = new long[8]; // Packed position of each entry
+    private short[] itemIds = new short[8]; // Tile id of each entry
+    private long[] pickedUp = new long[1]; // One bit per entry
+    private int size;
+    private int[] slots = newSlots(16); // Hash table of entry numbers, EMPTY where free
+
+    /**
+     * Packs a position into a long, x in the high half and y in the low half.
+     * @param x the x-coordinate.
+     * @param y the y-coordinate.
+     * @return the packed position.
+     */
+    public static long pack(int x, int y) {
+        return ((long) x << 32) | (y & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Get the x-coordinate of a packed position.
+     * @param position a position from {@link #pack(int, int)}.
+     * @return the x-coordinate.
+     */
+    public static int unpackX(long position) {
+        return (int) (position >> 32);
+    }
+
+    /**
+     * Get the y-coordinate of a packed position.
+     * @param position a position from {@link #pack(int, int)}.
+     * @return the y-coordinate.
+     */
+    public static int unpackY(long position) {
+        return (int) position;
+    }
+
+    /**
+     * Makes an independent copy of this index.
+     * @return a copy with the same items in the same order.
+     */
+    public ItemIndex copy() {
+        ItemIndex copy = new ItemIndex();
+        copy.positions = positions.clone();
+        copy.itemIds = itemIds.clone();
+        copy.pickedUp = pickedUp.clone();
+        copy.size = size;
+        copy.slots = slots.clone();
+        return copy;
+    }
+
+    /**
+     * Get the number of items, picked up or not.
+     * @return the number of entries.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Puts an item at a position that has not been picked up. An item already at that position is
+     * replaced, and keeps its place in the order.
+     * @param x the x-coordinate.
+     * @param y the y-coordinate.
+     * @param item the item's tile.
+     */
+    public void put(int x, int y, TETile item) {
+        put(x, y, item, false);
+    }
+
+    /**
+     * Puts an item at a position. An item already at that position is replaced, and keeps its
+     * place in the order.
+     * @param x the x-coordinate.
+     * @param y the y-coordinate.
+     * @param item the item's tile.
+     * @param isPickedUp whether the item has already been picked up.
+     */
+    public void put(int x, int y, TETile item, boolean isPickedUp) {
+        long position = pack(x, y);
+        int slot = findSlot(position);
+        int entry = slots[slot];
+        if (entry == EMPTY) {
+            if ((size + 1) * 2 > slots.length) {
+                rehash(slots.length * 2);
+                slot = findSlot(position);
+            }
+            entry = size++;
+            ensureEntryCapacity(size);
+            positions[entry] = position;
+            slots[slot] = entry;
+        }
+        itemIds[entry] = (short) item.id();
+        setPickedUp(entry, isPickedUp);
+    }
+
+    /**
+     * Checks whether an item was placed at a position, picked up or not.
+     * @param x the x-coordinate.
+     * @param y the y-coordinate.
+     * @return true if there is an entry for the position.
+     */
+    public boolean contains(int x, int y) {
+        return indexOf(x, y) != EMPTY;
+    }
+
+    /**
+     * Get the item placed at a position.
+     * @param x the x-coordinate.
+     * @param y the y-coordinate.
+     * @return the item's tile, or null if no item was placed there.
+     */
+    public TETile get(int x, int y) {
+        int entry = indexOf(x, y);
+        return entry == EMPTY ? null : item(entry);
+    }
+
+    /**
+     * Checks whether the item at a position has been picked up.
+     * @param x the x-coordinate.
+     * @param y the y-coordinate.
+     * @return true if an item was placed there and picked up.
+     */
+    public boolean isPickedUp(int x, int y) {
+        int entry = indexOf(x, y);
+        return entry != EMPTY && pickedUpBit(entry);
+    }
+
+    /**
+     * Marks the item at a position as picked up.
+     * @param x the x-coordinate.
+     * @param y the y-coordinate.
+     * @return true if there was an item there that had not been picked up yet.
+     */
+    public boolean pickUp(int x, int y) {
+        int entry = indexOf(x, y);
+        if (entry == EMPTY || pickedUpBit(entry)) {
+            return false;
+        }
+        setPickedUp(entry, true);
+        return true;
+    }
+
+    /**
+     * Removes the item at a position. The last entry takes its entry number.
+     * @param x the x-coordinate.
+     * @param y the y-coordinate.
+     * @return true if there was an item there.
+     */
+    public boolean remove(int x, int y) {
+        int slot = findSlot(pack(x, y));
+        int entry = slots[slot];
+        if (entry == EMPTY) {
+            return false;
+        }
+        deleteSlot(slot);
+        int last = --size;
+        if (entry != last) {
+            slots[findSlot(positions[last])] = entry;
+            positions[entry] = positions[last];
+            itemIds[entry] = itemIds[last];
+            setPickedUp(entry, pickedUpBit(last));
+        }
+        setPickedUp(last, false);
+        return true;
+    }
+
+    /**
+     * Get the entry number of the item at a position.
+     * @param x the x-coordinate.
+     * @param y the y-coordinate.
+     * @return the entry number, or -1 if no item was placed there.
+     */
+    public int indexOf(int x, int y) {
+        return slots[findSlot(pack(x, y))];
+    }
+
+    /**
+     * Get the x-coordinate of an entry.
+     * @param entry an entry number, from 0 to size() - 1.
+     * @return the x-coordinate.
+     */
+    public int x(int entry) {
+        return unpackX(positions[checkEntry(entry)]);
+    }
+
+    /**
+     * Get the y-coordinate of an entry.
+     * @param entry an entry number, from 0 to size() - 1.
+     * @return the y-coordinate.
+     */
+    public int y(int entry) {
+        return unpackY(positions[checkEntry(entry)]);
+    }
+
+    /**
+     * Get the item of an entry.
+     * @param entry an entry number, from 0 to size() - 1.
+     * @return the item's tile.
+     */
+    public TETile item(int entry) {
+        return Tileset.byId(itemIds[checkEntry(entry)]);
+    }
+
+    /**
+     * Checks whether the item of an entry has been picked up.
+     * @param entry an entry number, from 0 to size() - 1.
+     * @return true if the item has been picked up.
+     */
+    public boolean isPickedUp(int entry) {
+        return pickedUpBit(checkEntry(entry));
+    }
+
+    private boolean pickedUpBit(int entry) {
+        return (pickedUp[entry >>> 6] & (1L << entry)) != 0;
+    }
+
+    private void setPickedUp(int entry, boolean isPickedUp) {
+        if (isPickedUp) {
+            pickedUp[entry >>> 6] |= 1L << entry;
+        } else {
+            pickedUp[entry >>> 6] &= ~(1L << entry);
+        }
+    }
+
+    /**
+     * Finds the slot holding a position, or the free slot where it would go.
+     */
+    private int findSlot(long position) {
+        int mask = slots.length - 1;
+        int slot = hash(position) & mask;
+        int entry;
+        while ((entry = slots[slot]) != EMPTY && positions[entry] != position) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /**
+     * Frees a slot, moving later entries of the same probe run back so that none of them is
+     * cut off from its home slot.
+     */
+    private void deleteSlot(int slot) {
+        int mask = slots.length - 1;
+        int hole = slot;
+        int next = (hole + 1) & mask;
+        int entry;
+        while ((entry = slots[next]) != EMPTY) {
+            int home = hash(positions[entry]) & mask;
+            // Move the entry into the hole unless its home lies cyclically in (hole, next]
+            boolean reachable = hole <= next ? hole < home && home <= next : hole < home || home <= next;
+            if (!reachable) {
+                slots[hole] = entry;
+                hole = next;
+            }
+            next = (next + 1) & mask;
+        }
+        slots[hole] = EMPTY;
+    }
+
+    private void rehash(int slotCount) {
+        slots = newSlots(slotCount);
+        int mask = slotCount - 1;
+        for (int entry = 0; entry < size; entry++) {
+            int slot = hash(positions[entry]) & mask;
+            while (slots[slot] != EMPTY) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = entry;
+        }
+    }
+
+    private void ensureEntryCapacity(int capacity) {
+        if (capacity > positions.length) {
+            int length = Math.max(capacity, positions.length * 2);
+            positions = Arrays.copyOf(positions, length);
+            itemIds = Arrays.copyOf(itemIds, length);
+        }
+        if (capacity > pickedUp.length * 64) {
+            pickedUp = Arrays.copyOf(pickedUp, Math.max((capacity + 63) >>> 6, pickedUp.length * 2));
+        }
+    }
+
+    private int checkEntry(int entry) {
+        if (entry < 0 || entry >= size) {
+            throw new IndexOutOfBoundsException("entry " + entry + " is outside 0.." + (size - 1));
+        }
+        return entry;
+    }
+
+    private static int[] newSlots(int slotCount) {
+        int[] slots = new int[slotCount];
+        Arrays.fill(slots, EMPTY);
+        return slots;
+    }
+
+    /**
+     * Mixes both halves of a packed position, so that neighbouring cells land in different slots.
+     * {@link EntityIndex} hashes its buckets' positions with it too.
+     */
+    static int hash(long position) {
+        long h = position * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
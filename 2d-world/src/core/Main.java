@@ -2,16 +2,35 @@ package core;
 import tileengine.TERenderer;
 import tileengine.TETile;
 
+import java.nio.file.Path;
+
 /* 2D World Engine: Oski's Intervention
  * @author Sufjan Fana
  *
  * An engine for generating an explorable, interactive, 2D world in which the user
  * controls an avatar. The world is generated pseudo-randomly through the input seed.
+ *
+ * "--record <file>" records the next game started from a seed to an input log, and
+ * "--replay <file>" plays such a log back without a window and checks it ends the same way.
+ * "--fog" starts with fog of war on; F turns it on and off while playing.
  */
 
 public class Main {
     public static void main(String[] args) {
+        if (args.length == 2 && args[0].equals("--replay")) {
+            World replayed = Replay.run(Path.of(args[1]));
+            System.out.println("Replayed " + replayed.getTicks() + " ticks.");
+            System.exit(0);
+        }
         World world = new World();
-            world.run();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--record") && i + 1 < args.length) {
+                world.setRecording(Path.of(args[++i]));
+            } else if (args[i].equals("--fog")) {
+                world.setFogOfWar(true);
+            }
+        }
+        world.run();
+        System.exit(0);
     }
 }
@@ -0,0 +1,145 @@
+package core;
+
+import tileengine.TETile;
+import tileengine.Tileset;
+
+import java.util.Arrays;
+
+/**
+ * The NPCs of a world, kept as parallel arrays of primitives rather than one object each, so the
+ * systems in {@link NpcSystems} can run over hundreds of thousands of them in straight lines
+ * through memory, and split that work between threads by ranges of NPCs.
+ *
+ * An NPC is numbered by where it is in the arrays, from 0 to {@link #size()}. Removing one moves
+ * the last NPC into its number, like {@link ItemIndex}. NPCs do not stand on the map's tiles and
+ * do not block each other.
+ */
+public final class NpcStore {
+    /**
+     * Walks in a random direction every tick.
+     */
+    public static final byte WANDERING = 0;
+    /**
+     * Walks toward the avatar.
+     */
+    public static final byte CHASING = 1;
+    /**
+     * Stays where it is.
+     */
+    public static final byte IDLE = 2;
+
+    int[] xs = new int[16];
+    int[] ys = new int[16];
+    short[] kinds = new short[16]; // Tile id of each NPC
+    byte[] states = new byte[16];
+    long[] randoms = new long[16]; // State of each NPC's own random numbers
+    int[] nextCells = new int[16]; // Where the AI wants each NPC to go, or -1 to stay
+    private int size;
+
+    /**
+     * Get the number of NPCs.
+     * @return the number of NPCs in the store.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Adds a wandering NPC.
+     * @param kind the NPC's tile.
+     * @param x the x-coordinate.
+     * @param y the y-coordinate.
+     * @param seed where the NPC's random choices come from, so that it wanders the same way
+     *             whatever the number of threads.
+     * @return the NPC's number.
+     */
+    public int add(TETile kind, int x, int y, long seed) {
+        if (size == xs.length) {
+            int length = size * 2;
+            xs = Arrays.copyOf(xs, length);
+            ys = Arrays.copyOf(ys, length);
+            kinds = Arrays.copyOf(kinds, length);
+            states = Arrays.copyOf(states, length);
+            randoms = Arrays.copyOf(randoms, length);
+            nextCells = Arrays.copyOf(nextCells, length);
+        }
+        int npc = size++;
+        xs[npc] = x;
+        ys[npc] = y;
+        kinds[npc] = (short) kind.id();
+        states[npc] = WANDERING;
+        randoms[npc] = seed;
+        nextCells[npc] = -1;
+        return npc;
+    }
+
+    /**
+     * Removes an NPC. The last NPC takes its number.
+     * @param npc the NPC's number.
+     */
+    public void remove(int npc) {
+        checkNpc(npc);
+        int last = --size;
+        xs[npc] = xs[last];
+        ys[npc] = ys[last];
+        kinds[npc] = kinds[last];
+        states[npc] = states[last];
+        randoms[npc] = randoms[last];
+        nextCells[npc] = nextCells[last];
+    }
+
+    /**
+     * Get the x-coordinate of an NPC.
+     * @param npc the NPC's number, from 0 to size() - 1.
+     * @return the x-coordinate.
+     */
+    public int x(int npc) {
+        return xs[checkNpc(npc)];
+    }
+
+    /**
+     * Get the y-coordinate of an NPC.
+     * @param npc the NPC's number, from 0 to size() - 1.
+     * @return the y-coordinate.
+     */
+    public int y(int npc) {
+        return ys[checkNpc(npc)];
+    }
+
+    /**
+     * Get what an NPC is.
+     * @param npc the NPC's number, from 0 to size() - 1.
+     * @return the NPC's tile.
+     */
+    public TETile kind(int npc) {
+        return Tileset.byId(kinds[checkNpc(npc)]);
+    }
+
+    /**
+     * Get what an NPC is doing.
+     * @param npc the NPC's number, from 0 to size() - 1.
+     * @return {@link #WANDERING}, {@link #CHASING} or {@link #IDLE}.
+     */
+    public byte state(int npc) {
+        return states[checkNpc(npc)];
+    }
+
+    /**
+     * Sets what an NPC is doing.
+     * @param npc the NPC's number, from 0 to size() - 1.
+     * @param state {@link #WANDERING}, {@link #CHASING} or {@link #IDLE}.
+     */
+    public void setState(int npc, byte state) {
+        if (state < WANDERING || state > IDLE) {
+            throw new IllegalArgumentException("unknown NPC state: " + state);
+        }
+        states[checkNpc(npc)] = state;
+    }
+
+    private int checkNpc(int npc) {
+        if (npc < 0 || npc >= size) {
+            throw new IndexOutOfBoundsException("NPC " + npc + " is outside 0.." + (size - 1));
+        }
+        return npc;
+    }
+}
@@ -0,0 +1,216 @@
+package core;
+
+import tileengine.TileStore;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * The systems that run the NPCs of an {@link NpcStore} each tick: the AI decides where every NPC
+ * wants to go, movement then takes them there, and interaction finds the NPCs near a position.
+ * Each system walks the store's arrays from one NPC to the next, and the NPCs are split into
+ * ranges of {@link #LEAF_SIZE} that a ForkJoinPool works through in parallel.
+ *
+ * A system only writes the entries of the NPCs in its own range, and reads the map and the
+ * avatar's distance field, which must not change during a tick. Every NPC has its own random
+ * numbers, so a tick gives the same result whatever the pool and its number of threads.
+ */
+public final class NpcSystems {
+    /**
+     * How many moves from the avatar a wandering NPC notices it and starts to chase it.
+     */
+    public static final int CHASE_DISTANCE = 12;
+    /**
+     * The most NPCs one task works through before the work is split.
+     */
+    public static final int LEAF_SIZE = 4096;
+
+    private static final int[] DX = {1, -1, 0, 0};
+    private static final int[] DY = {0, 0, 1, -1};
+
+    private NpcSystems() {
+    }
+
+    /**
+     * Runs the AI and then movement for every NPC on the common ForkJoinPool.
+     * @param npcs the NPCs.
+     * @param world the tilemap for world.
+     * @param avatarDistances how far every cell is from the avatar, or null if NPCs should not chase it.
+     */
+    public static void tick(NpcStore npcs, TileStore world, DistanceField avatarDistances) {
+        tick(npcs, world, avatarDistances, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Runs the AI and then movement for every NPC on the given pool.
+     * @param npcs the NPCs.
+     * @param world the tilemap for world.
+     * @param avatarDistances how far every cell is from the avatar, or null if NPCs should not chase it.
+     * @param pool the pool the NPCs are split across.
+     */
+    public static void tick(NpcStore npcs, TileStore world, DistanceField avatarDistances, ForkJoinPool pool) {
+        int size = npcs.size();
+        pool.invoke(new RangeTask((from, to) -> think(npcs, world, avatarDistances, from, to), 0, size));
+        pool.invoke(new RangeTask((from, to) -> move(npcs, world.width(), from, to), 0, size));
+    }
+
+    /**
+     * Finds the NPCs within a distance of a position, for example to see who the avatar can talk to.
+     * @param npcs the NPCs.
+     * @param x the x-coordinate.
+     * @param y the y-coordinate.
+     * @param radius the largest distance, in moves including diagonals.
+     * @param pool the pool the NPCs are split across.
+     * @return the numbers of the NPCs found, in increasing order.
+     */
+    public static int[] near(NpcStore npcs, int x, int y, int radius, ForkJoinPool pool) {
+        if (radius < 0) {
+            throw new IllegalArgumentException("radius must not be negative: " + radius);
+        }
+        return pool.invoke(new NearTask(npcs, x, y, radius, 0, npcs.size()));
+    }
+
+    /**
+     * The AI: picks where each NPC in a range wants to go. Wandering NPCs take a random step
+     * unless the avatar is within {@link #CHASE_DISTANCE}, and chasing NPCs follow the distance
+     * field until the avatar cannot be reached.
+     */
+    static void think(NpcStore npcs, TileStore world, DistanceField avatarDistances, int from, int to) {
+        int width = world.width();
+        int height = world.height();
+        for (int npc = from; npc < to; npc++) {
+            int x = npcs.xs[npc];
+            int y = npcs.ys[npc];
+            byte state = npcs.states[npc];
+            if (state != NpcStore.IDLE && avatarDistances != null) {
+                int distance = avatarDistances.distance(x, y);
+                if (state == NpcStore.WANDERING && distance <= CHASE_DISTANCE) {
+                    state = NpcStore.CHASING;
+                } else if (state == NpcStore.CHASING && distance == DistanceField.UNREACHABLE) {
+                    state = NpcStore.WANDERING;
+                }
+                npcs.states[npc] = state;
+            }
+
+            int next = -1;
+            if (state == NpcStore.CHASING && avatarDistances != null) {
+                next = avatarDistances.nextStep(x, y);
+            } else if (state == NpcStore.WANDERING) {
+                int direction = (int) (nextRandom(npcs.randoms, npc) >>> 62);
+                int nx = x + DX[direction];
+                int ny = y + DY[direction];
+                if (nx >= 0 && nx < width && ny >= 0 && ny < height
+                        && PathFinder.GRASS.test(world.getId(ny * width + nx))) {
+                    next = ny * width + nx;
+                }
+            }
+            npcs.nextCells[npc] = next;
+        }
+    }
+
+    /**
+     * Movement: takes each NPC in a range to the cell the AI picked for it.
+     */
+    static void move(NpcStore npcs, int width, int from, int to) {
+        for (int npc = from; npc < to; npc++) {
+            int next = npcs.nextCells[npc];
+            if (next >= 0) {
+                npcs.xs[npc] = next % width;
+                npcs.ys[npc] = next / width;
+            }
+        }
+    }
+
+    /**
+     * Steps an NPC's random numbers on with SplitMix64.
+     */
+    private static long nextRandom(long[] randoms, int npc) {
+        long z = randoms[npc] += 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Work on the NPCs from one number up to another.
+     */
+    private interface RangeSystem {
+        void run(int from, int to);
+    }
+
+    /**
+     * Runs a system over a range of NPCs, splitting the range in half until it is at most
+     * {@link #LEAF_SIZE} long.
+     */
+    private static final class RangeTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final transient RangeSystem system;
+        private final int from;
+        private final int to;
+
+        RangeTask(RangeSystem system, int from, int to) {
+            this.system = system;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > LEAF_SIZE) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new RangeTask(system, from, middle), new RangeTask(system, middle, to));
+            } else {
+                system.run(from, to);
+            }
+        }
+    }
+
+    /**
+     * Collects the NPCs near a position over a range, joining the halves in order.
+     */
+    private static final class NearTask extends RecursiveTask<int[]> {
+        private static final long serialVersionUID = 1L;
+        private final transient NpcStore npcs;
+        private final int x;
+        private final int y;
+        private final int radius;
+        private final int from;
+        private final int to;
+
+        NearTask(NpcStore npcs, int x, int y, int radius, int from, int to) {
+            this.npcs = npcs;
+            this.x = x;
+            this.y = y;
+            this.radius = radius;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected int[] compute() {
+            if (to - from > LEAF_SIZE) {
+                int middle = (from + to) >>> 1;
+                NearTask right = new NearTask(npcs, x, y, radius, middle, to);
+                right.fork();
+                int[] left = new NearTask(npcs, x, y, radius, from, middle).compute();
+                int[] found = right.join();
+                int[] joined = Arrays.copyOf(left, left.length + found.length);
+                System.arraycopy(found, 0, joined, left.length, found.length);
+                return joined;
+            }
+            int[] found = new int[8];
+            int count = 0;
+            for (int npc = from; npc < to; npc++) {
+                if (Math.abs(npcs.xs[npc] - x) <= radius && Math.abs(npcs.ys[npc] - y) <= radius) {
+                    if (count == found.length) {
+                        found = Arrays.copyOf(found, count * 2);
+                    }
+                    found[count++] = npc;
+                }
+            }
+            return Arrays.copyOf(found, count);
+        }
+    }
+}
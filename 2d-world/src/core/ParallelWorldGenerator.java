@@ -0,0 +1,161 @@
+package core;
+
+import tileengine.TileGrid;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Generates large worlds on many cores. The map is cut into a grid of regions about
+ * {@link #REGION_SIZE} tiles across, and each region gets its own {@link WorldGenerator} seeded
+ * from (seed, regionX, regionY). Regions draw their rooms, hallways and walls independently on a
+ * ForkJoinPool, and are stitched together by a doorway on every edge between two regions, which
+ * both regions connect to their nearest room. Items, Oski and the avatar are then placed over the
+ * whole map from the seed, as in {@link WorldGenerator#generate()}.
+ *
+ * Since no region depends on another, or on the order regions finish in, a seed always gives the
+ * same world whatever the pool and its number of threads. The layout is not the same as the one
+ * {@link WorldGenerator#generate(long, int, int)} makes for that seed.
+ */
+public final class ParallelWorldGenerator {
+    public static final int REGION_SIZE = 64;
+
+    private ParallelWorldGenerator() {
+    }
+
+    /**
+     * Generates a world on the common ForkJoinPool.
+     * @param seed the seed we use for random generation.
+     * @param width the width of the world in tiles.
+     * @param height the height of the world in tiles.
+     * @return the generated world.
+     */
+    public static GeneratedWorld generate(long seed, int width, int height) {
+        return generate(seed, width, height, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Generates a world on the given pool.
+     * @param seed the seed we use for random generation.
+     * @param width the width of the world in tiles.
+     * @param height the height of the world in tiles.
+     * @param pool the pool the regions are generated on.
+     * @return the generated world.
+     */
+    public static GeneratedWorld generate(long seed, int width, int height, ForkJoinPool pool) {
+        WorldGenerator finisher = new WorldGenerator(seed, width, height); // Also checks the size
+        int columns = Math.max(1, width / REGION_SIZE);
+        int rows = Math.max(1, height / REGION_SIZE);
+        TileGrid world = finisher.emptyWorld();
+        List<List<int[]>> regionRooms = new ArrayList<>(columns * rows);
+        for (int i = 0; i < columns * rows; i++) {
+            regionRooms.add(null);
+        }
+        pool.invoke(new RegionTask(seed, world, columns, rows, 0, columns * rows, regionRooms));
+
+        List<int[]> hallwayCoords = new ArrayList<>();
+        for (List<int[]> rooms : regionRooms) {
+            hallwayCoords.addAll(rooms);
+        }
+        finisher.placeItems(world);
+        finisher.spawnOski(world);
+        finisher.spawnAvatar(world);
+        return new GeneratedWorld(seed, world, hallwayCoords, finisher.getAlcoholPositions(),
+                finisher.getClipperCardPositions(), finisher.getOskiPosition(), finisher.getAvatarPosition());
+    }
+
+    /**
+     * Generates the rooms, hallways, doorways and walls of one region, without items.
+     * @param seed the seed of the whole world.
+     * @param regionX the region's column.
+     * @param regionY the region's row.
+     * @param columns how many columns of regions the world has.
+     * @param rows how many rows of regions the world has.
+     * @param width the width of the region in tiles.
+     * @param height the height of the region in tiles.
+     * @param rooms receives the hallway anchor of each room, relative to the region.
+     * @return the region's tiles.
+     */
+    static TileGrid generateRegion(long seed, int regionX, int regionY, int columns, int rows,
+                                   int width, int height, List<int[]> rooms) {
+        WorldGenerator generator = new WorldGenerator(WorldGenerator.subSeed(seed, regionX, regionY),
+                width, height);
+        TileGrid tiles = generator.emptyWorld();
+        generator.drawRooms(tiles, WorldGenerator.ROOM_MIN, WorldGenerator.ROOM_MAX);
+        generator.drawLines(tiles);
+        generator.drawDoorways(tiles,
+                regionX > 0 ? WorldGenerator.doorway(seed, true, regionX, regionY, height) : -1,
+                regionX < columns - 1 ? WorldGenerator.doorway(seed, true, regionX + 1, regionY, height) : -1,
+                regionY > 0 ? WorldGenerator.doorway(seed, false, regionX, regionY, width) : -1,
+                regionY < rows - 1 ? WorldGenerator.doorway(seed, false, regionX, regionY + 1, width) : -1);
+        generator.drawWalls(tiles);
+        rooms.addAll(generator.getHallwayCoords());
+        return tiles;
+    }
+
+    /**
+     * Where region boundaries fall along one side of the world. The size is split as evenly as
+     * possible, so every region is at least REGION_SIZE tiles unless the world is smaller.
+     * @param size the width or height of the world.
+     * @param count the number of regions along that side.
+     * @param i the index of a boundary, from 0 to count.
+     * @return the coordinate where region i starts.
+     */
+    private static int boundary(int size, int count, int i) {
+        return (int) ((long) size * i / count);
+    }
+
+    /**
+     * Generates a range of regions, in row-major order, splitting the range in half until a task
+     * has one region left. Each region is copied into its own part of the world grid, so tasks
+     * never write the same cell.
+     */
+    private static final class RegionTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final long seed;
+        private final TileGrid world;
+        private final int columns;
+        private final int rows;
+        private final int from;
+        private final int to;
+        private final transient List<List<int[]>> regionRooms; // Tasks are never serialized
+
+        RegionTask(long seed, TileGrid world, int columns, int rows, int from, int to,
+                   List<List<int[]>> regionRooms) {
+            this.seed = seed;
+            this.world = world;
+            this.columns = columns;
+            this.rows = rows;
+            this.from = from;
+            this.to = to;
+            this.regionRooms = regionRooms;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new RegionTask(seed, world, columns, rows, from, middle, regionRooms),
+                        new RegionTask(seed, world, columns, rows, middle, to, regionRooms));
+                return;
+            }
+            int regionX = from % columns;
+            int regionY = from / columns;
+            int startX = boundary(world.width(), columns, regionX);
+            int startY = boundary(world.height(), rows, regionY);
+            int width = boundary(world.width(), columns, regionX + 1) - startX;
+            int height = boundary(world.height(), rows, regionY + 1) - startY;
+
+            List<int[]> rooms = new ArrayList<>();
+            TileGrid region = generateRegion(seed, regionX, regionY, columns, rows, width, height, rooms);
+            world.copyRect(region, 0, 0, startX, startY, width, height);
+            for (int[] room : rooms) {
+                room[0] += startX;
+                room[1] += startY;
+            }
+            regionRooms.set(from, rooms);
+        }
+    }
+}
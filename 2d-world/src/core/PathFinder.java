@@ -0,0 +1,257 @@
+package core;
+
+import tileengine.TileStore;
+import tileengine.Tileset;
+
+import java.util.Arrays;
+import java.util.function.IntPredicate;
+
+/**
+ * Finds shortest paths over a map with A*. Moves go to the four neighbouring cells, like the
+ * avatar's, and the Manhattan distance to the goal guides the search. Which tiles can be walked
+ * through is a predicate on tile ids; the goal cell itself is always allowed, so a path can end
+ * on the avatar or an item.
+ *
+ * A search keeps its state in scratch arrays that belong to the calling thread and are reused by
+ * its next search, so finding a path allocates nothing once the arrays have grown to the map's
+ * size, and NPCs can search every tick. The open list is a binary heap of cell indices.
+ *
+ * Of several shortest paths, the one found is always the same for the same map and cells.
+ */
+public final class PathFinder {
+    /**
+     * Walks through grass only.
+     */
+    public static final IntPredicate GRASS = id -> id == Tileset.GRASS.id();
+
+    private static final int[] DX = {1, -1, 0, 0};
+    private static final int[] DY = {0, 0, 1, -1};
+    private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
+    private PathFinder() {
+    }
+
+    /**
+     * Finds a shortest path between two cells.
+     * @param world the tilemap for world.
+     * @param fromX the x-coordinate of the start.
+     * @param fromY the y-coordinate of the start.
+     * @param toX the x-coordinate of the goal.
+     * @param toY the y-coordinate of the goal.
+     * @param passable which tile ids can be walked through.
+     * @return the row-major indices of the cells after the start up to and including the goal,
+     *         an empty array if the start is the goal, or null if the goal cannot be reached.
+     */
+    public static int[] findPath(TileStore world, int fromX, int fromY, int toX, int toY, IntPredicate passable) {
+        Scratch scratch = SCRATCH.get();
+        int length = search(scratch, world, fromX, fromY, toX, toY, passable);
+        if (length < 0) {
+            return null;
+        }
+        int[] path = new int[length];
+        int cell = world.index(toX, toY);
+        for (int i = length - 1; i >= 0; i--) {
+            path[i] = cell;
+            cell = scratch.cameFrom[cell];
+        }
+        return path;
+    }
+
+    /**
+     * Finds the first move of a shortest path between two cells, without allocating anything.
+     * @param world the tilemap for world.
+     * @param fromX the x-coordinate of the start.
+     * @param fromY the y-coordinate of the start.
+     * @param toX the x-coordinate of the goal.
+     * @param toY the y-coordinate of the goal.
+     * @param passable which tile ids can be walked through.
+     * @return the row-major index of the cell to move to, or -1 if the start is the goal or the
+     *         goal cannot be reached.
+     */
+    public static int nextStep(TileStore world, int fromX, int fromY, int toX, int toY, IntPredicate passable) {
+        Scratch scratch = SCRATCH.get();
+        int length = search(scratch, world, fromX, fromY, toX, toY, passable);
+        if (length <= 0) {
+            return -1;
+        }
+        int cell = world.index(toX, toY);
+        for (int i = 1; i < length; i++) {
+            cell = scratch.cameFrom[cell];
+        }
+        return cell;
+    }
+
+    /**
+     * Runs A* and leaves the path in scratch.cameFrom.
+     * @return the number of moves from the start to the goal, or -1 if the goal cannot be reached.
+     */
+    private static int search(Scratch scratch, TileStore world, int fromX, int fromY, int toX, int toY,
+                              IntPredicate passable) {
+        if (!world.isValid(fromX, fromY) || !world.isValid(toX, toY)) {
+            throw new IndexOutOfBoundsException("path from (" + fromX + ", " + fromY + ") to ("
+                    + toX + ", " + toY + ") leaves the " + world.width() + "x" + world.height() + " map");
+        }
+        int width = world.width();
+        int start = world.index(fromX, fromY);
+        int goal = world.index(toX, toY);
+        if (start == goal) {
+            return 0;
+        }
+        scratch.begin(width * world.height());
+        scratch.open(start, 0, manhattan(fromX, fromY, toX, toY));
+
+        while (scratch.heapSize > 0) {
+            int cell = scratch.pop();
+            if (cell == goal) {
+                return scratch.gScore[goal];
+            }
+            int x = cell % width;
+            int y = cell / width;
+            int g = scratch.gScore[cell] + 1;
+            for (int direction = 0; direction < 4; direction++) {
+                int nx = x + DX[direction];
+                int ny = y + DY[direction];
+                if (!world.isValid(nx, ny)) {
+                    continue;
+                }
+                int next = cell + DX[direction] + DY[direction] * width;
+                if (next != goal && !passable.test(world.getId(next))) {
+                    continue;
+                }
+                if (scratch.isClosed(next) || (scratch.isSeen(next) && scratch.gScore[next] <= g)) {
+                    continue;
+                }
+                scratch.cameFrom[next] = cell;
+                scratch.open(next, g, g + manhattan(nx, ny, toX, toY));
+            }
+        }
+        return -1;
+    }
+
+    private static int manhattan(int x, int y, int toX, int toY) {
+        return Math.abs(x - toX) + Math.abs(y - toY);
+    }
+
+    /**
+     * One thread's search state. Instead of clearing the per-cell arrays before every search,
+     * each search gets a new stamp, and a cell's entries only count if its stamp is the current
+     * one. {@link HierarchicalPathFinder} searches its graph of entrances with one too.
+     */
+    static final class Scratch {
+        int[] stamps = new int[0]; // Stamp of the search that last saw each cell
+        int[] gScore = new int[0];
+        int[] fScore = new int[0];
+        int[] cameFrom = new int[0];
+        int[] heapIndex = new int[0]; // Where each open cell is in the heap, or -1 once closed
+        int[] heap = new int[0];
+        int heapSize;
+        int stamp;
+
+        void begin(int cells) {
+            if (stamps.length < cells) {
+                stamps = new int[cells];
+                gScore = new int[cells];
+                fScore = new int[cells];
+                cameFrom = new int[cells];
+                heapIndex = new int[cells];
+                heap = new int[cells];
+                stamp = 0;
+            }
+            heapSize = 0;
+            if (++stamp == 0) {
+                // The stamp wrapped around: old stamps could look current again
+                Arrays.fill(stamps, 0);
+                stamp = 1;
+            }
+        }
+
+        boolean isSeen(int cell) {
+            return stamps[cell] == stamp;
+        }
+
+        boolean isClosed(int cell) {
+            return isSeen(cell) && heapIndex[cell] < 0;
+        }
+
+        /**
+         * Adds a cell to the open list, or moves it up if it is already there with a worse score.
+         */
+        void open(int cell, int g, int f) {
+            gScore[cell] = g;
+            fScore[cell] = f;
+            if (isSeen(cell)) {
+                siftUp(heapIndex[cell]);
+            } else {
+                stamps[cell] = stamp;
+                heap[heapSize] = cell;
+                heapIndex[cell] = heapSize;
+                siftUp(heapSize++);
+            }
+        }
+
+        /**
+         * Takes the open cell with the lowest score off the heap and closes it.
+         */
+        int pop() {
+            int top = heap[0];
+            int last = heap[--heapSize];
+            heapIndex[top] = -1;
+            if (heapSize > 0) {
+                heap[0] = last;
+                heapIndex[last] = 0;
+                siftDown(0);
+            }
+            return top;
+        }
+
+        /**
+         * Orders cells by score, then prefers the one further along its path, then the lower
+         * index, so ties always break the same way.
+         */
+        boolean before(int a, int b) {
+            if (fScore[a] != fScore[b]) {
+                return fScore[a] < fScore[b];
+            }
+            if (gScore[a] != gScore[b]) {
+                return gScore[a] > gScore[b];
+            }
+            return a < b;
+        }
+
+        void siftUp(int i) {
+            int cell = heap[i];
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (!before(cell, heap[parent])) {
+                    break;
+                }
+                heap[i] = heap[parent];
+                heapIndex[heap[i]] = i;
+                i = parent;
+            }
+            heap[i] = cell;
+            heapIndex[cell] = i;
+        }
+
+        void siftDown(int i) {
+            int cell = heap[i];
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= heapSize) {
+                    break;
+                }
+                if (child + 1 < heapSize && before(heap[child + 1], heap[child])) {
+                    child++;
+                }
+                if (!before(heap[child], cell)) {
+                    break;
+                }
+                heap[i] = heap[child];
+                heapIndex[heap[i]] = i;
+                i = child;
+            }
+            heap[i] = cell;
+            heapIndex[cell] = i;
+        }
+    }
+}
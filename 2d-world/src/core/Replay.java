@@ -0,0 +1,70 @@
+package core;
+
+import java.nio.file.Path;
+
+/**
+ * Plays back an {@link InputLog} without a window: the world is generated from the log's seed,
+ * and each key is handled on the tick it was recorded on, including the player's choices while
+ * talking to Oski, whose answers are shown at once. Nothing is drawn and nothing waits for real
+ * time, so a game of many minutes replays in a fraction of a second, and the same log always
+ * ends in the same state.
+ *
+ * At every checkpoint in the log the replay's {@link World#stateHash()} is compared with the
+ * recorded one, so a change that makes the game behave differently is caught at the first
+ * checkpoint after it, rather than as a strange position at the end.
+ */
+public final class Replay {
+
+    private Replay() {
+    }
+
+    /**
+     * Replays a whole log.
+     * @param log the input log.
+     * @return the world as the game ended.
+     * @throws IllegalStateException if the replay's state differs from the recorded state at a checkpoint.
+     * @throws IllegalArgumentException if the file is not a valid input log.
+     */
+    public static World run(Path log) {
+        return run(log, Long.MAX_VALUE);
+    }
+
+    /**
+     * Replays a log up to a tick, for looking at the state on the way to a bug.
+     * @param log the input log.
+     * @param untilTick the number of ticks to replay; the keys of that tick are not handled.
+     * @return the world after that many ticks, or as the game ended if it ended sooner.
+     * @throws IllegalStateException if the replay's state differs from the recorded state at a checkpoint.
+     * @throws IllegalArgumentException if the file is not a valid input log.
+     */
+    public static World run(Path log, long untilTick) {
+        if (untilTick < 0) {
+            throw new IllegalArgumentException("tick must not be negative: " + untilTick);
+        }
+        try (InputLog.Reader reader = new InputLog.Reader(log)) {
+            World world = new World();
+            world.startReplay(reader.seed(), reader.width(), reader.height());
+            byte type;
+            while ((type = reader.next()) != 0) {
+                long tick = reader.tick();
+                while (world.getTicks() < Math.min(tick, untilTick)) {
+                    world.replayTick();
+                }
+                boolean key = type == InputLog.KEY || type == InputLog.DIALOGUE_KEY;
+                if (tick >= untilTick && (key || tick > untilTick)) {
+                    break;
+                }
+                if (type == InputLog.KEY) {
+                    world.replayKey(reader.key());
+                } else if (type == InputLog.DIALOGUE_KEY) {
+                    world.replayDialogueKey(reader.key());
+                } else if (world.stateHash() != reader.stateHash()) {
+                    throw new IllegalStateException("replay went out of step by tick " + tick
+                            + ": expected state " + Long.toHexString(reader.stateHash())
+                            + ", got " + Long.toHexString(world.stateHash()));
+                }
+            }
+            return world;
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package core;
+
+import tileengine.TETile;
+import tileengine.TileGrid;
+import tileengine.Tileset;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Everything needed to resume a game: the seed, the live map, where the avatar and Oski are,
+ * which items exist and which were picked up, and the player's inventory.
+ *
+ * This is what {@link SaveState} writes and reads, independent of how {@link World} keeps the
+ * same state in memory. A save data object is a copy and never changes once made.
+ */
+public final class SaveData {
+    private final long seed;
+    private final TileGrid tiles;
+    private final int[] avatarPosition;
+    private final int[] oskiPosition;
+    private final ItemIndex items;
+    private final List<TETile> inventory;
+
+    /**
+     * Makes save data from copies of the given state.
+     * @param seed the seed the world was generated from.
+     * @param tiles the live map, or null to regenerate it from the seed on load.
+     * @param avatarPosition the avatar's {x, y}, or null if the avatar has not spawned.
+     * @param oskiPosition Oski's {x, y}, or null if Oski has not spawned.
+     * @param alcoholPositions where the beers were placed.
+     * @param clipperCardPositions where the clipper cards were placed.
+     * @param pickedUpItems the positions of items that have been picked up.
+     * @param inventory the items in the player's inventory.
+     */
+    public SaveData(long seed, TileGrid tiles, int[] avatarPosition, int[] oskiPosition,
+                    List<int[]> alcoholPositions, List<int[]> clipperCardPositions,
+                    List<int[]> pickedUpItems, List<TETile> inventory) {
+        this(seed, tiles, avatarPosition, oskiPosition,
+                indexItems(alcoholPositions, clipperCardPositions, pickedUpItems), inventory);
+    }
+
+    /**
+     * Makes save data from copies of the given state.
+     * @param seed the seed the world was generated from.
+     * @param tiles the live map, or null to regenerate it from the seed on load.
+     * @param avatarPosition the avatar's {x, y}, or null if the avatar has not spawned.
+     * @param oskiPosition Oski's {x, y}, or null if Oski has not spawned.
+     * @param items every item placed, and whether it was picked up.
+     * @param inventory the items in the player's inventory.
+     */
+    public SaveData(long seed, TileGrid tiles, int[] avatarPosition, int[] oskiPosition,
+                    ItemIndex items, List<TETile> inventory) {
+        this.seed = seed;
+        this.tiles = tiles == null ? null : tiles.snapshot(); // Copied only once either is written to
+        this.avatarPosition = avatarPosition == null ? null : avatarPosition.clone();
+        this.oskiPosition = oskiPosition == null ? null : oskiPosition.clone();
+        this.items = items.copy();
+        this.inventory = Collections.unmodifiableList(new ArrayList<>(inventory));
+    }
+
+    /**
+     * Indexes items given as position lists: beers first, then clipper cards.
+     */
+    private static ItemIndex indexItems(List<int[]> alcoholPositions, List<int[]> clipperCardPositions,
+                                        List<int[]> pickedUpItems) {
+        ItemIndex items = new ItemIndex();
+        for (int[] pos : alcoholPositions) {
+            items.put(pos[0], pos[1], Tileset.BEER);
+        }
+        for (int[] pos : clipperCardPositions) {
+            items.put(pos[0], pos[1], Tileset.CLIPPER_CARD);
+        }
+        for (int[] pos : pickedUpItems) {
+            items.pickUp(pos[0], pos[1]);
+        }
+        return items;
+    }
+
+    /**
+     * Get the seed.
+     * @return the seed the world was generated from.
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Get the live map.
+     * @return a copy of the map, or null if it should be regenerated from the seed.
+     */
+    public TileGrid getTiles() {
+        return tiles == null ? null : tiles.copy();
+    }
+
+    /**
+     * Get the avatar's position.
+     * @return a copy of the {x, y} position, or null if the avatar has not spawned.
+     */
+    public int[] getAvatarPosition() {
+        return avatarPosition == null ? null : avatarPosition.clone();
+    }
+
+    /**
+     * Get Oski's position.
+     * @return a copy of the {x, y} position, or null if Oski has not spawned.
+     */
+    public int[] getOskiPosition() {
+        return oskiPosition == null ? null : oskiPosition.clone();
+    }
+
+    /**
+     * Get the beer positions, including beers that were picked up.
+     * @return a copy of the beer positions.
+     */
+    public List<int[]> getAlcoholPositions() {
+        return positionsOf(Tileset.BEER, false);
+    }
+
+    /**
+     * Get the clipper card positions, including cards that were picked up.
+     * @return a copy of the clipper card positions.
+     */
+    public List<int[]> getClipperCardPositions() {
+        return positionsOf(Tileset.CLIPPER_CARD, false);
+    }
+
+    /**
+     * Get the positions of items that have been picked up.
+     * @return a copy of the picked up positions.
+     */
+    public List<int[]> getPickedUpItems() {
+        return positionsOf(null, true);
+    }
+
+    /**
+     * Get every item placed and whether it was picked up.
+     * @return a copy of the item index.
+     */
+    public ItemIndex getItems() {
+        return items.copy();
+    }
+
+    private List<int[]> positionsOf(TETile item, boolean onlyPickedUp) {
+        List<int[]> positions = new ArrayList<>();
+        for (int i = 0; i < items.size(); i++) {
+            if ((item == null || items.item(i) == item) && (!onlyPickedUp || items.isPickedUp(i))) {
+                positions.add(new int[]{items.x(i), items.y(i)});
+            }
+        }
+        return Collections.unmodifiableList(positions);
+    }
+
+    /**
+     * Get the player's inventory.
+     * @return an unmodifiable list of the items in the inventory.
+     */
+    public List<TETile> getInventory() {
+        return inventory;
+    }
+}
@@ -0,0 +1,386 @@
+package core;
+
+import tileengine.TETile;
+import tileengine.TileGrid;
+import tileengine.Tileset;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+
+/* An append-only journal of the changes made to a game since its save was written, so a crash
+ * loses the last moments of a session instead of all of it.
+ *
+ * The journal sits next to the save it continues, named like the save with ".journal" after it
+ * (numbers big-endian):
+ *
+ *   int    magic "2DWJ"
+ *   short  format version
+ *   int    the CRC32 at the end of the save it continues
+ *   batches, each:
+ *     varint length, then that many bytes of records
+ *     int    CRC32 of the records
+ *
+ * and each record is a byte type followed by varints:
+ *   TILE     x, y, tile id   a tile of the map changed
+ *   MOVE     x, y            the avatar moved
+ *   PICK_UP  x, y            the item at (x, y) was picked up
+ *   ITEM     tile id         an item went into the inventory
+ *
+ * Records are collected in memory, and commit() hands them as a batch to a writer thread, which
+ * appends and fsyncs it. Batches that arrive while the writer waits on the disk are synced
+ * together, so the game never waits for the disk, however often it commits. Once the journal
+ * grows past COMPACT_BYTES, compact() replaces the save with the current state and starts an
+ * empty journal. Both files are written to a temporary file first and renamed into place, so a
+ * crash while they are written leaves the last complete save and its journal. The state to
+ * compact is a {@link SaveData}, whose map is a copy-on-write snapshot, and the writer encodes
+ * it, so a save costs the game no more than a copy of the positions and the inventory.
+ *
+ * A new game starts without a save of its own, so that starting one does not replace the save
+ * of the game played before it: nothing is written until its first compact(), which happens at
+ * the first autosave or when the player saves.
+ *
+ * On load, the batches whose checksums match are replayed over the save, up to the first that
+ * does not: the one being written when the game stopped. A journal left over from another save,
+ * when a crash came between writing a save and starting its journal, is ignored.
+ */
+public final class SaveJournal implements Closeable {
+    /**
+     * How large the journal grows before the save is rewritten and the journal emptied.
+     */
+    public static final int COMPACT_BYTES = 64 * 1024;
+
+    private static final int MAGIC = 0x3244574A; // "2DWJ"
+    private static final short VERSION = 1;
+    private static final int HEADER_BYTES = Integer.BYTES + Short.BYTES + Integer.BYTES;
+    private static final byte TILE = 1;
+    private static final byte MOVE = 2;
+    private static final byte PICK_UP = 3;
+    private static final byte ITEM = 4;
+
+    private final Path saveFile;
+    private final Path journalFile;
+    private final ByteArrayOutputStream records = new ByteArrayOutputStream();
+    private long journalBytes; // The size the journal will have once the writer catches up
+    // A virtual thread, so that many games journaling at once do not need a thread each
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(
+            Thread.ofVirtual().name("save-journal").factory());
+    private final AtomicInteger queuedBatches = new AtomicInteger(); // Batches the writer has not written yet
+    private FileChannel channel; // Only used by the writer
+    private boolean failed; // Only used by the writer: a write failed, so batches are dropped until a save is written
+    private boolean saved; // Whether a save has been written for the game, so batches have a journal to go to
+
+    /**
+     * Starts journaling a game: writes its current state as the save, and an empty journal.
+     * @param saveFile the save to write, with the journal next to it.
+     * @param data the state of the game.
+     */
+    public SaveJournal(Path saveFile, SaveData data) {
+        this(saveFile);
+        compact(data);
+    }
+
+    /**
+     * Starts journaling a new game, without writing anything: the save, and any journal after
+     * it, stay as they are until the first {@link #compact(SaveData)}.
+     * @param saveFile the save to write at the first compaction, with the journal next to it.
+     */
+    public SaveJournal(Path saveFile) {
+        this.saveFile = saveFile;
+        this.journalFile = journalFor(saveFile);
+        this.journalBytes = HEADER_BYTES;
+    }
+
+    /**
+     * Get the journal that continues a save.
+     * @param saveFile the save.
+     * @return the path of its journal.
+     */
+    public static Path journalFor(Path saveFile) {
+        return saveFile.resolveSibling(saveFile.getFileName() + ".journal");
+    }
+
+    /**
+     * Records that a tile of the map changed.
+     * @param x the x-coordinate.
+     * @param y the y-coordinate.
+     * @param tile the new tile.
+     */
+    public void tile(int x, int y, TETile tile) {
+        records.write(TILE);
+        SaveState.writeVarInt(records, x);
+        SaveState.writeVarInt(records, y);
+        SaveState.writeVarInt(records, tile.id());
+    }
+
+    /**
+     * Records that the avatar moved.
+     * @param x the new x-coordinate.
+     * @param y the new y-coordinate.
+     */
+    public void move(int x, int y) {
+        records.write(MOVE);
+        SaveState.writeVarInt(records, x);
+        SaveState.writeVarInt(records, y);
+    }
+
+    /**
+     * Records that an item was picked up.
+     * @param x the x-coordinate of the item.
+     * @param y the y-coordinate of the item.
+     */
+    public void pickUp(int x, int y) {
+        records.write(PICK_UP);
+        SaveState.writeVarInt(records, x);
+        SaveState.writeVarInt(records, y);
+    }
+
+    /**
+     * Records that an item went into the inventory.
+     * @param item the item.
+     */
+    public void item(TETile item) {
+        records.write(ITEM);
+        SaveState.writeVarInt(records, item.id());
+    }
+
+    /**
+     * Hands the records made since the last commit to the writer, without waiting for them to
+     * be written.
+     */
+    public void commit() {
+        if (records.size() == 0) {
+            return;
+        }
+        if (!saved) {
+            journalBytes += records.size(); // Still counted, so that the game is saved in time
+            records.reset();
+            return;
+        }
+        byte[] batch = records.toByteArray();
+        records.reset();
+        CRC32 crc = new CRC32();
+        crc.update(batch);
+        ByteArrayOutputStream frame = new ByteArrayOutputStream(batch.length + 9);
+        SaveState.writeVarInt(frame, batch.length);
+        frame.writeBytes(batch);
+        frame.writeBytes(ByteBuffer.allocate(Integer.BYTES).putInt((int) crc.getValue()).array());
+        byte[] bytes = frame.toByteArray();
+        journalBytes += bytes.length;
+        queuedBatches.incrementAndGet();
+        writer.execute(() -> append(bytes));
+    }
+
+    /**
+     * Whether the journal has grown enough that the save should be rewritten.
+     * @return true once the journal is over {@link #COMPACT_BYTES}.
+     */
+    public boolean needsCompaction() {
+        return journalBytes > COMPACT_BYTES;
+    }
+
+    /**
+     * Whether anything has been committed since the save was last written.
+     * @return true if the journal holds batches.
+     */
+    public boolean hasChanges() {
+        return journalBytes > HEADER_BYTES;
+    }
+
+    /**
+     * Replaces the save with the current state of the game and starts an empty journal for it.
+     * The state is encoded and written by the writer, so this takes no longer than making the
+     * save data did.
+     * @param data the state of the game, which must include every change recorded so far.
+     */
+    public void compact(SaveData data) {
+        records.reset(); // Already in the state
+        journalBytes = HEADER_BYTES;
+        saved = true;
+        writer.execute(() -> writeSnapshot(data));
+    }
+
+    /**
+     * Commits the last records and waits for everything to be written.
+     */
+    @Override
+    public void close() {
+        commit();
+        writer.execute(() -> {
+            try {
+                if (channel != null) {
+                    channel.close();
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        });
+        writer.shutdown();
+        boolean interrupted = false;
+        while (true) {
+            try {
+                if (writer.awaitTermination(1, TimeUnit.MINUTES)) {
+                    break;
+                }
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Appends a batch, and syncs unless another batch is already waiting to be appended. After a
+     * failed write the batch is dropped: the journal would not replay past the failure anyway,
+     * and the next save written holds every change, so the batches after it are journaled again.
+     */
+    private void append(byte[] batch) {
+        boolean last = queuedBatches.decrementAndGet() == 0;
+        if (failed) {
+            return;
+        }
+        try {
+            writeFully(channel, ByteBuffer.wrap(batch));
+            if (last) {
+                channel.force(false);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            failed = true;
+        }
+    }
+
+    /**
+     * Replaces the save and starts an empty journal after it.
+     */
+    private void writeSnapshot(SaveData data) {
+        try {
+            byte[] save = SaveState.encode(data);
+            if (channel != null) {
+                channel.close(); // Everything in it is in the new save
+                channel = null;
+            }
+            writeAtomically(saveFile, ByteBuffer.wrap(save));
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES)
+                    .putInt(MAGIC)
+                    .putShort(VERSION)
+                    .putInt(ByteBuffer.wrap(save).getInt(save.length - Integer.BYTES));
+            writeAtomically(journalFile, header.flip());
+            channel = FileChannel.open(journalFile, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            failed = false;
+        } catch (IOException | IllegalArgumentException e) {
+            e.printStackTrace();
+            failed = true;
+        }
+    }
+
+    /**
+     * Writes a file under a temporary name, syncs it, and renames it over the file. The directory
+     * is synced too, so that the rename itself survives a crash.
+     */
+    static void writeAtomically(Path path, ByteBuffer contents) throws IOException {
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            writeFully(out, contents);
+            out.force(false);
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        Path directory = path.toAbsolutePath().getParent();
+        try (FileChannel dir = FileChannel.open(directory, StandardOpenOption.READ)) {
+            dir.force(true);
+        } catch (IOException e) {
+            // Some platforms, such as Windows, cannot open a directory; the rename is then as
+            // durable as the file system makes it
+        }
+    }
+
+    private static void writeFully(FileChannel out, ByteBuffer contents) throws IOException {
+        while (contents.hasRemaining()) {
+            out.write(contents);
+        }
+    }
+
+    /**
+     * Replays a save's journal, if it has one, over the state read from the save.
+     * @param data the state read from the save.
+     * @param saveCrc the CRC32 stored at the end of the save.
+     * @param journalFile the save's journal.
+     * @return the state with every complete batch of the journal applied, or data itself if
+     *         there is no journal for this save.
+     * @throws IOException if the journal cannot be read.
+     * @throws IllegalArgumentException if the journal is not a journal, or from an unknown version.
+     */
+    static SaveData replay(SaveData data, int saveCrc, Path journalFile) throws IOException {
+        if (!Files.exists(journalFile)) {
+            return data;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(journalFile));
+        if (buffer.remaining() < HEADER_BYTES || buffer.getInt() != MAGIC) {
+            throw new IllegalArgumentException("not a save journal");
+        }
+        short version = buffer.getShort();
+        if (version != VERSION) {
+            throw new IllegalArgumentException("unsupported save journal version " + version);
+        }
+        if (buffer.getInt() != saveCrc || data.getTiles() == null) {
+            return data; // Left over from another save
+        }
+
+        TileGrid tiles = data.getTiles();
+        int[] avatar = data.getAvatarPosition();
+        ItemIndex items = data.getItems().copy();
+        List<TETile> inventory = new ArrayList<>(data.getInventory());
+        int batches = 0;
+        while (buffer.hasRemaining()) {
+            ByteBuffer batch;
+            try {
+                int length = SaveState.readVarInt(buffer);
+                if (length > buffer.remaining() - Integer.BYTES) {
+                    break;
+                }
+                batch = buffer.slice(buffer.position(), length);
+                buffer.position(buffer.position() + length);
+                CRC32 crc = new CRC32();
+                crc.update(batch.duplicate());
+                if ((int) crc.getValue() != buffer.getInt()) {
+                    break;
+                }
+            } catch (BufferUnderflowException | IllegalArgumentException e) {
+                break; // Cut off while it was written
+            }
+            while (batch.hasRemaining()) {
+                byte type = batch.get();
+                switch (type) {
+                    case TILE -> tiles.set(SaveState.readVarInt(batch), SaveState.readVarInt(batch),
+                            Tileset.byId(SaveState.readVarInt(batch)));
+                    case MOVE -> avatar = new int[]{SaveState.readVarInt(batch), SaveState.readVarInt(batch)};
+                    case PICK_UP -> items.pickUp(SaveState.readVarInt(batch), SaveState.readVarInt(batch));
+                    case ITEM -> inventory.add(Tileset.byId(SaveState.readVarInt(batch)));
+                    default -> throw new IllegalArgumentException("save journal is corrupt: unknown record " + type);
+                }
+            }
+            batches++;
+        }
+        if (batches == 0) {
+            return data;
+        }
+        return new SaveData(data.getSeed(), tiles, avatar, data.getOskiPosition(), items, inventory);
+    }
+}
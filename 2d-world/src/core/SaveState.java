@@ -1,13 +1,55 @@
 package core;
 
-import utils.FileUtils;
-import java.io.*;
-import java.util.Base64;
+import core.legacy.LegacySaveReader;
+import tileengine.TETile;
+import tileengine.TileGrid;
+import tileengine.Tileset;
 
-/* Allows a game state to be saved and reloaded from the main menu. */
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/* Allows a game state to be saved and reloaded from the main menu.
+ *
+ * Saves use a small versioned binary format, written and read through a FileChannel
+ * (all numbers big-endian):
+ *
+ *   int    magic "2DWS"
+ *   short  format version
+ *   long   seed
+ *   byte   flags: 1 = has map, 2 = has avatar, 4 = has Oski
+ *   int x, int y          avatar position, if flagged
+ *   int x, int y          Oski position, if flagged
+ *   map, if flagged:
+ *     int width, int height
+ *     byte n, then n shorts   palette of the tile ids used by the map
+ *     int runs, then runs of (byte palette index, varint length) over the map in row-major order
+ *   int n, then n items of (short tile id, int x, int y, byte picked up)
+ *   int n, then n shorts   tile ids of the inventory
+ *   int    CRC32 of everything above
+ *
+ * Saves from before this format (Java serialization in Base64 text) are still read through
+ * LegacySaveReader. A save in this format may be continued by a SaveJournal next to it, which
+ * loading replays over the save.
+ */
 public class SaveState {
 
-    private static final String SAVE_FILE = "save-file.txt";
+    public static final String SAVE_FILE = "save-file.bin";
+    private static final String LEGACY_SAVE_FILE = "save-file.txt";
+    private static final int MAGIC = 0x32445753; // "2DWS"
+    private static final short VERSION = 1;
+    private static final int HAS_TILES = 1;
+    private static final int HAS_AVATAR = 2;
+    private static final int HAS_OSKI = 4;
 
     /**
      * Makes save file from current game state.
@@ -15,12 +57,18 @@ public class SaveState {
      * @param world the current world object we want to save.
      */
     public static void saveGame(World world) {
-        try (ByteArrayOutputStream byteStream = new ByteArrayOutputStream();
-             ObjectOutputStream out = new ObjectOutputStream(byteStream)) {
-            out.writeObject(world);
-            out.flush();
-            String gameState = Base64.getEncoder().encodeToString(byteStream.toByteArray());
-            FileUtils.writeFile(SAVE_FILE, gameState);
+        saveGame(world, SAVE_FILE);
+    }
+
+    /**
+     * Makes save file from current game state at the given path.
+     *
+     * @param world the current world object we want to save.
+     * @param filename the file to write the save to.
+     */
+    public static void saveGame(World world, String filename) {
+        try {
+            write(world.toSaveData(), Path.of(filename));
             System.out.println("Game saved successfully.");
         } catch (IOException e) {
             e.printStackTrace();
@@ -28,25 +76,305 @@ public class SaveState {
     }
 
     /**
-     * Loads the game from our save file.
+     * Loads the game from our save file, or from a save in the old format if there is no
+     * save in the current one.
      *
      * @return loaded game file or error.
      */
     public static World loadGame() {
-        if (FileUtils.fileExists(SAVE_FILE)) {
-            try {
-                String gameState = FileUtils.readFile(SAVE_FILE);
-                byte[] data = Base64.getDecoder().decode(gameState);
-                try (ByteArrayInputStream byteStream = new ByteArrayInputStream(data);
-                     ObjectInputStream in = new ObjectInputStream(byteStream)) {
-                    World world = (World) in.readObject();
-                    System.out.println("Game loaded successfully.");
-                    return world;
+        return loaded(loadSaveData());
+    }
+
+    /**
+     * Loads the game from the save file at the given path, which may be in either format.
+     *
+     * @param filename the file to read the save from.
+     * @return loaded game file or error.
+     */
+    public static World loadGame(String filename) {
+        return loaded(loadSaveData(filename));
+    }
+
+    private static World loaded(SaveData data) {
+        if (data == null) {
+            return null;
+        }
+        System.out.println("Game loaded successfully.");
+        return World.fromSaveData(data);
+    }
+
+    /**
+     * Reads our save file, falling back to a save in the old format.
+     *
+     * @return the saved state, or null if there is no readable save.
+     */
+    public static SaveData loadSaveData() {
+        if (Files.exists(Path.of(SAVE_FILE))) {
+            return loadSaveData(SAVE_FILE);
+        }
+        return loadSaveData(LEGACY_SAVE_FILE);
+    }
+
+    /**
+     * Reads the save file at the given path, which may be in either format.
+     *
+     * @param filename the file to read the save from.
+     * @return the saved state, or null if the file is missing or unreadable.
+     */
+    public static SaveData loadSaveData(String filename) {
+        Path path = Path.of(filename);
+        if (!Files.exists(path)) {
+            return null;
+        }
+        try {
+            ByteBuffer buffer = readAll(path);
+            SaveData data;
+            if (buffer.remaining() >= Integer.BYTES && buffer.getInt(0) == MAGIC) {
+                data = decode(buffer);
+                try {
+                    data = SaveJournal.replay(data, buffer.getInt(buffer.limit() - Integer.BYTES),
+                            SaveJournal.journalFor(path));
+                } catch (IOException | IllegalArgumentException e) {
+                    // The save on its own is still a consistent, if older, state
+                    e.printStackTrace();
                 }
-            } catch (IOException | ClassNotFoundException e) {
-                e.printStackTrace();
+            } else {
+                data = LegacySaveReader.read(filename);
+            }
+            return data;
+        } catch (IOException | IllegalArgumentException | BufferUnderflowException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Writes save data to a file in the binary format, replacing the file if it exists.
+     *
+     * @param data the state to save.
+     * @param path the file to write.
+     * @throws IOException if the file cannot be written.
+     */
+    public static void write(SaveData data, Path path) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(encode(data));
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+
+    /**
+     * Encodes save data in the binary format.
+     *
+     * @param data the state to encode.
+     * @return the encoded bytes, including the trailing checksum.
+     */
+    public static byte[] encode(SaveData data) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            TileGrid tiles = data.getTiles();
+            int[] avatar = data.getAvatarPosition();
+            int[] oski = data.getOskiPosition();
+
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            out.writeLong(data.getSeed());
+            out.writeByte((tiles != null ? HAS_TILES : 0) | (avatar != null ? HAS_AVATAR : 0)
+                    | (oski != null ? HAS_OSKI : 0));
+            if (avatar != null) {
+                out.writeInt(avatar[0]);
+                out.writeInt(avatar[1]);
+            }
+            if (oski != null) {
+                out.writeInt(oski[0]);
+                out.writeInt(oski[1]);
+            }
+            if (tiles != null) {
+                writeTiles(out, tiles);
+            }
+
+            ItemIndex items = data.getItems();
+            out.writeInt(items.size());
+            for (int i = 0; i < items.size(); i++) {
+                out.writeShort(items.item(i).id());
+                out.writeInt(items.x(i));
+                out.writeInt(items.y(i));
+                out.writeByte(items.isPickedUp(i) ? 1 : 0);
+            }
+
+            List<TETile> inventory = data.getInventory();
+            out.writeInt(inventory.size());
+            for (TETile item : inventory) {
+                out.writeShort(item.id());
+            }
+
+            CRC32 crc = new CRC32();
+            crc.update(bytes.toByteArray());
+            out.writeInt((int) crc.getValue());
+        } catch (IOException e) {
+            // A ByteArrayOutputStream never throws.
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Decodes save data in the binary format.
+     *
+     * @param buffer the encoded bytes, from the magic number to the checksum.
+     * @return the decoded state.
+     * @throws IllegalArgumentException if the data is corrupt or from an unknown version.
+     */
+    public static SaveData decode(ByteBuffer buffer) {
+        int start = buffer.position();
+        int end = buffer.limit() - Integer.BYTES;
+        if (end < start) {
+            throw new IllegalArgumentException("save is truncated");
+        }
+        CRC32 crc = new CRC32();
+        crc.update(buffer.duplicate().position(start).limit(end));
+        if ((int) crc.getValue() != buffer.getInt(end)) {
+            throw new IllegalArgumentException("save is corrupt: checksum mismatch");
+        }
+        if (buffer.getInt() != MAGIC) {
+            throw new IllegalArgumentException("not a save file");
+        }
+        short version = buffer.getShort();
+        if (version != VERSION) {
+            throw new IllegalArgumentException("unsupported save version " + version);
+        }
+
+        long seed = buffer.getLong();
+        int flags = buffer.get();
+        int[] avatar = (flags & HAS_AVATAR) != 0 ? new int[]{buffer.getInt(), buffer.getInt()} : null;
+        int[] oski = (flags & HAS_OSKI) != 0 ? new int[]{buffer.getInt(), buffer.getInt()} : null;
+        TileGrid tiles = (flags & HAS_TILES) != 0 ? readTiles(buffer) : null;
+
+        ItemIndex items = new ItemIndex();
+        int itemCount = buffer.getInt();
+        for (int i = 0; i < itemCount; i++) {
+            TETile type = Tileset.byId(buffer.getShort());
+            if (type != Tileset.BEER && type != Tileset.CLIPPER_CARD) {
+                throw new IllegalArgumentException("unknown item " + type.description());
+            }
+            int x = buffer.getInt();
+            int y = buffer.getInt();
+            items.put(x, y, type, buffer.get() != 0);
+        }
+
+        int inventorySize = buffer.getInt();
+        List<TETile> inventory = new ArrayList<>(inventorySize);
+        for (int i = 0; i < inventorySize; i++) {
+            inventory.add(Tileset.byId(buffer.getShort()));
+        }
+        return new SaveData(seed, tiles, avatar, oski, items, inventory);
+    }
+
+    /**
+     * Writes the map as a palette of tile ids followed by run-length encoded palette indices.
+     */
+    private static void writeTiles(DataOutputStream out, TileGrid tiles) throws IOException {
+        int cells = tiles.width() * tiles.height();
+        int[] paletteIndex = new int[Short.MAX_VALUE + 1];
+        List<Integer> palette = new ArrayList<>();
+        for (int i = 0; i < cells; i++) {
+            int id = tiles.getId(i);
+            if (paletteIndex[id] == 0) {
+                palette.add(id);
+                paletteIndex[id] = palette.size(); // stored off by one so 0 means unused
+            }
+        }
+        if (palette.size() > 255) {
+            throw new IllegalArgumentException("map uses more than 255 different tiles");
+        }
+        out.writeInt(tiles.width());
+        out.writeInt(tiles.height());
+        out.writeByte(palette.size());
+        for (int id : palette) {
+            out.writeShort(id);
+        }
+
+        ByteArrayOutputStream runBytes = new ByteArrayOutputStream();
+        int runs = 0;
+        int i = 0;
+        while (i < cells) {
+            int id = tiles.getId(i);
+            int length = 1;
+            while (i + length < cells && tiles.getId(i + length) == id) {
+                length++;
+            }
+            runBytes.write(paletteIndex[id] - 1);
+            writeVarInt(runBytes, length);
+            runs++;
+            i += length;
+        }
+        out.writeInt(runs);
+        runBytes.writeTo(out);
+    }
+
+    private static TileGrid readTiles(ByteBuffer buffer) {
+        int width = buffer.getInt();
+        int height = buffer.getInt();
+        int[] palette = new int[buffer.get() & 0xFF];
+        for (int i = 0; i < palette.length; i++) {
+            palette[i] = buffer.getShort();
+        }
+        TileGrid tiles = new TileGrid(width, height);
+        int cells = width * height;
+        int runs = buffer.getInt();
+        int i = 0;
+        for (int run = 0; run < runs; run++) {
+            int id = palette[buffer.get() & 0xFF];
+            int length = readVarInt(buffer);
+            if (length <= 0 || i + length > cells) {
+                throw new IllegalArgumentException("save is corrupt: map runs overflow the map");
+            }
+            for (int end = i + length; i < end; i++) {
+                tiles.setId(i, id);
+            }
+        }
+        if (i != cells) {
+            throw new IllegalArgumentException("save is corrupt: map runs do not cover the map");
+        }
+        return tiles;
+    }
+
+    /**
+     * Writes an unsigned int seven bits at a time, lowest bits first.
+     */
+    static void writeVarInt(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    static int readVarInt(ByteBuffer buffer) {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            byte b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("save is corrupt: varint too long");
+    }
+
+    private static ByteBuffer readAll(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("save file is too large: " + size + " bytes");
+            }
+            ByteBuffer buffer = ByteBuffer.allocate((int) size);
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                // keep reading until the buffer is full or the file ends
             }
+            return buffer.flip();
         }
-        return null;
     }
 }
@@ -0,0 +1,58 @@
+package core;
+
+import tileengine.TileGrid;
+
+/**
+ * Input from a string of keys, as if they were typed one after another as fast as the game
+ * takes them. With {@link World#runHeadless(InputSource)} it plays a whole game without a
+ * window, for regression tests and fuzzing: "N12345SWWDDE:Q" starts a new game with seed 12345,
+ * walks up twice and right twice, interacts, then quits.
+ *
+ * The mouse is never over the map, and the source is exhausted once every key has been taken.
+ */
+public class ScriptedInput implements InputSource {
+    private final String keys;
+    private int next;
+
+    /**
+     * Makes a source that gives the keys of a string in order.
+     * @param keys the keys to type.
+     */
+    public ScriptedInput(String keys) {
+        this.keys = keys;
+    }
+
+    /**
+     * Plays a game from a string of keys in a new world without a window.
+     * @param keys the keys to type, starting from the main menu.
+     * @return a copy of the map played on when the game ended, or null if no game was started.
+     */
+    public static TileGrid play(String keys) {
+        return new World().runHeadless(new ScriptedInput(keys));
+    }
+
+    /**
+     * Takes the next key of the script. Nothing is waited for, since no more keys will come.
+     * @param timeoutNanos ignored.
+     * @return the next key, or null once every key has been taken.
+     */
+    @Override
+    public InputEvent poll(long timeoutNanos) {
+        return next < keys.length() ? InputEvent.key(keys.charAt(next++)) : null;
+    }
+
+    @Override
+    public double mouseX() {
+        return -1;
+    }
+
+    @Override
+    public double mouseY() {
+        return -1;
+    }
+
+    @Override
+    public boolean isExhausted() {
+        return next == keys.length();
+    }
+}
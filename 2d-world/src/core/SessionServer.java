@@ -0,0 +1,242 @@
+package core;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hosts many independent games in one JVM, each played by one client over a socket on the
+ * loopback interface. Every connection is a session: a {@link World} of its own, run with
+ * {@link World#runHeadless(InputSource)} on a virtual thread of its own, with its save and
+ * chunks in a directory of its own.
+ *
+ * The protocol is lines of text. The client sends keys, as in a {@link ScriptedInput} script,
+ * and every line is handled as one batch: the keys are played, in as few ticks as the game
+ * needs, before the next line is read. After each line the server answers with the session's
+ * status, "state ticks x y" (x and y are "-" while there is no avatar), and an empty line just
+ * asks for the status. When the game ends the server answers "ENDED ticks x y" and closes the
+ * connection.
+ *
+ * A session waiting for its client is a virtual thread parked on a socket read, and plays no
+ * ticks, so thousands of idle sessions cost little more than their memory.
+ *
+ * A connection may name its session with a first line "session NAME" (letters, digits, '-'
+ * and '_'), so that a later connection with that name finds its save; otherwise it is given a
+ * new number. A name already in use is answered with "BUSY" and the connection closed.
+ */
+public class SessionServer implements Closeable {
+    // Connections waiting to be accepted; enough for a burst of clients while sessions start
+    private static final int BACKLOG = 1024;
+
+    private final ServerSocket serverSocket;
+    private final Path directory;
+    private final ExecutorService sessions = Executors.newVirtualThreadPerTaskExecutor();
+    private final Set<String> activeNames = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger nextNumber = new AtomicInteger();
+
+    /**
+     * Starts listening on the loopback interface.
+     * @param port the port, or 0 for any free port.
+     * @param directory where each session's directory is made.
+     * @throws IOException if the port cannot be bound or the directory made.
+     */
+    public SessionServer(int port, Path directory) throws IOException {
+        this.directory = Files.createDirectories(directory);
+        this.serverSocket = new ServerSocket();
+        serverSocket.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), BACKLOG);
+    }
+
+    /**
+     * Get the port the server listens on.
+     * @return the port.
+     */
+    public int port() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Get the number of sessions being played.
+     * @return the sessions with a client connected.
+     */
+    public int activeSessions() {
+        return activeNames.size();
+    }
+
+    /**
+     * Accepts connections until the server is closed, starting a session on a virtual thread
+     * for each.
+     */
+    public void serve() {
+        while (!serverSocket.isClosed()) {
+            Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (IOException e) {
+                if (serverSocket.isClosed()) {
+                    return;
+                }
+                throw new UncheckedIOException(e);
+            }
+            sessions.execute(() -> runSession(socket));
+        }
+    }
+
+    /**
+     * Stops accepting connections and ends every session by closing its connection.
+     */
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        sessions.shutdownNow();
+    }
+
+    /**
+     * Plays one session, from the first line of the connection to the end of its game.
+     */
+    private void runSession(Socket socket) {
+        String name = null;
+        try (socket) {
+            socket.setTcpNoDelay(true);
+            Session session = new Session(socket);
+            String first = session.in.readLine();
+            if (first == null) {
+                return;
+            }
+            if (first.startsWith("session ")) {
+                name = first.substring("session ".length());
+                if (!name.matches("[A-Za-z0-9_-]{1,64}")) {
+                    session.reply("BAD NAME");
+                    return;
+                }
+                first = "";
+            } else {
+                name = Integer.toString(nextNumber.getAndIncrement());
+                while (activeNames.contains(name) || Files.exists(directory.resolve(name))) {
+                    name = Integer.toString(nextNumber.getAndIncrement());
+                }
+            }
+            if (!activeNames.add(name)) {
+                name = null;
+                session.reply("BUSY");
+                return;
+            }
+            session.line = first;
+
+            World world = session.world;
+            world.setDirectory(Files.createDirectories(directory.resolve(name)));
+            world.runHeadless(session);
+            session.reply("ENDED " + session.status());
+        } catch (IOException | UncheckedIOException e) {
+            // The client went away; its game ends with the connection
+        } finally {
+            if (name != null) {
+                activeNames.remove(name);
+            }
+        }
+    }
+
+    /**
+     * The keys of one connection, which its game waits on.
+     */
+    private static final class Session implements InputSource {
+        private final BufferedReader in;
+        private final Writer out;
+        private final World world = new World();
+        private String line; // The batch of keys being played
+        private int next; // The next key of the line
+        private boolean answered; // Whether the status after the line was sent
+        private boolean closed; // Whether the client has no more lines
+
+        Session(Socket socket) throws IOException {
+            in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+        }
+
+        /**
+         * Takes the next key of the line. Once the line has been played, answers with the
+         * status and, unless the timeout is 0, reads the next line.
+         */
+        @Override
+        public InputEvent poll(long timeoutNanos) {
+            while (next == line.length()) {
+                if (timeoutNanos == 0 || closed) {
+                    return null;
+                }
+                try {
+                    if (!answered) {
+                        reply(world.getState() + " " + status());
+                    }
+                    String read = in.readLine();
+                    if (read == null) {
+                        closed = true;
+                        return null;
+                    }
+                    line = read;
+                    next = 0;
+                    answered = false;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+            return InputEvent.key(line.charAt(next++));
+        }
+
+        @Override
+        public double mouseX() {
+            return -1;
+        }
+
+        @Override
+        public double mouseY() {
+            return -1;
+        }
+
+        @Override
+        public boolean isExhausted() {
+            return closed && next == line.length();
+        }
+
+        private String status() {
+            Avatar avatar = world.getAvatar();
+            return world.getTicks() + (avatar == null ? " - -" : " " + avatar.getX() + " " + avatar.getY());
+        }
+
+        private void reply(String status) throws IOException {
+            out.write(status);
+            out.write('\n');
+            out.flush();
+            answered = true;
+        }
+    }
+
+    /**
+     * Runs a server until the process is stopped.
+     * @param args the port, and the directory for the sessions (default "sessions").
+     * @throws IOException if the server cannot start.
+     */
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 0;
+        Path directory = Path.of(args.length > 1 ? args[1] : "sessions");
+        try (SessionServer server = new SessionServer(port, directory)) {
+            System.out.println("Serving sessions on port " + server.port());
+            server.serve();
+        }
+    }
+}
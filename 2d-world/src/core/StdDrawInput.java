@@ -0,0 +1,82 @@
+package core;
+
+import edu.princeton.cs.algs4.DrawListener;
+import edu.princeton.cs.algs4.StdDraw;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Input from the StdDraw window. StdDraw calls this listener on the event thread for every key
+ * typed and mouse press, and the events wait in a queue until the game loop takes them, so the
+ * loop can sleep instead of polling {@link StdDraw#hasNextKeyTyped()}.
+ */
+public class StdDrawInput implements InputSource, DrawListener {
+    private final BlockingQueue<InputEvent> events = new LinkedBlockingQueue<>();
+
+    private StdDrawInput() {
+    }
+
+    /**
+     * Starts listening to the StdDraw window.
+     * @return the input, which gets every event from now on.
+     */
+    public static StdDrawInput listen() {
+        StdDrawInput input = new StdDrawInput();
+        StdDraw.addListener(input);
+        return input;
+    }
+
+    @Override
+    public InputEvent poll(long timeoutNanos) throws InterruptedException {
+        if (timeoutNanos < 0) {
+            return events.take();
+        }
+        return events.poll(timeoutNanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public double mouseX() {
+        return StdDraw.mouseX();
+    }
+
+    @Override
+    public double mouseY() {
+        return StdDraw.mouseY();
+    }
+
+    @Override
+    public void keyTyped(char c) {
+        // StdDraw also keeps its own queue of typed keys, which nothing reads any more
+        while (StdDraw.hasNextKeyTyped()) {
+            StdDraw.nextKeyTyped();
+        }
+        events.add(InputEvent.key(c));
+    }
+
+    @Override
+    public void mousePressed(double x, double y) {
+        events.add(InputEvent.click(x, y));
+    }
+
+    @Override
+    public void mouseDragged(double x, double y) {
+    }
+
+    @Override
+    public void mouseReleased(double x, double y) {
+    }
+
+    @Override
+    public void mouseClicked(double x, double y) {
+    }
+
+    @Override
+    public void keyPressed(int keycode) {
+    }
+
+    @Override
+    public void keyReleased(int keycode) {
+    }
+}
@@ -6,6 +6,7 @@ import tileengine.Tileset;
 
 import java.awt.*;
 import java.io.Serializable;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Map;
@@ -17,6 +18,7 @@ import java.util.Map;
  */
 public class UserInterface implements Serializable {
     private String tileInfo;  // Add this line to store tile info
+    private transient boolean hudChanged = true; // Whether the HUD differs from what was last drawn
     private static final long serialVersionUID = 1L; // ID for serialization
     private ArrayList<TETile> playerInventory;
     private transient World world;  // Reference to the world instance
@@ -25,6 +27,26 @@ public class UserInterface implements Serializable {
     private Map<String, String> secondDialogueOptions;
     private Map<String, String> secondOskiResponses;
     private boolean oskiLimit;
+    private transient boolean firstDialogue; // Whether Oski's first or second set of options is shown
+    private transient ArrayDeque<Runnable> dialoguePages; // Oski's answer, one page at a time
+    private transient DialogueOutcome dialogueOutcome; // What happens once the pages are shown
+    private transient long pageDeadline = -1; // When the page on screen is done, or -1 for none
+    public static final long END_SCREEN_MILLIS = 6000;
+    private static final long PAGE_MILLIS = 2500;
+
+    /**
+     * What a conversation with Oski leads to once his answer has been shown.
+     */
+    public enum DialogueOutcome {
+        /** The conversation goes on, and the options are shown again. */
+        CONTINUE,
+        /** The conversation is over, and the game goes on. */
+        CLOSED,
+        /** Oski took the clipper card, and the player won. */
+        WON,
+        /** Oski ate the player. */
+        EATEN
+    }
 
     // Constructor to initialize UserInterface with the world instance
     public UserInterface(World world) {
@@ -36,6 +58,7 @@ public class UserInterface implements Serializable {
         this.secondDialogueOptions = new HashMap<>();
         this.secondOskiResponses = new HashMap<>();
         oskiLimit = false;
+        this.dialoguePages = new ArrayDeque<>();
         fillDialogueTree();
     }
 
@@ -60,10 +83,14 @@ public class UserInterface implements Serializable {
 
     /**
      * Displays the main menu with options to start a new game, load a game,
-     * or quit the game.
+     * quit the game, or explore an infinite world. The choice arrives later through
+     * {@link #handleMenuEvent(InputEvent)}.
      * The title "Oski's Intervention" is displayed with bear and beer emojis.
      */
     public void setMainMenu() {
+        if (world.isHeadless()) {
+            return;
+        }
         setStartScreen();
         Font titleFont = new Font("Papyrus", Font.BOLD, 60);
         StdDraw.setFont(titleFont);
@@ -77,26 +104,21 @@ public class UserInterface implements Serializable {
         StdDraw.text(400, 275, "New Game (N)");
         StdDraw.text(400, 225, "Load Game (L)");
         StdDraw.text(400, 175, "Quit (Q)");
+        StdDraw.text(400, 125, "Infinite World (I)");
+        StdDraw.show();
+    }
 
-        boolean menuStatus = true;
-
-        while (menuStatus) {
-            if (StdDraw.hasNextKeyTyped()) {
-                char key = StdDraw.nextKeyTyped();
-                if (handleKeyPress(key)) {
-                    menuStatus = false;
-                }
-            }
-
-            if (StdDraw.isMousePressed()) {
-                double mouseX = StdDraw.mouseX();
-                double mouseY = StdDraw.mouseY();
-                if (handleMouseClick(mouseX, mouseY)) {
-                    menuStatus = false;
-                }
-            }
-            StdDraw.show();
+    /**
+     * Handles a key or click while the main menu is shown.
+     *
+     * @param event the key typed or the mouse click.
+     * @return True if an option was chosen, false otherwise.
+     */
+    public boolean handleMenuEvent(InputEvent event) {
+        if (event.isClick()) {
+            return handleMouseClick(event.getX(), event.getY());
         }
+        return handleKeyPress(event.getKey());
     }
 
     /**
@@ -137,14 +159,6 @@ public class UserInterface implements Serializable {
         }
     }
 
-    /**
-     * Shows the current frame and pauses for a short duration.
-     */
-    private void showThenPause() {
-        StdDraw.show();
-        StdDraw.pause(2500);
-    }
-
     /**
      * Displays a message indicating Oski is happy.
      */
@@ -154,134 +168,220 @@ public class UserInterface implements Serializable {
     }
 
     /**
-     * Displays a sequence showing Oski's happiness and ends the game.
+     * Displays the dialogue box for interacting with Oski. The player's choice arrives later
+     * through {@link #chooseDialogueOption(char)}.
      */
-    private void oskiHappySequence() {
+    public void showDialogueBox() {
+        firstDialogue = true;
+        dialoguePages.clear();
+        pageDeadline = -1;
+        drawDialogueOptions();
+    }
+
+    /**
+     * Draws the options the player currently has in the conversation with Oski.
+     */
+    private void drawDialogueOptions() {
+        if (world.isHeadless()) {
+            return;
+        }
+        int centerX = World.WIDTH / 2;
+        int centerY = World.HEIGHT / 2;
         drawDialogueBackground();
-        oskiHappy();
-        showThenPause();
-        renderEndScreen(false);
+        StdDraw.setFont(new Font("Papyrus", Font.PLAIN, 24));
+        StdDraw.text(centerX, centerY + 8, "Talk to Oski the Bear:");
+        StdDraw.setFont(new Font("Futura", Font.PLAIN, 16));
+        if (firstDialogue) {
+            StdDraw.text(centerX, centerY + 2, dialogueOptions.get("1"));
+            StdDraw.text(centerX, centerY - 1, dialogueOptions.get("2"));
+        } else {
+            StdDraw.text(centerX, centerY + 2, secondDialogueOptions.get("1"));
+            StdDraw.text(centerX, centerY - 1, secondDialogueOptions.get("2"));
+        }
+        oskiHasCard();
+        StdDraw.show();
     }
 
     /**
-     * Displays the dialogue box for interacting with Oski.
+     * Handles a key typed while the dialogue options are shown. A valid choice starts showing
+     * Oski's answer, one page at a time; other keys are ignored.
+     *
+     * @param key the key typed.
      */
-    public void showDialogueBox() {
+    public void chooseDialogueOption(char key) {
         int centerX = World.WIDTH / 2;
         int centerY = World.HEIGHT / 2;
-        boolean inDialogue = true;
-        boolean firstDialogue = true;
-        while (inDialogue) {
-            drawDialogueBackground();
-            StdDraw.setFont(new Font("Papyrus", Font.PLAIN, 24));
-            StdDraw.text(centerX, centerY + 8, "Talk to Oski the Bear:");
-            StdDraw.setFont(new Font("Futura", Font.PLAIN, 16));
-            if (firstDialogue) {
-                StdDraw.text(centerX, centerY + 2, dialogueOptions.get("1"));
-                StdDraw.text(centerX, centerY - 1, dialogueOptions.get("2"));
+        boolean hasKey = dialogueOptions.containsKey(Character.toString(key));
+        boolean secondKey = secondDialogueOptions.containsKey(Character.toString(key));
+        boolean hasCard = playerInventory.contains(Tileset.CLIPPER_CARD);
+        if (firstDialogue && hasKey || (key == '3' && hasCard)) {
+            if (key == '3') {
+                dialoguePages.add(() -> {
+                    drawDialogueBackground();
+                    oskiHappy();
+                });
+                dialogueOutcome = DialogueOutcome.WON;
             } else {
-                StdDraw.text(centerX, centerY + 2, secondDialogueOptions.get("1"));
-                StdDraw.text(centerX, centerY - 1, secondDialogueOptions.get("2"));
+                addResponsePage(oskiResponses.get(Character.toString(key)));
+                if (key == '2') {
+                    dialogueOutcome = DialogueOutcome.CLOSED;  // Exit dialogue on "Goodbye"
+                } else {
+                    dialogueOutcome = DialogueOutcome.CONTINUE;
+                    firstDialogue = false; // Move to the second dialogue tree
+                }
+            }
+        } else if (!firstDialogue && secondKey) {
+            addResponsePage(secondOskiResponses.get(Character.toString(key)));
+            if (key == '1') {
+                dialoguePages.add(() -> StdDraw.text(centerX, centerY, "Find me a BART card so I can get treatment."));
+                dialogueOutcome = DialogueOutcome.CLOSED;  // Exit dialogue after agreeing to help
+            } else if (!oskiLimit) {
+                dialoguePages.add(() -> StdDraw.text(centerX, centerY, "Go get me some beer... or else..."));
+                dialogueOutcome = DialogueOutcome.CONTINUE;
+                oskiLimit = true;
+            } else {
+                dialoguePages.add(() -> StdDraw.text(centerX, centerY, "I warned you... time for lunch!"));
+                dialoguePages.add(() -> {
+                    drawDialogueBackground();
+                    StdDraw.setFont(new Font("Futura", Font.PLAIN, 16));
+                    StdDraw.text(centerX, centerY + 2, "No Oski, don't do it!!! Stop!!!");
+                });
+                dialoguePages.add(() -> StdDraw.text(centerX, centerY, "AAAAAAAAAAAAHHHHH!!!!!"));
+                dialogueOutcome = DialogueOutcome.EATEN;
             }
-            oskiHasCard();
+        } else {
+            return;
+        }
+        showNextPage();
+    }
+
+    /**
+     * Queues a page with one of Oski's responses.
+     *
+     * @param oskiResponse what Oski says.
+     */
+    private void addResponsePage(String oskiResponse) {
+        dialoguePages.add(() -> {
+            drawDialogueBackground();
+            StdDraw.setFont(new Font("Papyrus", Font.PLAIN, 20));
+            StdDraw.text(World.WIDTH / 2, (World.HEIGHT / 2) + 2, oskiResponse);
+        });
+    }
+
+    /**
+     * Draws the next page of Oski's answer on top of the previous one and shows it.
+     */
+    private void showNextPage() {
+        Runnable page = dialoguePages.poll();
+        if (!world.isHeadless()) {
+            page.run();
             StdDraw.show();
+        }
+        pageDeadline = world.nanoTime() + PAGE_MILLIS * 1_000_000L;
+    }
 
-            if (StdDraw.hasNextKeyTyped()) {
-                char key = StdDraw.nextKeyTyped();
-                boolean hasKey = dialogueOptions.containsKey(Character.toString(key));
-                boolean secondKey = secondDialogueOptions.containsKey(Character.toString(key));
-                boolean hasCard = playerInventory.contains(Tileset.CLIPPER_CARD);
-                if (firstDialogue && hasKey || (key == '3' && playerInventory.contains(Tileset.CLIPPER_CARD))) {
-                    if (key == '3') {
-                        oskiHappySequence();
-                        inDialogue = false;
-                    } else {
-                        String oskiResponse = oskiResponses.get(Character.toString(key));
-                        drawDialogueBackground();
-                        StdDraw.setFont(new Font("Papyrus", Font.PLAIN, 20));
-                        StdDraw.text(centerX, centerY + 2, oskiResponse);
-                        showThenPause();
-                        if (key == '2') {
-                            inDialogue = false;  // Exit dialogue on "Goodbye"
-                        } else {
-                            firstDialogue = false; // Move to the second dialogue tree
-                        }
-                    }
-                } else if (!firstDialogue && secondKey || (key == '3' && hasCard)) {
-                    if (key == '3') {
-                        oskiHappySequence();
-                        inDialogue = false;
-                    } else {
-                        String oskiResponse = secondOskiResponses.get(Character.toString(key));
-                        drawDialogueBackground();
-                        StdDraw.setFont(new Font("Papyrus", Font.PLAIN, 20));
-                        StdDraw.text(centerX, centerY + 2, oskiResponse);
-                        showThenPause();
-                        if (key == '1') {
-                            StdDraw.text(centerX, centerY, "Find me a BART card so I can get treatment.");
-                            showThenPause();
-                            inDialogue = false;  // Exit dialogue after agreeing to help
-                        } else if (key == '2') {
-                            if (!oskiLimit) {
-                                StdDraw.text(centerX, centerY, "Go get me some beer... or else...");
-                                showThenPause();
-                                oskiLimit = true;
-                            } else {
-                                StdDraw.text(centerX, centerY, "I warned you... time for lunch!");
-                                showThenPause();
-                                drawDialogueBackground();
-                                StdDraw.setFont(new Font("Futura", Font.PLAIN, 16));
-                                StdDraw.text(centerX, centerY + 2, "No Oski, don't do it!!! Stop!!!");
-                                showThenPause();
-                                StdDraw.text(centerX, centerY, "AAAAAAAAAAAAHHHHH!!!!!");
-                                showThenPause();
-                                renderEndScreen(true);
-                            }
-                        }
-                    }
-                }
-            }
+    /**
+     * When the page of Oski's answer that is on screen has been shown long enough.
+     *
+     * @return the {@link World#nanoTime()} deadline, or -1 if the options are shown.
+     */
+    public long getDialoguePageDeadline() {
+        return pageDeadline;
+    }
+
+    /**
+     * Moves past the page of Oski's answer that is on screen, once its deadline has passed.
+     *
+     * @return CONTINUE while the conversation goes on, or how it ended.
+     */
+    public DialogueOutcome nextDialoguePage() {
+        if (!dialoguePages.isEmpty()) {
+            showNextPage();
+            return DialogueOutcome.CONTINUE;
+        }
+        pageDeadline = -1;
+        if (dialogueOutcome == DialogueOutcome.CONTINUE) {
+            drawDialogueOptions();
         }
+        return dialogueOutcome;
+    }
+
+    /**
+     * Get how the conversation with Oski ended the game, if it has.
+     *
+     * @return WON or EATEN once the player has made the choice that ends the game, or null.
+     */
+    public DialogueOutcome getEnding() {
+        return dialogueOutcome == DialogueOutcome.WON || dialogueOutcome == DialogueOutcome.EATEN
+                ? dialogueOutcome : null;
+    }
+
+    /**
+     * Whether Oski has already warned the player, so the next refusal gets them eaten.
+     *
+     * @return true once Oski has asked for beer.
+     */
+    public boolean isOskiLimit() {
+        return oskiLimit;
     }
 
     /**
      * Handles key presses for the main menu options.
      *
      * @param key The key pressed.
-     * @return True if an action was taken that should exit the menu loop, false otherwise.
+     * @return True if an option was chosen, false otherwise.
      */
     private boolean handleKeyPress(char key) {
         if (key == 'Q' || key == 'q') {
-            System.exit(0);
+            world.quit();
+            return true;
         }
         if (key == 'N' || key == 'n') {
-            StdDraw.clear(StdDraw.BLACK);
+            clearScreen();
             world.newGame();
             return true;
         } else if (key == 'L' || key == 'l') {
             world.loadGame();
             return true;
+        } else if (key == 'I' || key == 'i') {
+            clearScreen();
+            world.newInfiniteGame();
+            return true;
         }
         return false;
     }
 
+    /**
+     * Clears the menu off the screen, unless nothing is drawn.
+     */
+    private void clearScreen() {
+        if (!world.isHeadless()) {
+            StdDraw.clear(StdDraw.BLACK);
+        }
+    }
+
     /**
      * Handles mouse clicks for the main menu options.
      *
      * @param mouseX The x-coordinate of the mouse click.
      * @param mouseY The y-coordinate of the mouse click.
-     * @return True if an action was taken that should exit the menu loop, false otherwise.
+     * @return True if an option was chosen, false otherwise.
      */
     private boolean handleMouseClick(double mouseX, double mouseY) {
         if (isWithinBounds(mouseX, mouseY, 250, 550, 255, 295)) { // New Game
-            StdDraw.clear(StdDraw.BLACK);
+            clearScreen();
             world.newGame();
             return true;
         } else if (isWithinBounds(mouseX, mouseY, 250, 550, 205, 245)) { // Load Game
             world.loadGame();
             return true;
         } else if (isWithinBounds(mouseX, mouseY, 250, 550, 155, 195)) { // Quit
-            System.exit(0);
+            world.quit();
+            return true;
+        } else if (isWithinBounds(mouseX, mouseY, 250, 550, 105, 145)) { // Infinite World
+            clearScreen();
+            world.newInfiniteGame();
+            return true;
         }
         return false;
     }
@@ -291,6 +391,12 @@ public class UserInterface implements Serializable {
      * Displays tile information and updates the HUD elements.
      */
     public void renderHUD() {
+        // Erase the HUD band, since the incremental renderer does not clear the screen.
+        StdDraw.setPenColor(Color.BLACK);
+        StdDraw.filledRectangle(World.WIDTH / 2.0, World.HEIGHT + World.HUD_HEIGHT / 2.0,
+                World.WIDTH / 2.0, World.HUD_HEIGHT / 2.0);
+        hudChanged = false;
+
         StdDraw.setPenColor(Color.WHITE);
         Font hudFont = new Font("Futura", Font.PLAIN, 17);
         StdDraw.setFont(hudFont);
@@ -312,7 +418,8 @@ public class UserInterface implements Serializable {
     }
 
     /**
-     * Renders the end screen of the game.
+     * Renders the end screen of the game, which the game loop leaves up for
+     * {@link #END_SCREEN_MILLIS} before the game ends.
      * Displays a message based on whether the player was eaten by Oski or won the game.
      * @param eaten Indicates if the player was eaten by Oski.
      */
@@ -336,8 +443,6 @@ public class UserInterface implements Serializable {
         }
         // Show the final frame
         StdDraw.show();
-        StdDraw.pause(6000);
-        System.exit(0);
     }
 
     /**
@@ -391,7 +496,19 @@ public class UserInterface implements Serializable {
      * @param info The information about the tile to be displayed.
      */
     public void updateTileInfo(String info) {
-        this.tileInfo = info;
+        if (!info.equals(tileInfo)) {
+            this.tileInfo = info;
+            hudChanged = true;
+        }
+    }
+
+    /**
+     * Checks whether the HUD has changed since it was last rendered.
+     *
+     * @return true if {@link #renderHUD()} would draw something new.
+     */
+    public boolean isHUDChanged() {
+        return hudChanged;
     }
     /**
      * Adds an item to the player's inventory.
@@ -0,0 +1,132 @@
+package core;
+
+import tileengine.TETile;
+import tileengine.TileStore;
+import tileengine.Tileset;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * The cells of a map that can be walked on, which are the {@link Tileset#GRASS} cells. The cells
+ * are kept in one int array of row-major indices, so a random free cell is picked with a single
+ * random number, and a second array of where each cell sits in the first lets cells be added and
+ * removed in constant time as tiles change.
+ *
+ * The order of the cells, and so the cell a given Random picks, only depends on the map and the
+ * changes made through {@link #update}, which keeps spawning deterministic per seed.
+ */
+public final class WalkableIndex {
+    private static final int ABSENT = -1;
+
+    private final int width;
+    private final int height;
+    private final int[] cells; // Row-major indices of the walkable cells, in the first size slots
+    private final int[] slots; // Where each cell is in cells, or ABSENT
+    private int size;
+
+    /**
+     * Makes an empty index for a map of the given size.
+     * @param width width of the map in tiles.
+     * @param height height of the map in tiles.
+     */
+    public WalkableIndex(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.cells = new int[Math.multiplyExact(width, height)];
+        this.slots = new int[cells.length];
+        Arrays.fill(slots, ABSENT);
+    }
+
+    /**
+     * Indexes the walkable cells of a map.
+     * @param world the tilemap for world.
+     * @return an index of every grass cell, in row-major order.
+     */
+    public static WalkableIndex of(TileStore world) {
+        WalkableIndex index = new WalkableIndex(world.width(), world.height());
+        int grass = Tileset.GRASS.id();
+        for (int i = 0; i < index.cells.length; i++) {
+            if (world.getId(i) == grass) {
+                index.add(i);
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Get the number of walkable cells.
+     * @return the number of cells in the index.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Checks whether a cell is walkable.
+     * @param x the x-coordinate.
+     * @param y the y-coordinate.
+     * @return true if the cell is in the index.
+     */
+    public boolean contains(int x, int y) {
+        return slots[index(x, y)] != ABSENT;
+    }
+
+    /**
+     * Records that a tile was put on a cell, adding the cell if the tile is grass and removing it
+     * otherwise.
+     * @param x the x-coordinate.
+     * @param y the y-coordinate.
+     * @param tile the tile now on the cell.
+     */
+    public void update(int x, int y, TETile tile) {
+        int cell = index(x, y);
+        if (tile == Tileset.GRASS) {
+            add(cell);
+        } else {
+            remove(cell);
+        }
+    }
+
+    /**
+     * Picks a walkable cell.
+     * @param random where the choice comes from; it is asked for one int.
+     * @return the {x, y} position of the cell.
+     * @throws IllegalStateException if no cell is walkable.
+     */
+    public int[] pick(Random random) {
+        if (size == 0) {
+            throw new IllegalStateException("the map has no walkable cells");
+        }
+        int cell = cells[random.nextInt(size)];
+        return new int[]{cell % width, cell / width};
+    }
+
+    private void add(int cell) {
+        if (slots[cell] == ABSENT) {
+            slots[cell] = size;
+            cells[size++] = cell;
+        }
+    }
+
+    /**
+     * Removes a cell by moving the last cell into its slot.
+     */
+    private void remove(int cell) {
+        int slot = slots[cell];
+        if (slot != ABSENT) {
+            int last = cells[--size];
+            cells[slot] = last;
+            slots[last] = slot;
+            slots[cell] = ABSENT;
+        }
+    }
+
+    private int index(int x, int y) {
+        if (x < 0 || x >= width || y < 0 || y >= height) {
+            throw new IndexOutOfBoundsException("(" + x + ", " + y + ") is outside the "
+                    + width + "x" + height + " map");
+        }
+        return y * width + x;
+    }
+}
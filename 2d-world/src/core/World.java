@@ -1,16 +1,16 @@
 package core;
 
 import tileengine.TETile;
+import tileengine.TileGrid;
+import tileengine.TileStore;
 import tileengine.Tileset;
 import tileengine.TERenderer;
 import edu.princeton.cs.algs4.StdDraw;
 import java.io.Serializable;
-import java.util.Random;
 import java.util.ArrayList;
 import java.awt.*;
-import java.util.HashSet;
-import java.util.List;
-import java.util.Set;
+import java.nio.file.Path;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * The world engine for the game.
@@ -18,31 +18,100 @@ import java.util.Set;
  */
 public class World implements Serializable {
     private static final long serialVersionUID = 1L;
-    private Random random;
-    private final ArrayList<int[]> hallwayCoords = new ArrayList<>();
     private Avatar avatar;
     private Oski oski;
     private UserInterface ui = new UserInterface(this);
     public static final int WIDTH = 70;
     public static final int HEIGHT = 45;
     public static final int HUD_HEIGHT = 5;
-    private TETile[][] serializableTileMap;
-    private List<int[]> alcoholPositions;
-    private List<int[]> clipperCardPositions;
-    private Set<String> pickedUpItems; // Track items
+    public static final String CHUNK_DIRECTORY = "chunks";
+    public static final int TICKS_PER_SECOND = 50;
+    private static final long TICK_NANOS = 1_000_000_000L / TICKS_PER_SECOND;
+    private static final int MAX_SKIPPED_FRAMES = 5;
+    private static final int MAX_LAG_TICKS = 25; // Beyond this the game slows down rather than stalling to catch up
+    private static final int AUTOSAVE_TICKS = 30 * TICKS_PER_SECOND; // How often a changed bounded game is saved whole
+    public static final int INTERACT_RADIUS = 1; // How far away items can be picked up and Oski talked to
+    private static final int FOLLOW_MARGIN = 8; // How close the avatar gets to the edge of an unbounded world's window
+    private TileGrid tiles; // The live map
+    private ItemIndex items; // Every item placed, and whether it was picked up
+    private transient EntityIndex<TETile> entities; // The items still on the map, and Oski
+    private transient DistanceField avatarDistances; // Built when first asked for, then kept up to date
+    private transient HierarchicalPathFinder routes; // Likewise
+    private transient NpcStore npcs; // Simulated every tick on a bounded map
+    private transient FieldOfView fieldOfView; // Only used with fog of war
     private long seed;
-    private Boolean playing;
     private boolean isInitialGeneration;
+    private transient ChunkedWorld chunks; // Only set in an unbounded world
+    private int maxFramesPerSecond = 60;
+    private boolean fogOfWar; // Whether only what the avatar can see is drawn
+
+    // The game loop's state. Null once the player has quit or the game is over.
+    private transient volatile GameState state;
+    private transient InputSource input;
+    private transient TileStore liveWorld; // The map being played on: tiles, or a window onto chunks
+    private transient TERenderer ter;
+    private transient boolean infiniteGame; // Whether the seed being entered starts an unbounded world
+    private transient StringBuilder seedInput;
+    private transient StringBuilder keySequence; // The last keys typed, to spot ":q"
+    private transient long previousTime; // When the game loop last caught up, in nanoseconds
+    private transient long lag; // Simulated time the game loop is behind real time
+    private transient long nextFrame; // When the next frame may be drawn
+    private transient int skippedFrames;
+    private transient long endScreenDeadline;
+    private transient long ticks; // Ticks played since the game started
+    private transient Path recordingPath; // Where the next game started from a seed is recorded
+    private transient InputLog.Writer recorder; // The log of the game being recorded
+    private transient boolean headless; // Nothing is drawn or saved, and time only passes when the game waits
+    private transient long clock; // The time in nanoseconds when headless
+    private transient InputEvent pending; // An event taken while waiting, not yet handled
+    private transient Path directory; // Where saves and chunks are kept, or null for the working directory
+    private transient SaveJournal journal; // Keeps the save up to date while a bounded game is played
 
     public World() {
         this.ui = new UserInterface(this);
-        this.alcoholPositions = new ArrayList<>();
-        this.clipperCardPositions = new ArrayList<>();
-        this.pickedUpItems = new HashSet<>(); // Initialize the set
-        this.playing = true;
+        this.items = new ItemIndex();
+        this.entities = new EntityIndex<>();
         this.isInitialGeneration = true;
     }
 
+    /**
+     * Get how far every cell of the map being played on is from the avatar, through grass. The
+     * field is built on the first call and kept up to date as the avatar moves and items are
+     * picked up, so NPCs can all read their next step from it.
+     * @return the distance field, or null if no game is being played.
+     */
+    public DistanceField getAvatarDistances() {
+        if (avatarDistances == null && liveWorld != null && avatar != null) {
+            avatarDistances = new DistanceField(liveWorld, PathFinder.GRASS, avatar.getX(), avatar.getY());
+        }
+        return avatarDistances;
+    }
+
+    /**
+     * Get a hierarchical path finder over the map being played on, through grass, for NPCs
+     * crossing large maps. It is built on the first call and told about every tile the avatar and
+     * item pickups change.
+     * @return the path finder, or null if no game is being played.
+     */
+    public HierarchicalPathFinder getRoutes() {
+        if (routes == null && liveWorld != null) {
+            routes = new HierarchicalPathFinder(liveWorld, PathFinder.GRASS);
+        }
+        return routes;
+    }
+
+    /**
+     * Get the NPCs of this world, which wander and chase the avatar every tick of the game loop
+     * on a bounded map. Oski is not one of them.
+     * @return the NPCs, empty until some are added.
+     */
+    public NpcStore getNpcs() {
+        if (npcs == null) {
+            npcs = new NpcStore();
+        }
+        return npcs;
+    }
+
     /**
      * Get the avatar.
      * @return avatar in our scene.
@@ -59,12 +128,20 @@ public class World implements Serializable {
         return oski;
     }
 
+    /**
+     * Get the live tile map.
+     * @return the grid the game is played on, or null before a world is generated.
+     */
+    public TileGrid getTiles() {
+        return tiles;
+    }
+
     /**
      * Get the serializable tile map.
-     * @return tilemap that is serializable.
+     * @return a copy of the live tile map as an array.
      */
     public TETile[][] getSerializableTileMap() {
-        return serializableTileMap;
+        return tiles == null ? null : tiles.toArray();
     }
 
     /**
@@ -72,88 +149,269 @@ public class World implements Serializable {
      * @param serializableTileMap instance of serializableTileMap.
      */
     public void setSerializableTileMap(TETile[][] serializableTileMap) {
-        this.serializableTileMap = serializableTileMap;
+        this.tiles = TileGrid.fromArray(serializableTileMap);
     }
 
     /**
-     * Start the game in main menu.
+     * Start the game in main menu, with input from the StdDraw window, and run it until the
+     * player quits or the game is over.
      */
     public void run() {
+        run(StdDrawInput.listen());
+    }
+
+    /**
+     * Start the game in main menu and run it until the player quits or the game is over.
+     * @param source where the player's keys and clicks come from.
+     */
+    public void run(InputSource source) {
+        input = source;
+        state = GameState.MENU;
         ui.setMainMenu();
+        runLoop();
+    }
+
+    /**
+     * Runs the game from the main menu without a window, until the player quits, the game is
+     * over or the input source runs out. Nothing is drawn, ":q" only saves if the world has a
+     * {@link #setDirectory directory}, and nothing waits for real time: a tick is played as
+     * soon as keys arrive, handling all of them, and waiting for Oski's answer or the end screen
+     * takes no time at all. Each world runs on its own, so many can run at once on different
+     * threads.
+     * @param source where the player's keys come from, such as a {@link ScriptedInput}.
+     * @return a copy of the map played on when the game ended, or null if no game was started.
+     */
+    public TileGrid runHeadless(InputSource source) {
+        headless = true;
+        run(source);
+        return liveWorld == null ? null : TileGrid.copyOf(liveWorld);
+    }
+
+    /**
+     * Keeps this world's save and the chunks of its unbounded worlds in a directory of its own,
+     * instead of the working directory, so worlds running side by side do not share them. A
+     * headless world only saves on ":q" once it has a directory.
+     * @param directory the directory, which must exist, or null for the working directory.
+     */
+    public void setDirectory(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Whether this world is running without a window. See {@link #runHeadless(InputSource)}.
+     * @return true if nothing is drawn.
+     */
+    boolean isHeadless() {
+        return headless;
+    }
+    /**
+     * Records the next bounded game started from a seed to an input log, which
+     * {@link Replay} can play back. Games loaded from a save or in an unbounded world are not
+     * recorded.
+     * @param log the file to write the log to, or null to stop recording future games.
+     */
+    public void setRecording(Path log) {
+        recordingPath = log;
+    }
+
+    /**
+     * Get the number of ticks played since the game started.
+     * @return the ticks played.
+     */
+    public long getTicks() {
+        return ticks;
+    }
+
+    /**
+     * Get a hash of the state the game's ticks change: the map being played on, the avatar, the
+     * inventory, the NPCs, and how far the conversation with Oski has got, down to how the game
+     * ended. Games in the same state have the same hash, so a replay can check that it stays in
+     * step with the game it was recorded from.
+     * @return the hash, over whatever of that state exists.
+     */
+    public long stateHash() {
+        long hash = 0xCBF29CE484222325L;
+        if (liveWorld != null) {
+            int cells = liveWorld.width() * liveWorld.height();
+            for (int cell = 0; cell < cells; cell++) {
+                hash = mix(hash, liveWorld.getId(cell));
+            }
+        }
+        if (avatar != null) {
+            hash = mix(mix(hash, avatar.getX()), avatar.getY());
+        }
+        for (TETile item : ui.getInventory()) {
+            hash = mix(hash, item.id());
+        }
+        UserInterface.DialogueOutcome ending = ui.getEnding();
+        hash = mix(mix(hash, ending == null ? -1 : ending.ordinal()), ui.isOskiLimit() ? 1 : 0);
+        if (npcs != null) {
+            for (int npc = 0; npc < npcs.size(); npc++) {
+                hash = mix(mix(mix(hash, npcs.xs[npc]), npcs.ys[npc]), npcs.states[npc]);
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * One step of FNV-1a, an int at a time.
+     */
+    private static long mix(long hash, int value) {
+        return (hash ^ value) * 0x100000001B3L;
     }
 
     /**
-     * Method prompts user to enter a seed and then starts game loop.
+     * Get the screen the game is on.
+     * @return the current state, or null once the game has ended.
+     */
+    public GameState getState() {
+        return state;
+    }
+
+    /**
+     * Method prompts user to enter a seed, after which the game starts.
      */
     public void newGame() {
+        beginSeedEntry(false);
+    }
+
+    /**
+     * Prompts the user to enter a seed, after which the game starts in an unbounded world
+     * that is generated around the avatar as it explores.
+     */
+    public void newInfiniteGame() {
+        beginSeedEntry(true);
+    }
+
+    /**
+     * Shows the seed prompt. Digits are collected by {@link #handleSeedEvent} until the user presses S.
+     * @param infinite whether the seed starts an unbounded world.
+     */
+    private void beginSeedEntry(boolean infinite) {
+        infiniteGame = infinite;
+        seedInput = new StringBuilder();
+        state = GameState.SEED_ENTRY;
+        if (headless) {
+            return;
+        }
         Font font = new Font("Monospaced", Font.BOLD, 25);
         StdDraw.setFont(font);
         StdDraw.setPenColor(Color.WHITE);
         StdDraw.text(400, 300, "Enter Seed:");
-        StringBuilder seedInput = new StringBuilder();
         StdDraw.show();
-        boolean seedValidity = true;
-
-        while (seedValidity) {
-            if (StdDraw.hasNextKeyTyped()) {
-                char key = StdDraw.nextKeyTyped();
-                if (Character.isDigit(key)) {
-                    seedInput.append(key);
-                    StdDraw.clear(StdDraw.BLACK);
-                    StdDraw.setPenColor(Color.WHITE);
-                    StdDraw.text(400, 300, "Enter Seed:");
-                    StdDraw.text(400, 250, seedInput.toString());
-                    StdDraw.show();
-                } else if ((key == 'S' || key == 's') && seedInput.length() > 0) {
-                    long seedValue = Long.parseLong(seedInput.toString());
-                    TETile[][] world = new TETile[WIDTH][HEIGHT];
-                    generateWorld(world, seedValue);
-                    avatar = spawnAvatar(world, seedValue, avatar);
-                    seedValidity = false;
-
-                    // Initialize TERenderer, which also sets up StdDraw settings
-                    TERenderer ter = new TERenderer();
-                    ter.initialize(WIDTH, HEIGHT + HUD_HEIGHT);
-
-                    // Render the initial frame
-                    ter.renderFrame(world);
-
-                    gameLoop(world, avatar, ter);
-                }
+    }
+
+    /**
+     * Handles a key typed at the seed prompt.
+     * @param event the key typed or mouse click.
+     */
+    private void handleSeedEvent(InputEvent event) {
+        if (event.isClick()) {
+            return;
+        }
+        char key = event.getKey();
+        if (Character.isDigit(key)) {
+            seedInput.append(key);
+            if (headless) {
+                return;
+            }
+            StdDraw.clear(StdDraw.BLACK);
+            StdDraw.setPenColor(Color.WHITE);
+            StdDraw.text(400, 300, "Enter Seed:");
+            StdDraw.text(400, 250, seedInput.toString());
+            StdDraw.show();
+        } else if ((key == 'S' || key == 's') && seedInput.length() > 0) {
+            long seedValue = Long.parseLong(seedInput.toString());
+            TileStore world = infiniteGame ? startInfiniteGame(seedValue, WIDTH, HEIGHT)
+                    : startGame(seedValue, WIDTH, HEIGHT);
+            if (!infiniteGame && recordingPath != null) {
+                recorder = new InputLog.Writer(recordingPath, seedValue, WIDTH, HEIGHT);
+            }
+            if (headless) {
+                startPlaying(world, null, false);
+                return;
             }
+
+            // Initialize TERenderer, which also sets up StdDraw settings
+            TERenderer renderer = new TERenderer();
+            renderer.initialize(WIDTH, HEIGHT + HUD_HEIGHT);
+
+            // Render the initial frame
+            renderer.renderFrame(world);
+
+            startPlaying(world, renderer, false);
         }
     }
 
     /**
-     * Generates the world with a seed. It uses helper functions that build walls, rooms, hallways, and place entities.
-     * @param world the array of tiles that we want to draw onto.
-     * @param worldSeed the seed we use for random generation.
+     * Generates a new world and spawns the avatar into it without drawing anything.
+     * @param seedValue the seed we use for random generation.
+     * @param width the width of the world in tiles.
+     * @param height the height of the world in tiles.
+     * @return the tilemap for the new world.
      */
-    public void generateWorld(TETile[][] world, long worldSeed) {
-        int width = WIDTH;
-        int height = HEIGHT;
-        this.seed = worldSeed; // Save the seed
-        random = new Random(worldSeed);
-        serializableTileMap = new TETile[width][height];
+    public TileGrid startGame(long seedValue, int width, int height) {
+        TileGrid world = new TileGrid(width, height);
+        generateWorld(world, seedValue);
+        avatar = spawnAvatar(world, seedValue, avatar);
+        return world;
+    }
 
-        for (int x = 0; x < width; x++) {
-            for (int y = 0; y < height; y++) {
-                world[x][y] = Tileset.NOTHING;
-                serializableTileMap[x][y] = Tileset.NOTHING;
-            }
+    /**
+     * Starts an unbounded world and spawns the avatar in chunk (0, 0) without drawing anything.
+     * Chunks the player changed are kept in {@link #CHUNK_DIRECTORY}, in a directory per seed,
+     * under this world's directory if it has one. A headless world without a directory keeps
+     * them in memory, so it leaves nothing behind for the next game to load.
+     * @param seedValue the seed we use for random generation.
+     * @param width the width of the window onto the world, in tiles.
+     * @param height the height of the window onto the world, in tiles.
+     * @return the window onto the world, centered on the avatar.
+     */
+    public ChunkedWorld.Window startInfiniteGame(long seedValue, int width, int height) {
+        this.seed = seedValue;
+        this.isInitialGeneration = false;
+        Path chunkDirectory = null;
+        if (directory != null) {
+            chunkDirectory = directory.resolve(CHUNK_DIRECTORY).resolve(Long.toString(seedValue));
+        } else if (!headless) {
+            chunkDirectory = Path.of(CHUNK_DIRECTORY, Long.toString(seedValue));
         }
+        chunks = new ChunkedWorld(seedValue, chunkDirectory, ChunkedWorld.DEFAULT_RESIDENT_CHUNKS);
+        int[] spawn = chunks.findSpawn();
+        ChunkedWorld.Window world = chunks.window(spawn[0] - width / 2, spawn[1] - height / 2, width, height);
+        avatar = new Avatar(width / 2, height / 2, this);
+        world.set(avatar.getX(), avatar.getY(), Tileset.AVATAR);
+        return world;
+    }
 
-        for (int x = 0; x < width; x++) {
-            for (int y = 0; y < height; y++) {
-                serializableTileMap[x][y] = world[x][y];
+    /**
+     * Generates the world with a seed. The layout comes from the headless {@link WorldGenerator};
+     * this method draws it onto the given grid, makes that grid the live map, and records Oski
+     * and the items on this world.
+     * @param world the grid of tiles that we want to draw onto.
+     * @param worldSeed the seed we use for random generation.
+     */
+    public void generateWorld(TileGrid world, long worldSeed) {
+        this.seed = worldSeed; // Save the seed
+        WorldGenerator generator = new WorldGenerator(worldSeed, world.width(), world.height());
+        world.fill(Tileset.NOTHING);
+        generator.generateTerrain(world);
+        tiles = world;
+        npcs = null;
+
+        int[] oskiPosition = generator.getOskiPosition();
+        oski = new Oski(oskiPosition[0], oskiPosition[1]);
+        if (isInitialGeneration) {
+            for (int[] pos : generator.getAlcoholPositions()) {
+                items.put(pos[0], pos[1], Tileset.BEER);
+            }
+            for (int[] pos : generator.getClipperCardPositions()) {
+                items.put(pos[0], pos[1], Tileset.CLIPPER_CARD);
             }
+            isInitialGeneration = false;
         }
-        drawRooms(world, 6, 14);
-        drawLines(world);
-        drawWalls(world);
-        placeItems(world, worldSeed);
-        spawnOski(world, worldSeed);
-
+        placeItems(world);
+        indexEntities();
     }
 
 
@@ -164,447 +422,657 @@ public class World implements Serializable {
      * @param spawnedAvatar the avatar we want to spawn.
      * @return the spanwed avatar.
      */
-    public Avatar spawnAvatar(TETile[][] world, long spawnSeed, Avatar spawnedAvatar) {
-        boolean validSpawn = false;
-        int spawnX = 0;
-        int spawnY = 0;
-        int width = WIDTH;
-        int height = HEIGHT;
-
-        while (!validSpawn) {
-            Random spawnRandom = new Random(spawnSeed);
-            spawnX = spawnRandom.nextInt(width);
-            spawnY = spawnRandom.nextInt(height);
-
-            if (world[spawnX][spawnY] == Tileset.GRASS) {
-                validSpawn = true;
-                world[spawnX][spawnY] = Tileset.AVATAR;
-                spawnedAvatar = new Avatar(spawnX, spawnY, this);
-            } else {
-                spawnSeed++;
-            }
-        }
-        return spawnedAvatar;
+    public Avatar spawnAvatar(TileGrid world, long spawnSeed, Avatar spawnedAvatar) {
+        int[] spawn = WorldGenerator.findGrass(world, spawnSeed);
+        world.set(spawn[0], spawn[1], Tileset.AVATAR);
+        return new Avatar(spawn[0], spawn[1], this);
     }
 
     /**
-     * Ends game.
+     * Ends game. The game loop stops after the current step.
      */
     public void endGame() {
-        playing = false;
+        state = null;
     }
 
-
     /**
-     * Acts as an update method handling gameplay.
-     * @param world the tilemap for world.
-     * @param currentAvatar the avatar.
-     * @param ter the TERenderer we use for rendering.
+     * Quits the game from the menu or while playing.
      */
-    public void gameLoop(TETile[][] world, Avatar currentAvatar, TERenderer ter) {
-        int oldX = currentAvatar.getX();
-        int oldY = currentAvatar.getY();
-        StringBuilder keySequence = new StringBuilder();
+    public void quit() {
+        endGame();
+    }
 
-        while (playing) {
-            StdDraw.clear(Color.BLACK); // Clear the screen before rendering
 
-            // Draw the game world without showing it yet
-            ter.drawTiles(world);
+    /**
+     * Turns fog of war on or off. With fog of war only the tiles the avatar can see, within
+     * {@link FieldOfView#DEFAULT_RADIUS} and not behind walls, are drawn.
+     * @param enabled whether to hide what the avatar cannot see.
+     */
+    public void setFogOfWar(boolean enabled) {
+        fogOfWar = enabled;
+        if (ter != null) {
+            ter.invalidate();
+        }
+    }
 
-            // Render the HUD on top of the game world
-            ui.renderHUD();
+    /**
+     * Sets how often the game loop draws a frame. The simulation always runs at
+     * {@link #TICKS_PER_SECOND}, whatever the frame rate.
+     * @param framesPerSecond the most frames to draw per second, or 0 to draw as often as possible.
+     */
+    public void setMaxFramesPerSecond(int framesPerSecond) {
+        if (framesPerSecond < 0) {
+            throw new IllegalArgumentException("frame rate must not be negative: " + framesPerSecond);
+        }
+        this.maxFramesPerSecond = framesPerSecond;
+    }
 
-            // Show the frame
-            StdDraw.show();
+    /**
+     * Plays on the given map until the player quits or the game is over, with input from the
+     * StdDraw window unless the game was started with {@link #run(InputSource)}.
+     * @param world the tilemap for world.
+     * @param currentAvatar the avatar.
+     * @param renderer the TERenderer we use for rendering.
+     */
+    public void gameLoop(TileStore world, Avatar currentAvatar, TERenderer renderer) {
+        if (input == null) {
+            input = StdDrawInput.listen();
+        }
+        avatar = currentAvatar;
+        startPlaying(world, renderer, false);
+        runLoop();
+    }
 
-            // Control the frame rate
-            StdDraw.pause(20);
+    /**
+     * Switches to playing on the given map. The map should already be on screen.
+     * @param world the tilemap for world.
+     * @param renderer the TERenderer we use for rendering.
+     * @param loaded whether the game was loaded from the save, rather than started anew, in
+     *               which case the save is left alone until the game is first saved.
+     */
+    private void startPlaying(TileStore world, TERenderer renderer, boolean loaded) {
+        liveWorld = world;
+        avatarDistances = null;
+        routes = null;
+        fieldOfView = null;
+        ter = renderer;
+        keySequence = new StringBuilder();
+        ticks = 0;
+        closeJournal();
+        if (chunks == null && world == tiles && (directory != null || !headless)) {
+            journal = loaded ? new SaveJournal(saveFile(), toSaveData()) : new SaveJournal(saveFile());
+        }
+        resumePlaying();
+    }
 
-            // Handle keyboard input
-            if (StdDraw.hasNextKeyTyped()) {
-                char key = StdDraw.nextKeyTyped();
-                currentAvatar.move(key, world);
+    /**
+     * Writes what is left of the journal and stops journaling.
+     */
+    private void closeJournal() {
+        if (journal != null) {
+            journal.close();
+            journal = null;
+        }
+    }
 
-                // Add key to the sequence
-                keySequence.append(key);
+    /**
+     * Get where this world's save is kept.
+     * @return the save file, in this world's directory if it has one.
+     */
+    private Path saveFile() {
+        return directory == null ? Path.of(SaveState.SAVE_FILE) : directory.resolve(SaveState.SAVE_FILE);
+    }
 
-                // Keep only the last 2 characters in the sequence
-                if (keySequence.length() > 2) {
-                    keySequence.deleteCharAt(0);
-                }
+    /**
+     * Goes back to playing, without catching up on the time spent away.
+     */
+    private void resumePlaying() {
+        previousTime = nanoTime();
+        lag = 0;
+        nextFrame = previousTime;
+        skippedFrames = 0;
+        state = GameState.PLAYING;
+    }
 
-                // Save and exit if ":q" or ":Q" is pressed
-                if (keySequence.toString().equals(":q") || keySequence.toString().equals(":Q")) {
-                    SaveState.saveGame(this);
-                    System.exit(0);
+    /**
+     * The one loop that runs the whole game, from the main menu to the end screen. Each screen
+     * waits on the input source for the player, so the loop sleeps while nothing happens;
+     * only while playing does it wake up on its own, to run the ticks and draw frames.
+     */
+    private void runLoop() {
+        try {
+            GameState current;
+            while ((current = state) != null) {
+                switch (current) {
+                    case MENU, SEED_ENTRY -> {
+                        InputEvent event = waitForEvent();
+                        if (event == null) {
+                            endGame();
+                        } else if (current == GameState.MENU) {
+                            ui.handleMenuEvent(event);
+                        } else {
+                            handleSeedEvent(event);
+                        }
+                    }
+                    case PLAYING -> {
+                        if (headless) {
+                            headlessStep();
+                        } else {
+                            playStep();
+                        }
+                    }
+                    case DIALOGUE -> dialogueStep();
+                    case END_SCREEN -> {
+                        sleepUntil(endScreenDeadline);
+                        endGame();
+                    }
+                    default -> throw new IllegalStateException("unknown state " + current);
                 }
             }
-
-            // Update the position of the avatar
-            int newX = currentAvatar.getX();
-            int newY = currentAvatar.getY();
-
-            // Check if the avatar has moved
-            if (oldX != newX || oldY != newY) {
-                world[oldX][oldY] = Tileset.GRASS;
-                world[newX][newY] = Tileset.AVATAR;
-                serializableTileMap[oldX][oldY] = Tileset.GRASS;
-                serializableTileMap[newX][newY] = Tileset.AVATAR;
-                oldX = newX;
-                oldY = newY;
-            }
-
-            // Update tile information based on mouse position
-            double mouseX = StdDraw.mouseX();
-            double mouseY = StdDraw.mouseY();
-            if (isValid(world, (int) mouseX, (int) mouseY)) {
-                String tileDescription = world[(int) mouseX][(int) mouseY].description();
-                ui.updateTileInfo(tileDescription);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            endGame();
+        } finally {
+            closeJournal();
+            if (recorder != null) {
+                recorder.end(ticks, stateHash());
+                recorder = null;
             }
         }
     }
 
+    /**
+     * One pass of the fixed-timestep loop. The game is simulated in ticks of
+     * 1 / {@link #TICKS_PER_SECOND} seconds, and every tick handles all the keys typed since the
+     * last one. Frames are drawn separately, at most {@link #setMaxFramesPerSecond} times a
+     * second. When drawing falls behind, ticks run first and frames are skipped, so the game
+     * keeps its speed; a frame is still drawn after {@link #MAX_SKIPPED_FRAMES} skips.
+     */
+    private void playStep() {
+        long frameNanos = maxFramesPerSecond > 0 ? 1_000_000_000L / maxFramesPerSecond : 0;
+        long now = System.nanoTime();
+        lag = Math.min(lag + now - previousTime, MAX_LAG_TICKS * TICK_NANOS);
+        previousTime = now;
+
+        // Catch the simulation up to real time
+        while (lag >= TICK_NANOS && state == GameState.PLAYING) {
+            tick();
+            lag -= TICK_NANOS;
+        }
+        if (state != GameState.PLAYING) {
+            return;
+        }
 
+        // Draw, unless the ticks took so long that the next one is already due
+        now = System.nanoTime();
+        boolean behind = lag + (now - previousTime) >= TICK_NANOS;
+        if (behind && skippedFrames < MAX_SKIPPED_FRAMES) {
+            skippedFrames++;
+            return;
+        }
+        if (now >= nextFrame) {
+            renderFrame(liveWorld, ter);
+            skippedFrames = 0;
+            nextFrame = Math.max(nextFrame + frameNanos, now);
+        }
 
+        // Sleep until the next tick or frame is due
+        if (frameNanos > 0) {
+            sleepUntil(Math.min(previousTime + TICK_NANOS - lag, nextFrame));
+        }
+    }
 
     /**
-     * Helper method Converts xy-coordinates to string.
-     * @param x the x-coordinate.
-     * @param y the y-coordinate.
-     * @return a string of the coordinates.
+     * One pass of the loop without a window: plays a tick straight away, then waits for the
+     * next event instead of playing empty ticks, so an idle game costs nothing. The game ends
+     * once the input source has run out.
+     * @throws InterruptedException if the thread is interrupted while waiting.
      */
-    private String positionToString(int x, int y) {
-        return x + "," + y;
+    private void headlessStep() throws InterruptedException {
+        tick();
+        clock += TICK_NANOS;
+        if (state == GameState.PLAYING && pending == null) {
+            pending = waitForEvent();
+            if (pending == null) {
+                endGame();
+            }
+        }
     }
 
     /**
-     * Draws hallways between coordinates stored in hallwayCoords which we made in the room generation.
-     * @param world the tilemap for world.
+     * Waits for the player's next event.
+     * @return the event, or null if the input source has run out.
+     * @throws InterruptedException if the thread is interrupted while waiting.
      */
-    public void drawLines(TETile[][] world) {
-        ArrayList<int[]> coords = hallwayCoords;
-        for (int i = 0; i < coords.size() - 1; i++) {
-            int[] start = coords.get(i);
-            int[] end = coords.get(i + 1);
+    private InputEvent waitForEvent() throws InterruptedException {
+        return input.isExhausted() ? null : input.poll(-1);
+    }
 
-            if (start[0] != end[0]) {
-                int direction = (start[0] < end[0]) ? 3 : 2;
-                int length = Math.abs(end[0] - start[0]);
-                singleLine(world, start[0], start[1], length, direction);
+    /**
+     * Advances the game by one tick: handles every key typed since the last tick, runs the
+     * NPCs, then updates the tile information for the mouse position.
+     */
+    private void tick() {
+        InputEvent event;
+        while (state == GameState.PLAYING && (event = pollNow()) != null) {
+            if (!event.isClick()) {
+                if (recorder != null) {
+                    recorder.key(ticks, event.getKey());
+                }
+                handleKey(event.getKey(), liveWorld, avatar, ter);
             }
+        }
+        finishTick();
+
+        // Update tile information based on mouse position
+        double mouseX = input.mouseX();
+        double mouseY = input.mouseY();
+        if (liveWorld.isValid((int) mouseX, (int) mouseY)) {
+            String tileDescription = liveWorld.get((int) mouseX, (int) mouseY).description();
+            ui.updateTileInfo(tileDescription);
+        }
+    }
 
-            if (start[1] != end[1]) {
-                int direction = (start[1] < end[1]) ? 1 : 0;
-                int length = Math.abs(end[1] - start[1]);
-                singleLine(world, end[0], start[1], length, direction);
+    /**
+     * The part of a tick after its keys are handled, which a replay runs too: the NPCs move,
+     * the tick's changes are journaled, with the whole game saved in the background every
+     * {@link #AUTOSAVE_TICKS} or once the journal is long, and the tick is counted and
+     * checkpointed if the game is being recorded.
+     */
+    private void finishTick() {
+        if (state == GameState.PLAYING && chunks == null && npcs != null && npcs.size() > 0) {
+            NpcSystems.tick(npcs, liveWorld, getAvatarDistances());
+        }
+        if (journal != null) {
+            journal.commit();
+            if (journal.needsCompaction()
+                    || ticks % AUTOSAVE_TICKS == AUTOSAVE_TICKS - 1 && journal.hasChanges()) {
+                journal.compact(toSaveData());
             }
         }
+        ticks++;
+        if (recorder != null && ticks % InputLog.CHECKPOINT_TICKS == 0) {
+            recorder.checkpoint(ticks, stateHash());
+        }
     }
 
     /**
-     * Draws a line of a specified length in a given direction in world.
-     *
-     * @param world the world where the line will be drawn.
-     * @param startX the starting x-coordinate of our line.
-     * @param startY the starting y-coordinate of our line.
-     * @param length the length of the line.
-     * @param direction the direction which the line goes in:
-     *                    0: up
-     *                    1: down
-     *                    2: left
-     *                    3: right
-     */
-    private void singleLine(TETile[][] world, int startX, int startY, int length, int direction) {
-        switch (direction) {
-            case 0:
-                for (int i = 0; i < length; i++) {
-                    if (isValid(world, startX, startY - i)) {
-                        world[startX][startY - i] = Tileset.GRASS;
-                    }
-                }
-                break;
-            case 1:
-                for (int i = 0; i < length; i++) {
-                    if (isValid(world, startX, startY + i)) {
-                        world[startX][startY + i] = Tileset.GRASS;
-                    }
-                }
-                break;
-            case 2:
-                for (int i = 0; i < length; i++) {
-                    if (isValid(world, startX - i, startY)) {
-                        world[startX - i][startY] = Tileset.GRASS;
-                    }
-                }
-                break;
-            case 3:
-                for (int i = 0; i < length; i++) {
-                    if (isValid(world, startX + i, startY)) {
-                        world[startX + i][startY] = Tileset.GRASS;
-                    }
-                }
-                break;
-            default:
-                System.out.println("invalid input");
-                break;
+     * Starts a bounded game from a seed for {@link Replay}. Nothing is drawn, and ticks only
+     * run when the replay asks for them, as fast as they can.
+     * @param seedValue the seed the recorded game was started with.
+     * @param width the width of the map.
+     * @param height the height of the map.
+     */
+    void startReplay(long seedValue, int width, int height) {
+        headless = true;
+        startPlaying(startGame(seedValue, width, height), null, false);
+    }
+
+    /**
+     * Handles a key from an input log, as {@link #tick()} would have.
+     * @param key the key.
+     */
+    void replayKey(char key) {
+        if (state == GameState.PLAYING) {
+            handleKey(key, liveWorld, avatar, null);
         }
     }
 
     /**
-     * Draws walls around rooms.
-     * @param world the tilemap for world.
+     * Handles a key from an input log that was typed while talking to Oski, as
+     * {@link #dialogueStep()} would have, and shows all of Oski's answer at once.
+     * @param key the key.
      */
-    public void drawWalls(TETile[][] world) {
-        int width = WIDTH;
-        int height = HEIGHT;
-        for (int x = 0; x < width; x++) {
-            for (int y = 0; y < height; y++) {
-                if (world[x][y] == Tileset.GRASS) {
-                    if (isValid(world, x + 1, y) && world[x + 1][y] == Tileset.NOTHING) {
-                        world[x + 1][y] = Tileset.WALL;
-                    }
-                    if (isValid(world, x - 1, y) && world[x - 1][y] == Tileset.NOTHING) {
-                        world[x - 1][y] = Tileset.WALL;
-                    }
-                    if (isValid(world, x, y + 1) && world[x][y + 1] == Tileset.NOTHING) {
-                        world[x][y + 1] = Tileset.WALL;
-                    }
-                    if (isValid(world, x, y - 1) && world[x][y - 1] == Tileset.NOTHING) {
-                        world[x][y - 1] = Tileset.WALL;
-                    }
-                }
-            }
+    void replayDialogueKey(char key) {
+        if (state != GameState.DIALOGUE) {
+            return;
+        }
+        ui.chooseDialogueOption(key);
+        while (state == GameState.DIALOGUE && ui.getDialoguePageDeadline() >= 0) {
+            nextDialoguePage();
         }
     }
 
     /**
-     * Checks whether cooardinates are within worlds boundaries.
-     * @param world the tilemap for world.
-     * @param x the x-coordinate.
-     * @param y the y-coordinate.
-     * @return true if valid.
+     * Finishes a tick of a replay.
      */
-    private boolean isValid(TETile[][] world, int x, int y) {
-        return x >= 0 && x < world.length && y >= 0 && y < world[0].length;
+    void replayTick() {
+        finishTick();
     }
 
     /**
-     * Draws rooms.
-     * @param world the tilemap for world.
-     * @param max the minimum size of a room.
-     * @param max the maximum size of a room.
-     */
-    public void drawRooms(TETile[][] world, int min, int max) {
-        int width = WIDTH;
-        int height = HEIGHT;
-        int roomCount = random.nextInt(3) + 10;
-        int i = 0;
-
-        while (i < roomCount) {
-            int roomWidth = random.nextInt(max - min) + min;
-            int roomHeight = random.nextInt(max - min) + min;
-            int startX = random.nextInt(width - roomWidth);
-            int startY = random.nextInt(height - roomHeight);
-
-            int hallwayX = startX + random.nextInt(roomWidth);
-            int hallwayY = startY + random.nextInt(roomHeight);
-
-            // Check if the room is within two tiles of width and height
-            if (startX <= 2 || startX + roomWidth >= width - 2 || startY <= 2 || startY + roomHeight >= height - 2) {
-                // Move back in loop and retry with new seed
-                random.setSeed(random.nextLong() + 1);
-                continue;
-            }
+     * Takes the next event if one is waiting, without blocking.
+     * @return the event, or null if there is none.
+     */
+    private InputEvent pollNow() {
+        if (pending != null) {
+            InputEvent event = pending;
+            pending = null;
+            return event;
+        }
+        try {
+            return input.poll(0);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            endGame();
+            return null;
+        }
+    }
 
-            hallwayCoords.add(new int[]{hallwayX, hallwayY});
+    /**
+     * One pass of the conversation with Oski: waits for the player's choice, or for the page
+     * of Oski's answer on screen to be shown long enough.
+     * @throws InterruptedException if the thread is interrupted while waiting.
+     */
+    private void dialogueStep() throws InterruptedException {
+        long deadline = ui.getDialoguePageDeadline();
+        if (deadline < 0) {
+            InputEvent event = waitForEvent();
+            if (event == null) {
+                endGame();
+            } else if (!event.isClick()) {
+                if (recorder != null) {
+                    recorder.dialogueKey(ticks, event.getKey());
+                }
+                ui.chooseDialogueOption(event.getKey());
+            }
+            return;
+        }
+        nextDialoguePage();
+    }
 
-            for (int x = startX; x < startX + roomWidth; x++) {
-                for (int y = startY + 1; y < startY + roomHeight; y++) {
-                    world[x][y] = Tileset.GRASS;
-                    serializableTileMap[x][y] = Tileset.GRASS;
+    /**
+     * Waits until the page of Oski's answer on screen has been shown long enough, then shows the
+     * next one, or acts on how the conversation went.
+     */
+    private void nextDialoguePage() {
+        sleepUntil(ui.getDialoguePageDeadline());
+        UserInterface.DialogueOutcome outcome = ui.nextDialoguePage();
+        switch (outcome) {
+            case CONTINUE -> {
+            }
+            case CLOSED -> {
+                if (ter != null) {
+                    ter.invalidate(); // The dialogue box was drawn over the map
+                }
+                resumePlaying();
+            }
+            case WON, EATEN -> {
+                if (!headless) {
+                    ui.renderEndScreen(outcome == UserInterface.DialogueOutcome.EATEN);
                 }
+                endScreenDeadline = nanoTime() + UserInterface.END_SCREEN_MILLIS * 1_000_000L;
+                state = GameState.END_SCREEN;
             }
-            i++;
+            default -> throw new IllegalStateException("unknown dialogue outcome");
         }
     }
 
+    /**
+     * Get the time the game goes by, for deadlines.
+     * @return {@link System#nanoTime()}, or the game's own clock when headless.
+     */
+    long nanoTime() {
+        return headless ? clock : System.nanoTime();
+    }
 
     /**
-     * Places items randomly in the world.
+     * Sleeps until the given time. When headless the clock is moved on instead.
+     * @param deadline the {@link #nanoTime()} to wake up at.
+     */
+    private void sleepUntil(long deadline) {
+        if (headless) {
+            clock = Math.max(clock, deadline);
+            return;
+        }
+        long sleepNanos;
+        while ((sleepNanos = deadline - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(sleepNanos);
+        }
+    }
+
+    /**
+     * Handles one key typed during play: moves or interacts, turns fog of war on or off with F,
+     * and saves and quits on ":q".
+     * @param key the key that was typed.
      * @param world the tilemap for world.
-     * @param itemSeed the seed.
+     * @param currentAvatar the avatar.
+     * @param renderer the TERenderer we use for rendering.
      */
-    public void placeItems(TETile[][] world, long itemSeed) {
-        Random itemRandom = new Random(itemSeed);
+    private void handleKey(char key, TileStore world, Avatar currentAvatar, TERenderer renderer) {
+        int oldX = currentAvatar.getX();
+        int oldY = currentAvatar.getY();
+        currentAvatar.move(key, world);
+        if ((key == 'e' || key == 'E') && renderer != null) {
+            // Interacting may have drawn a dialogue box over the map
+            renderer.invalidate();
+        }
+        if (key == 'f' || key == 'F') {
+            setFogOfWar(!fogOfWar);
+        }
 
-        if (isInitialGeneration) {
-            int beerCount = itemRandom.nextInt(3) + 1; // 1 to 3 beers
-            int clipperCardCount = 1; // 1 to 3 clipper cards
+        // Add key to the sequence
+        keySequence.append(key);
 
-            // Place beers
-            for (int i = 0; i < beerCount; i++) {
-                placeRandomItem(world, itemRandom, Tileset.BEER);
-            }
+        // Keep only the last 2 characters in the sequence
+        if (keySequence.length() > 2) {
+            keySequence.deleteCharAt(0);
+        }
 
-            // Place clipper cards
-            for (int i = 0; i < clipperCardCount; i++) {
-                placeRandomItem(world, itemRandom, Tileset.CLIPPER_CARD);
+        // Save and exit if ":q" or ":Q" is pressed
+        if (keySequence.toString().equals(":q") || keySequence.toString().equals(":Q")) {
+            if (chunks != null) {
+                // The chunks are the save; leave no avatar behind in them
+                world.set(currentAvatar.getX(), currentAvatar.getY(), Tileset.GRASS);
+                if (directory != null || !headless) {
+                    chunks.flush();
+                }
+            } else if (journal != null) {
+                journal.compact(toSaveData());
+                closeJournal();
+                if (!headless) {
+                    System.out.println("Game saved successfully.");
+                }
+            } else if (directory != null) {
+                SaveState.saveGame(this, saveFile().toString());
+            } else if (!headless) {
+                SaveState.saveGame(this);
             }
+            quit();
+            return;
+        }
 
-            isInitialGeneration = false; // Set to false after initial generation
-        } else {
-            // Existing logic for placing items when loading a game
-            for (int[] pos : alcoholPositions) {
-                if (!pickedUpItems.contains(positionToString(pos[0], pos[1]))) {
-                    world[pos[0]][pos[1]] = Tileset.BEER;
-                }
+        // Check if the avatar has moved
+        int newX = currentAvatar.getX();
+        int newY = currentAvatar.getY();
+        if (oldX != newX || oldY != newY) {
+            world.set(oldX, oldY, Tileset.GRASS);
+            world.set(newX, newY, Tileset.AVATAR);
+            if (journal != null) {
+                journal.tile(oldX, oldY, Tileset.GRASS);
+                journal.tile(newX, newY, Tileset.AVATAR);
+                journal.move(newX, newY);
             }
-            for (int[] pos : clipperCardPositions) {
-                if (!pickedUpItems.contains(positionToString(pos[0], pos[1]))) {
-                    world[pos[0]][pos[1]] = Tileset.CLIPPER_CARD;
-                }
+            if (avatarDistances != null) {
+                avatarDistances.moveSource(newX, newY);
+            }
+            if (routes != null) {
+                routes.update(oldX, oldY);
+                routes.update(newX, newY);
+            }
+            if (world instanceof ChunkedWorld.Window window) {
+                followAvatar(window, currentAvatar);
             }
         }
     }
 
     /**
-     * Helper method used by placeItems, to place items randomly.
-     *
+     * Draws the tiles that changed since the last frame and the HUD, and shows the frame if
+     * anything changed.
      * @param world the tilemap for world.
-     * @param rand our already in use random object.
-     * @param itemType the type of item to be placed, which should be Tileset#BEER or Tileset#CLIPPER_CARD.
-     *
-     * The method ensures that the item is placed only on a tile that has not been previously picked up,
-     * and avoids placing items on tiles that are not of type {@link Tileset#GRASS}. If a valid position is found,
-     * the item is placed and the method exits. If no valid position is found in 100 attempts, the method will stop.
-     */
-    private void placeRandomItem(TETile[][] world, Random rand, TETile itemType) {
-        int attempts = 0;
-        while (attempts < 100) { // Limit attempts to prevent infinite loop
-            int itemX = rand.nextInt(WIDTH);
-            int itemY = rand.nextInt(HEIGHT);
-            if (world[itemX][itemY] == Tileset.GRASS && !pickedUpItems.contains(positionToString(itemX, itemY))) {
-                world[itemX][itemY] = itemType;
-                if (itemType == Tileset.BEER) {
-                    alcoholPositions.add(new int[]{itemX, itemY});
-                } else if (itemType == Tileset.CLIPPER_CARD) {
-                    clipperCardPositions.add(new int[]{itemX, itemY});
-                }
-                break;
+     * @param ter the TERenderer we use for rendering.
+     */
+    private void renderFrame(TileStore world, TERenderer ter) {
+        int changedTiles;
+        if (fogOfWar) {
+            if (fieldOfView == null) {
+                fieldOfView = new FieldOfView(world, FieldOfView.DEFAULT_RADIUS);
             }
-            attempts++;
+            // Only computed again if the avatar moved since the last frame
+            fieldOfView.compute(avatar.getX(), avatar.getY());
+            changedTiles = ter.drawChangedTiles(world, fieldOfView.visibleMask());
+        } else {
+            changedTiles = ter.drawChangedTiles(world);
+        }
+        if (changedTiles > 0 || ui.isHUDChanged()) {
+            ui.renderHUD();
+            StdDraw.show();
         }
     }
 
+    /**
+     * Moves a window onto a chunked world so the avatar is back in its center once it gets
+     * within {@link #FOLLOW_MARGIN} tiles of an edge, and loads the chunks around it.
+     * @param window the window the avatar walks in.
+     * @param currentAvatar the avatar, whose position is relative to the window.
+     */
+    private void followAvatar(ChunkedWorld.Window window, Avatar currentAvatar) {
+        int x = currentAvatar.getX();
+        int y = currentAvatar.getY();
+        if (x >= FOLLOW_MARGIN && x < window.width() - FOLLOW_MARGIN
+                && y >= FOLLOW_MARGIN && y < window.height() - FOLLOW_MARGIN) {
+            return;
+        }
+        int dx = x - window.width() / 2;
+        int dy = y - window.height() / 2;
+        window.moveBy(dx, dy);
+        avatarDistances = null; // Every cell of the window now shows another place
+        routes = null;
+        fieldOfView = null;
+        currentAvatar.setX(x - dx);
+        currentAvatar.setY(y - dy);
+        chunks.loadAround(window.getOriginX() + currentAvatar.getX(),
+                window.getOriginY() + currentAvatar.getY(), 1);
+    }
 
     /**
-     * Allows the avatar to pick up items, placing them in the player inventory and removing from scene.
-     *
-     * @param world the tilemap for world.
+     * Rebuilds the entity index from the items that have not been picked up yet and Oski.
      */
-    public void pickUpItem(TETile[][] world) {
-        int avatarX = avatar.getX();
-        int avatarY = avatar.getY();
-
-        for (int dx = -1; dx <= 1; dx++) {
-            for (int dy = -1; dy <= 1; dy++) {
-                int x = avatarX + dx;
-                int y = avatarY + dy;
-                if (isValid(world, x, y)) {
-                    if (world[x][y] == Tileset.BEER) {
-                        world[x][y] = Tileset.GRASS;
-                        System.out.println("Picked up beer bottle.");
-                        pickedUpItems.add(x + "," + y);  // Add this line
-                        ui.addItem(Tileset.BEER);
-                    } else if (world[x][y] == Tileset.CLIPPER_CARD) {
-                        world[x][y] = Tileset.GRASS;
-                        System.out.println("Picked up a clipper card.");
-                        pickedUpItems.add(x + "," + y);  // Add this line
-                        ui.addItem(Tileset.CLIPPER_CARD);
-                    }
-                }
+    private void indexEntities() {
+        entities = new EntityIndex<>();
+        for (int i = 0; i < items.size(); i++) {
+            if (!items.isPickedUp(i)) {
+                entities.add(items.item(i), items.x(i), items.y(i));
             }
         }
+        if (oski != null) {
+            entities.add(Tileset.OSKI, oski.getX(), oski.getY());
+        }
     }
 
     /**
-     * Allows the avatar to converse with Oski, if he is within range.
-     *
+     * Get the entity index for a map.
      * @param world the tilemap for world.
+     * @return the chunked world's entities for a window onto it, or else this world's entities.
      */
-    public void interactWithOski(TETile[][] world) {
-        int avatarX = avatar.getX();
-        int avatarY = avatar.getY();
-
-        for (int dx = -1; dx <= 1; dx++) {
-            for (int dy = -1; dy <= 1; dy++) {
-                int x = avatarX + dx;
-                int y = avatarY + dy;
-                if (isValid(world, x, y)) {
-                    if (world[x][y] == Tileset.OSKI) {
-                        System.out.println("Interacted with Oski."); // Debug statement
-                        ui.showDialogueBox();
-                        ui.renderHUD();
-                    }
-                }
-            }
+    private EntityIndex<TETile> entitiesOf(TileStore world) {
+        return world instanceof ChunkedWorld.Window ? chunks.entities() : entities;
+    }
+
+    /**
+     * Get where a map's (0, 0) is in the coordinates of its entity index.
+     * @param world the tilemap for world.
+     * @return {x, y} of the window's origin for a window onto a chunked world, or else {0, 0}.
+     */
+    private static int[] originOf(TileStore world) {
+        if (world instanceof ChunkedWorld.Window window) {
+            return new int[]{window.getOriginX(), window.getOriginY()};
         }
+        return new int[]{0, 0};
     }
 
+    /**
+     * Puts the items that have not been picked up yet onto the map, and grass where they were.
+     * @param world the tilemap for world.
+     */
+    private void placeItems(TileGrid world) {
+        for (int i = 0; i < items.size(); i++) {
+            world.set(items.x(i), items.y(i), items.isPickedUp(i) ? Tileset.GRASS : items.item(i));
+        }
+    }
 
 
     /**
-     * Spawns Oski at a random location. If the location is invalid we increase seed by 1
-     * and we try again.
+     * Allows the avatar to pick up items, placing them in the player inventory and removing from scene.
+     * Items within {@link #INTERACT_RADIUS} of the avatar are found in the entity index, not on the map.
      *
      * @param world the tilemap for world.
-     * @param oskiSeed the seed.
-     */
-    public void spawnOski(TETile[][] world, long oskiSeed) {
-        Random itemRandom = new Random(oskiSeed);
-        int width = WIDTH;
-        int height = HEIGHT;
-        boolean oskiSpawned = false;
-
-        while (!oskiSpawned) {
-            int oskiX = itemRandom.nextInt(width);
-            int oskiY = itemRandom.nextInt(height);
-            if (world[oskiX][oskiY] == Tileset.GRASS) {
-                world[oskiX][oskiY] = Tileset.OSKI;
-                oski = new Oski(oskiX, oskiY);
-                oskiSpawned = true;
-            } else {
-                oskiSeed++;
-                itemRandom = new Random(oskiSeed);
+     */
+    public void pickUpItem(TileStore world) {
+        EntityIndex<TETile> index = entitiesOf(world);
+        int[] origin = originOf(world);
+
+        for (int handle : index.within(origin[0] + avatar.getX(), origin[1] + avatar.getY(), INTERACT_RADIUS)) {
+            TETile item = index.get(handle);
+            if (item != Tileset.BEER && item != Tileset.CLIPPER_CARD) {
+                continue;
+            }
+            int x = index.x(handle) - origin[0];
+            int y = index.y(handle) - origin[1];
+            world.set(x, y, Tileset.GRASS);
+            if (avatarDistances != null) {
+                avatarDistances.update(x, y);
+            }
+            if (routes != null) {
+                routes.update(x, y);
+            }
+            if (!headless) {
+                System.out.println(item == Tileset.BEER ? "Picked up beer bottle." : "Picked up a clipper card.");
             }
+            if (chunks == null) {
+                // A chunk keeps its items as tiles only, so the grass written above is the pickup
+                items.pickUp(x, y);
+            }
+            index.remove(handle);
+            ui.addItem(item);
+            if (journal != null) {
+                journal.tile(x, y, Tileset.GRASS);
+                journal.pickUp(x, y);
+                journal.item(item);
+            }
+        }
+    }
+
+    /**
+     * Allows the avatar to converse with Oski, if he is within range. The conversation is
+     * handled by the game loop.
+     *
+     * @param world the tilemap for world.
+     */
+    public void interactWithOski(TileStore world) {
+        int[] origin = originOf(world);
+        int oskiHandle = entitiesOf(world).nearest(origin[0] + avatar.getX(), origin[1] + avatar.getY(),
+                INTERACT_RADIUS, entity -> entity == Tileset.OSKI);
+        if (oskiHandle != -1) {
+            ui.showDialogueBox();
+            state = GameState.DIALOGUE;
         }
     }
 
 
 
     /**
-     * Reloads a saved game object.
+     * Reloads a saved game object and starts playing it, or stays on the menu if there is no save.
      */
     public void loadGame() {
-        World loadedWorld = SaveState.loadGame();
-        if (loadedWorld != null) {
-            this.random = loadedWorld.random;
-            this.hallwayCoords.clear();
-            this.hallwayCoords.addAll(loadedWorld.hallwayCoords);
-            this.avatar = loadedWorld.avatar;
-            this.oski = loadedWorld.oski;
-            this.serializableTileMap = loadedWorld.serializableTileMap;
-            this.alcoholPositions = loadedWorld.alcoholPositions;
-            this.clipperCardPositions = loadedWorld.clipperCardPositions;
-            this.pickedUpItems = loadedWorld.pickedUpItems;
-            this.seed = loadedWorld.seed;
-            this.isInitialGeneration = false;
-            TETile[][] world = new TETile[WIDTH][HEIGHT];
-            this.ui = new UserInterface(this);
-            this.ui.setPlayerInventory(loadedWorld.ui.getPlayerInventory());
-
-            regenerateWorld(world);  // Regenerate the world based on the saved seed
+        SaveData data = directory == null ? SaveState.loadSaveData()
+                : SaveState.loadSaveData(saveFile().toString());
+        if (data != null) {
+            TileGrid world = restore(data);
+            if (headless) {
+                startPlaying(world, null, true);
+                return;
+            }
 
             // Initialize rendering settings
             StdDraw.setCanvasSize(WIDTH * 16, (HEIGHT + HUD_HEIGHT) * 16);
@@ -613,24 +1081,75 @@ public class World implements Serializable {
             StdDraw.enableDoubleBuffering();
 
             // Render the initial frame
-            TERenderer ter = new TERenderer();
-            ter.initialize(WIDTH, HEIGHT + HUD_HEIGHT);
-            ter.renderFrame(world);
+            TERenderer renderer = new TERenderer();
+            renderer.initialize(WIDTH, HEIGHT + HUD_HEIGHT);
+            renderer.renderFrame(world);
 
-            System.out.println("Starting game loop after loading");
-            gameLoop(world, avatar, ter);
-        } else {
+            System.out.println("Game loaded successfully.");
+            startPlaying(world, renderer, true);
+        } else if (!headless) {
             System.out.println("Failed to load game state.");
         }
     }
 
+    /**
+     * Makes a world from saved state without drawing anything.
+     * @param data the saved state.
+     * @return a world ready to be played, with its live map restored.
+     */
+    public static World fromSaveData(SaveData data) {
+        World world = new World();
+        world.restore(data);
+        return world;
+    }
+
+    /**
+     * Copies the state that a save needs out of this world.
+     * @return save data for the current game.
+     */
+    SaveData toSaveData() {
+        int[] avatarPosition = avatar == null ? null : new int[]{avatar.getX(), avatar.getY()};
+        int[] oskiPosition = oski == null ? null : new int[]{oski.getX(), oski.getY()};
+        return new SaveData(seed, tiles, avatarPosition, oskiPosition, items, ui.getPlayerInventory());
+    }
+
+    /**
+     * Replaces the state of this world with saved state. A save without a map regenerates
+     * the map from the seed.
+     * @param data the saved state.
+     * @return the restored live map.
+     */
+    TileGrid restore(SaveData data) {
+        this.seed = data.getSeed();
+        this.items = data.getItems();
+        this.isInitialGeneration = false;
+        this.ui = new UserInterface(this);
+        this.ui.setPlayerInventory(new ArrayList<>(data.getInventory()));
+
+        int[] avatarPosition = data.getAvatarPosition();
+        this.avatar = avatarPosition == null ? null : new Avatar(avatarPosition[0], avatarPosition[1], this);
+        int[] oskiPosition = data.getOskiPosition();
+        this.oski = oskiPosition == null ? null : new Oski(oskiPosition[0], oskiPosition[1]);
+
+        TileGrid world = data.getTiles();
+        if (world == null || oski == null) {
+            world = new TileGrid(WIDTH, HEIGHT);
+            regenerateWorld(world);  // Regenerate the world based on the saved seed
+        } else if (avatar == null) {
+            avatar = spawnAvatar(world, seed, avatar);
+        }
+        tiles = world;
+        indexEntities();
+        return world;
+    }
+
 
     /**
      * Ensures that picked up items aren't spawned in, oski and the avatar are in the correct location.
      *
      * @param world the tilemap for world.
      */
-    public void regenerateWorld(TETile[][] world) {
+    public void regenerateWorld(TileGrid world) {
 
         generateWorld(world, this.seed);  // Use the saved seed to regenerate the world
 
@@ -638,34 +1157,10 @@ public class World implements Serializable {
         if (this.avatar == null) {
             avatar = spawnAvatar(world, seed, avatar);
         }
-        world[avatar.getX()][avatar.getY()] = Tileset.AVATAR;
-        world[oski.getX()][oski.getY()] = Tileset.OSKI;
-
-        // Remove items that were picked up
-        for (String posStr : pickedUpItems) {
-            String[] posArr = posStr.split(",");
-            int x = Integer.parseInt(posArr[0]);
-            int y = Integer.parseInt(posArr[1]);
-            world[x][y] = Tileset.GRASS;
-        }
+        world.set(avatar.getX(), avatar.getY(), Tileset.AVATAR);
+        world.set(oski.getX(), oski.getY(), Tileset.OSKI);
 
-        // Place the remaining items back
-        for (int[] pos : alcoholPositions) {
-            if (!pickedUpItems.contains(positionToString(pos[0], pos[1]))) {
-                world[pos[0]][pos[1]] = Tileset.BEER;
-            }
-        }
-        for (int[] pos : clipperCardPositions) {
-            if (!pickedUpItems.contains(positionToString(pos[0], pos[1]))) {
-                world[pos[0]][pos[1]] = Tileset.CLIPPER_CARD;
-            }
-        }
-
-        for (String posStr : pickedUpItems) {
-            String[] posArr = posStr.split(",");
-            int x = Integer.parseInt(posArr[0]);
-            int y = Integer.parseInt(posArr[1]);
-            world[x][y] = Tileset.GRASS;
-        }
+        // Place the remaining items back, and grass where items were picked up
+        placeItems(world);
     }
 }
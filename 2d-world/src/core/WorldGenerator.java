@@ -0,0 +1,545 @@
+package core;
+
+import tileengine.TETile;
+import tileengine.TileGrid;
+import tileengine.Tileset;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Headless world generation engine. Turns a seed into a {@link GeneratedWorld} without
+ * touching StdDraw, the user interface, or any other global state, so it can be used on
+ * machines without a display and from many threads at once.
+ *
+ * Each generator instance holds the state of a single generation run and must not be shared
+ * between threads. The static {@link #generate(long)} methods create a fresh instance per call
+ * and are safe to call concurrently.
+ */
+public class WorldGenerator {
+    public static final int ROOM_MIN = 6;
+    public static final int ROOM_MAX = 14;
+    private static final long VERTICAL_EDGE_SALT = 0x5645525449434C45L;
+    private static final long HORIZONTAL_EDGE_SALT = 0x484F52495A4F4E54L;
+    private static final int ITEM_PROBES = 100;
+    private static final int SPAWN_PROBES = 64;
+    private final long seed;
+    private final int width;
+    private final int height;
+    private final Random random;
+    private final ArrayList<int[]> hallwayCoords = new ArrayList<>();
+    private final List<int[]> alcoholPositions = new ArrayList<>();
+    private final List<int[]> clipperCardPositions = new ArrayList<>();
+    private int[] oskiPosition;
+    private int[] avatarPosition;
+    private TileGrid indexedWorld; // The map the walkable index is for
+    private WalkableIndex walkable;
+
+    /**
+     * Creates a generator for a world of the default size.
+     * @param seed the seed we use for random generation.
+     */
+    public WorldGenerator(long seed) {
+        this(seed, World.WIDTH, World.HEIGHT);
+    }
+
+    /**
+     * Creates a generator for a world of the given size.
+     * @param seed the seed we use for random generation.
+     * @param width the width of the world in tiles.
+     * @param height the height of the world in tiles.
+     */
+    public WorldGenerator(long seed, int width, int height) {
+        if (width < ROOM_MAX + 4 || height < ROOM_MAX + 4) {
+            throw new IllegalArgumentException("world must be at least " + (ROOM_MAX + 4)
+                    + " tiles in each direction: " + width + "x" + height);
+        }
+        this.seed = seed;
+        this.width = width;
+        this.height = height;
+        this.random = new Random(seed);
+    }
+
+    /**
+     * Generates a world of the default size.
+     * @param seed the seed we use for random generation.
+     * @return the generated world.
+     */
+    public static GeneratedWorld generate(long seed) {
+        return new WorldGenerator(seed).generate();
+    }
+
+    /**
+     * Generates a world of the given size.
+     * @param seed the seed we use for random generation.
+     * @param width the width of the world in tiles.
+     * @param height the height of the world in tiles.
+     * @return the generated world.
+     */
+    public static GeneratedWorld generate(long seed, int width, int height) {
+        return new WorldGenerator(seed, width, height).generate();
+    }
+
+    /**
+     * Runs every generation pass in order and spawns the avatar.
+     * @return the generated world.
+     */
+    public GeneratedWorld generate() {
+        TileGrid world = emptyWorld();
+        generateTerrain(world);
+        spawnAvatar(world);
+        return new GeneratedWorld(seed, world, hallwayCoords, alcoholPositions, clipperCardPositions,
+                oskiPosition, avatarPosition);
+    }
+
+    /**
+     * Makes a world of this generator's size filled with {@link Tileset#NOTHING}.
+     * @return the empty world.
+     */
+    public TileGrid emptyWorld() {
+        return new TileGrid(width, height, Tileset.NOTHING);
+    }
+
+    /**
+     * Builds rooms, hallways and walls, and places items and Oski. Does not spawn the avatar.
+     * @param world the array of tiles that we want to draw onto, filled with nothing.
+     */
+    public void generateTerrain(TileGrid world) {
+        drawRooms(world, ROOM_MIN, ROOM_MAX);
+        drawLines(world);
+        drawWalls(world);
+        placeItems(world);
+        spawnOski(world);
+    }
+
+    /**
+     * Draws rooms and records a hallway anchor inside each of them.
+     * @param world the tilemap for world.
+     * @param min the minimum size of a room.
+     * @param max the maximum size of a room.
+     */
+    public void drawRooms(TileGrid world, int min, int max) {
+        int roomCount = random.nextInt(3) + 10;
+        int i = 0;
+
+        while (i < roomCount) {
+            int roomWidth = random.nextInt(max - min) + min;
+            int roomHeight = random.nextInt(max - min) + min;
+            int startX = random.nextInt(width - roomWidth);
+            int startY = random.nextInt(height - roomHeight);
+
+            int hallwayX = startX + random.nextInt(roomWidth);
+            int hallwayY = startY + random.nextInt(roomHeight);
+
+            // Check if the room is within two tiles of width and height
+            if (startX <= 2 || startX + roomWidth >= width - 2 || startY <= 2 || startY + roomHeight >= height - 2) {
+                // Move back in loop and retry with new seed
+                random.setSeed(random.nextLong() + 1);
+                continue;
+            }
+
+            hallwayCoords.add(new int[]{hallwayX, hallwayY});
+
+            world.fillRect(startX, startY + 1, roomWidth, roomHeight - 1, Tileset.GRASS);
+            i++;
+        }
+    }
+
+    /**
+     * Draws hallways between coordinates stored in hallwayCoords which we made in the room generation.
+     * @param world the tilemap for world.
+     */
+    public void drawLines(TileGrid world) {
+        ArrayList<int[]> coords = hallwayCoords;
+        for (int i = 0; i < coords.size() - 1; i++) {
+            drawHallway(world, coords.get(i), coords.get(i + 1));
+        }
+    }
+
+    /**
+     * Draws an L-shaped hallway of grass from start towards end: first along start's row to
+     * end's column, then along end's column to end's row. The end cell itself is not drawn,
+     * since hallways run between points that are already grass.
+     * @param world the tilemap for world.
+     * @param start the {x, y} position the hallway starts at.
+     * @param end the {x, y} position the hallway leads to.
+     */
+    public void drawHallway(TileGrid world, int[] start, int[] end) {
+        if (start[0] != end[0]) {
+            int direction = (start[0] < end[0]) ? 3 : 2;
+            int length = Math.abs(end[0] - start[0]);
+            singleLine(world, start[0], start[1], length, direction);
+        }
+
+        if (start[1] != end[1]) {
+            int direction = (start[1] < end[1]) ? 1 : 0;
+            int length = Math.abs(end[1] - start[1]);
+            singleLine(world, end[0], start[1], length, direction);
+        }
+    }
+
+    /**
+     * Digs a hallway from a doorway on each given edge of the world to the nearest room, so the
+     * world can be joined to neighbouring worlds, such as chunks or regions, that have a doorway
+     * in the same place. Hallways from the west and east edges run sideways into the world and
+     * hallways from the south and north edges run up or down into it, so none runs along an
+     * edge. Call this after {@link #drawRooms} and before {@link #drawWalls}.
+     * @param world the tilemap for world.
+     * @param west the y-coordinate of the doorway on the west edge, or -1 for none.
+     * @param east the y-coordinate of the doorway on the east edge, or -1 for none.
+     * @param south the x-coordinate of the doorway on the south edge, or -1 for none.
+     * @param north the x-coordinate of the doorway on the north edge, or -1 for none.
+     */
+    public void drawDoorways(TileGrid world, int west, int east, int south, int north) {
+        if (west >= 0) {
+            drawDoorway(world, new int[]{0, west}, true);
+        }
+        if (east >= 0) {
+            drawDoorway(world, new int[]{width - 1, east}, true);
+        }
+        if (south >= 0) {
+            drawDoorway(world, new int[]{south, 0}, false);
+        }
+        if (north >= 0) {
+            drawDoorway(world, new int[]{north, height - 1}, false);
+        }
+    }
+
+    /**
+     * Digs the hallway from one doorway to the nearest room. Both ends are drawn, since a room's
+     * anchor can sit on the unfilled row just below the room.
+     * @param world the tilemap for world.
+     * @param door the {x, y} position of the doorway.
+     * @param sideways true if the doorway is on the west or east edge.
+     */
+    private void drawDoorway(TileGrid world, int[] door, boolean sideways) {
+        int[] room = nearestRoom(door);
+        if (sideways) {
+            drawHallway(world, door, room);
+        } else {
+            drawHallway(world, room, door);
+        }
+        world.set(door[0], door[1], Tileset.GRASS);
+        world.set(room[0], room[1], Tileset.GRASS);
+    }
+
+    /**
+     * Where the doorway on the edge between two neighbouring parts of a world is, as an offset
+     * along the edge. Both parts get the same answer, so their doorways line up.
+     * @param seed the seed of the whole world.
+     * @param vertical true for the edge on the west side of a part, false for the south side.
+     * @param partX the x-coordinate of the part east of or above the edge.
+     * @param partY the y-coordinate of the part east of or above the edge.
+     * @param edgeLength the length of the edge in tiles.
+     * @return an offset at least two tiles from either end of the edge.
+     */
+    public static int doorway(long seed, boolean vertical, int partX, int partY, int edgeLength) {
+        long edgeSeed = subSeed(seed ^ (vertical ? VERTICAL_EDGE_SALT : HORIZONTAL_EDGE_SALT), partX, partY);
+        return 2 + (int) Math.floorMod(edgeSeed, (long) edgeLength - 4);
+    }
+
+    /**
+     * Finds the hallway anchor of the room closest to a position.
+     * @param target the {x, y} position.
+     * @return the closest anchor.
+     */
+    private int[] nearestRoom(int[] target) {
+        int[] best = hallwayCoords.get(0);
+        int bestDistance = Integer.MAX_VALUE;
+        for (int[] pos : hallwayCoords) {
+            int distance = Math.abs(pos[0] - target[0]) + Math.abs(pos[1] - target[1]);
+            if (distance < bestDistance) {
+                best = pos;
+                bestDistance = distance;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Draws a line of a specified length in a given direction in world.
+     *
+     * @param world the world where the line will be drawn.
+     * @param startX the starting x-coordinate of our line.
+     * @param startY the starting y-coordinate of our line.
+     * @param length the length of the line.
+     * @param direction the direction which the line goes in:
+     *                    0: up
+     *                    1: down
+     *                    2: left
+     *                    3: right
+     */
+    private void singleLine(TileGrid world, int startX, int startY, int length, int direction) {
+        switch (direction) {
+            case 0:
+                for (int i = 0; i < length; i++) {
+                    if (isValid(startX, startY - i)) {
+                        world.set(startX, startY - i, Tileset.GRASS);
+                    }
+                }
+                break;
+            case 1:
+                for (int i = 0; i < length; i++) {
+                    if (isValid(startX, startY + i)) {
+                        world.set(startX, startY + i, Tileset.GRASS);
+                    }
+                }
+                break;
+            case 2:
+                for (int i = 0; i < length; i++) {
+                    if (isValid(startX - i, startY)) {
+                        world.set(startX - i, startY, Tileset.GRASS);
+                    }
+                }
+                break;
+            case 3:
+                for (int i = 0; i < length; i++) {
+                    if (isValid(startX + i, startY)) {
+                        world.set(startX + i, startY, Tileset.GRASS);
+                    }
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("invalid direction: " + direction);
+        }
+    }
+
+    /**
+     * Draws walls around rooms: every empty cell next to grass, not counting diagonals, becomes a
+     * wall. Rows are handled as bitsets of 64 cells per long. The grass of a row and of the rows
+     * above and below it is spread by one cell with shifts and ORs, which marks the only cells
+     * that can become walls, and just those cells are checked for being empty.
+     * @param world the tilemap for world.
+     */
+    public void drawWalls(TileGrid world) {
+        int words = (width + 63) >>> 6;
+        long[] below = new long[words]; // Grass in row y - 1
+        long[] grass = new long[words]; // Grass in row y
+        long[] above = new long[words]; // Grass in row y + 1
+        long[] nextToGrass = new long[words];
+        world.rowMask(0, Tileset.GRASS, grass);
+        for (int y = 0; y < height; y++) {
+            if (y + 1 < height) {
+                world.rowMask(y + 1, Tileset.GRASS, above);
+            } else {
+                Arrays.fill(above, 0);
+            }
+            for (int w = 0; w < words; w++) {
+                long left = grass[w] << 1 | (w > 0 ? grass[w - 1] >>> 63 : 0); // Grass to the left of each cell
+                long right = grass[w] >>> 1 | (w + 1 < words ? grass[w + 1] << 63 : 0);
+                nextToGrass[w] = (left | right | below[w] | above[w]) & ~grass[w];
+            }
+            world.replaceInRow(y, nextToGrass, Tileset.NOTHING, Tileset.WALL);
+
+            long[] oldBelow = below;
+            below = grass;
+            grass = above;
+            above = oldBelow;
+        }
+    }
+
+    /**
+     * Places between one and three beers and a clipper card on random grass tiles.
+     * @param world the tilemap for world.
+     */
+    public void placeItems(TileGrid world) {
+        Random itemRandom = new Random(seed);
+        int beerCount = itemRandom.nextInt(3) + 1; // 1 to 3 beers
+        int clipperCardCount = 1;
+
+        for (int i = 0; i < beerCount; i++) {
+            placeRandomItem(world, itemRandom, Tileset.BEER);
+        }
+        for (int i = 0; i < clipperCardCount; i++) {
+            placeRandomItem(world, itemRandom, Tileset.CLIPPER_CARD);
+        }
+    }
+
+    /**
+     * Helper method used by placeItems, to place items randomly. Items are only placed on
+     * {@link Tileset#GRASS}. Random positions are tried first, and if none of 100 is grass the
+     * item goes on a grass cell picked from the walkable index, so it is only skipped when the
+     * map has no grass left at all.
+     *
+     * @param world the tilemap for world.
+     * @param rand our already in use random object.
+     * @param itemType the type of item to be placed, which should be Tileset#BEER or Tileset#CLIPPER_CARD.
+     */
+    private void placeRandomItem(TileGrid world, Random rand, TETile itemType) {
+        int[] position = null;
+        for (int attempts = 0; attempts < ITEM_PROBES && position == null; attempts++) {
+            int itemX = rand.nextInt(width);
+            int itemY = rand.nextInt(height);
+            if (world.is(itemX, itemY, Tileset.GRASS)) {
+                position = new int[]{itemX, itemY};
+            }
+        }
+        if (position == null) {
+            WalkableIndex cells = walkableCells(world);
+            if (cells.size() == 0) {
+                return;
+            }
+            position = cells.pick(rand);
+        }
+        place(world, position[0], position[1], itemType);
+        if (itemType == Tileset.BEER) {
+            alcoholPositions.add(position);
+        } else if (itemType == Tileset.CLIPPER_CARD) {
+            clipperCardPositions.add(position);
+        }
+    }
+
+    /**
+     * Spawns Oski on a grass tile picked from the seed.
+     * @param world the tilemap for world.
+     */
+    public void spawnOski(TileGrid world) {
+        oskiPosition = findSpawn(world);
+        place(world, oskiPosition[0], oskiPosition[1], Tileset.OSKI);
+    }
+
+    /**
+     * Spawns the avatar on a grass tile picked from the seed.
+     * @param world the tilemap for world.
+     */
+    public void spawnAvatar(TileGrid world) {
+        avatarPosition = findSpawn(world);
+        place(world, avatarPosition[0], avatarPosition[1], Tileset.AVATAR);
+    }
+
+    /**
+     * Returns the walkable cells of a map, indexing them the first time they are asked for.
+     * Items, Oski and the avatar placed by this generator afterwards are taken out of the index
+     * as they are placed. The index belongs to one map; asking for another map's cells indexes
+     * that map instead.
+     * @param world the tilemap for world.
+     * @return the index of the map's grass cells.
+     */
+    public WalkableIndex walkableCells(TileGrid world) {
+        if (indexedWorld != world) {
+            walkable = WalkableIndex.of(world);
+            indexedWorld = world;
+        }
+        return walkable;
+    }
+
+    /**
+     * Puts a tile on the map and keeps the walkable index, if there is one, up to date.
+     */
+    private void place(TileGrid world, int x, int y, TETile tile) {
+        world.set(x, y, tile);
+        if (world == indexedWorld) {
+            walkable.update(x, y, tile);
+        }
+    }
+
+    /**
+     * Like {@link #findGrass}, but falls back on this generator's walkable index.
+     */
+    private int[] findSpawn(TileGrid world) {
+        int[] spawn = probeGrass(world, seed);
+        return spawn != null ? spawn : walkableCells(world).pick(new Random(seed));
+    }
+
+    /**
+     * Derives an independent seed for one part of a world, such as a chunk, from the world's
+     * seed and two coordinates. The same inputs always give the same seed, and neighbouring
+     * coordinates give unrelated seeds.
+     * @param seed the world's seed.
+     * @param a the first coordinate.
+     * @param b the second coordinate.
+     * @return the derived seed.
+     */
+    public static long subSeed(long seed, int a, int b) {
+        // SplitMix64 finalizer over the seed and both coordinates packed into one long.
+        long z = seed + (((long) a << 32) | (b & 0xFFFFFFFFL)) * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Picks a random grass tile from the seed. If the first location is not grass, the seed
+     * is increased by one and we try again. After a bounded number of tries the tile is picked
+     * from a {@link WalkableIndex} of the map instead, so sparse maps take no longer to spawn on.
+     * @param world the tilemap for world.
+     * @param spawnSeed the seed.
+     * @return the {x, y} position of the grass tile.
+     * @throws IllegalStateException if the map has no grass.
+     */
+    public static int[] findGrass(TileGrid world, long spawnSeed) {
+        int[] spawn = probeGrass(world, spawnSeed);
+        return spawn != null ? spawn : WalkableIndex.of(world).pick(new Random(spawnSeed));
+    }
+
+    /**
+     * Tries up to {@link #SPAWN_PROBES} positions, each from the next seed. Maps with a fair
+     * share of grass almost always spawn here, at the same cells as before there was an index.
+     * @return the {x, y} position of the grass tile, or null if none of the tries was grass.
+     */
+    private static int[] probeGrass(TileGrid world, long spawnSeed) {
+        int width = world.width();
+        int height = world.height();
+        for (int probe = 0; probe < SPAWN_PROBES; probe++, spawnSeed++) {
+            Random spawnRandom = new Random(spawnSeed);
+            int x = spawnRandom.nextInt(width);
+            int y = spawnRandom.nextInt(height);
+            if (world.is(x, y, Tileset.GRASS)) {
+                return new int[]{x, y};
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the hallway anchors recorded so far, one per room.
+     * @return a copy of the hallway coordinates.
+     */
+    public List<int[]> getHallwayCoords() {
+        return GeneratedWorld.copyPositions(hallwayCoords);
+    }
+
+    /**
+     * Returns the beer positions placed so far.
+     * @return a copy of the beer positions.
+     */
+    public List<int[]> getAlcoholPositions() {
+        return GeneratedWorld.copyPositions(alcoholPositions);
+    }
+
+    /**
+     * Returns the clipper card positions placed so far.
+     * @return a copy of the clipper card positions.
+     */
+    public List<int[]> getClipperCardPositions() {
+        return GeneratedWorld.copyPositions(clipperCardPositions);
+    }
+
+    /**
+     * Returns where Oski was spawned, or null if {@link #spawnOski} has not run.
+     * @return a copy of Oski's position.
+     */
+    public int[] getOskiPosition() {
+        return oskiPosition == null ? null : oskiPosition.clone();
+    }
+
+    /**
+     * Returns where the avatar was spawned, or null if {@link #spawnAvatar} has not run.
+     * @return a copy of the avatar's position.
+     */
+    public int[] getAvatarPosition() {
+        return avatarPosition == null ? null : avatarPosition.clone();
+    }
+
+    /**
+     * Checks whether coordinates are within the world's boundaries.
+     * @param x the x-coordinate.
+     * @param y the y-coordinate.
+     * @return true if valid.
+     */
+    private boolean isValid(int x, int y) {
+        return x >= 0 && x < width && y >= 0 && y < height;
+    }
+}
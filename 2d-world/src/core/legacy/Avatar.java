@@ -0,0 +1,12 @@
+package core.legacy;
+
+import java.io.Serializable;
+
+/**
+ * The fields of a saved core.Avatar.
+ */
+class Avatar implements Serializable {
+    private static final long serialVersionUID = 1L;
+    int x, y;
+    World world;
+}
@@ -0,0 +1,96 @@
+package core.legacy;
+
+import core.SaveData;
+import tileengine.TETile;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamClass;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * Reads saves written before the binary save format, which were a core.World written with Java
+ * serialization and then encoded in Base64.
+ *
+ * The game classes in those saves are read into the small copies in this package instead of the
+ * real ones, so the real classes can change freely. Old saves did not keep an up to date map, so
+ * the map is left out and regenerated from the seed, as loading an old save always did.
+ */
+public final class LegacySaveReader {
+    private static final String SAVED_PACKAGE = "core.";
+
+    private LegacySaveReader() {
+    }
+
+    /**
+     * Reads an old save file.
+     *
+     * @param filename the file to read.
+     * @return the saved state, without a map.
+     * @throws IOException if the file cannot be read or is not an old save.
+     */
+    public static SaveData read(String filename) throws IOException {
+        String encoded = Files.readString(Path.of(filename)).trim();
+        byte[] bytes;
+        try {
+            bytes = Base64.getDecoder().decode(encoded);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("not a save file: " + filename, e);
+        }
+
+        World world;
+        try (ObjectInputStream in = new LegacyObjectInputStream(new ByteArrayInputStream(bytes))) {
+            world = (World) in.readObject();
+        } catch (ClassNotFoundException | ClassCastException e) {
+            throw new IOException("not a save file: " + filename, e);
+        }
+
+        int[] avatar = world.avatar == null ? null : new int[]{world.avatar.x, world.avatar.y};
+        int[] oski = world.oski == null ? null : new int[]{world.oski.x, world.oski.y};
+        List<int[]> pickedUp = new ArrayList<>();
+        if (world.pickedUpItems != null) {
+            for (String posStr : world.pickedUpItems) {
+                String[] posArr = posStr.split(",");
+                pickedUp.add(new int[]{Integer.parseInt(posArr[0]), Integer.parseInt(posArr[1])});
+            }
+        }
+        List<TETile> inventory = world.ui == null || world.ui.playerInventory == null
+                ? List.of() : world.ui.playerInventory;
+        return new SaveData(world.seed, null, avatar, oski, orEmpty(world.alcoholPositions),
+                orEmpty(world.clipperCardPositions), pickedUp, inventory);
+    }
+
+    private static List<int[]> orEmpty(List<int[]> positions) {
+        return positions == null ? List.of() : positions;
+    }
+
+    /**
+     * Resolves saved game classes to their copies in this package.
+     */
+    private static class LegacyObjectInputStream extends ObjectInputStream {
+        LegacyObjectInputStream(InputStream in) throws IOException {
+            super(in);
+        }
+
+        @Override
+        protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+            String name = desc.getName();
+            if (name.startsWith(SAVED_PACKAGE) && name.indexOf('.', SAVED_PACKAGE.length()) < 0) {
+                String simpleName = name.substring(SAVED_PACKAGE.length());
+                try {
+                    return Class.forName(LegacySaveReader.class.getPackageName() + "." + simpleName,
+                            false, LegacySaveReader.class.getClassLoader());
+                } catch (ClassNotFoundException e) {
+                    throw new ClassNotFoundException("unexpected class in save: " + name, e);
+                }
+            }
+            return super.resolveClass(desc);
+        }
+    }
+}
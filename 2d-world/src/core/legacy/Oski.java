@@ -0,0 +1,11 @@
+package core.legacy;
+
+import java.io.Serializable;
+
+/**
+ * The fields of a saved core.Oski.
+ */
+class Oski implements Serializable {
+    private static final long serialVersionUID = 1L;
+    int x, y;
+}
@@ -0,0 +1,14 @@
+package core.legacy;
+
+import tileengine.TETile;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+
+/**
+ * The fields of a saved core.UserInterface that are still needed: the player's inventory.
+ */
+class UserInterface implements Serializable {
+    private static final long serialVersionUID = 1L;
+    ArrayList<TETile> playerInventory;
+}
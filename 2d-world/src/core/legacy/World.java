@@ -0,0 +1,20 @@
+package core.legacy;
+
+import java.io.Serializable;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The fields of a saved core.World that are still needed when reading an old save. Other fields
+ * in the save are skipped.
+ */
+class World implements Serializable {
+    private static final long serialVersionUID = 1L;
+    Avatar avatar;
+    Oski oski;
+    UserInterface ui;
+    List<int[]> alcoholPositions;
+    List<int[]> clipperCardPositions;
+    Set<String> pickedUpItems;
+    long seed;
+}
@@ -0,0 +1,212 @@
+package tileengine;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A map of tiles kept in a memory-mapped file instead of on the heap. Reads and writes go
+ * straight to the mapping, so the operating system decides which parts of a very large map stay
+ * in memory, and whatever was written is still in the file the next time it is opened. There is
+ * no separate save step; {@link #force()} only makes sure the writes have reached the disk.
+ *
+ * The file is a 16 byte header (magic number, format version, width, height, as big-endian ints)
+ * followed by one big-endian short tile id per cell, in the same row-major order as
+ * {@link TileGrid}. One mapping holds at most Integer.MAX_VALUE bytes, which is a little over a
+ * billion cells.
+ *
+ * A store is not safe to use from more than one thread at once.
+ */
+public final class MappedTileStore implements TileStore, Closeable {
+    private static final int MAGIC = 0x32445754; // "2DWT"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 4 * Integer.BYTES;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer cells;
+    private final int width;
+    private final int height;
+
+    private MappedTileStore(FileChannel channel, MappedByteBuffer cells, int width, int height) {
+        this.channel = channel;
+        this.cells = cells;
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * Opens the map in an existing file, or creates the file with a map of the given size filled
+     * with {@link Tileset#NOTHING}.
+     * @param path the file holding the map
+     * @param width width of the map in tiles
+     * @param height height of the map in tiles
+     * @return the open store
+     * @throws IOException if the file cannot be opened or mapped
+     * @throws IllegalArgumentException if the file holds a map of a different size, or is not a map
+     */
+    public static MappedTileStore open(Path path, int width, int height) throws IOException {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("map must not be empty: " + width + "x" + height);
+        }
+        long size = HEADER_BYTES + 2L * width * height;
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("map is too large to map at once: " + width + "x" + height);
+        }
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            boolean created = channel.size() == 0;
+            if (!created && channel.size() != size) {
+                throw new IllegalArgumentException(path + " does not hold a " + width + "x" + height + " map");
+            }
+            MappedByteBuffer cells = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            MappedTileStore store = new MappedTileStore(channel, cells, width, height);
+            if (created) {
+                cells.putInt(0, MAGIC).putInt(4, VERSION).putInt(8, width).putInt(12, height);
+                store.fill(Tileset.NOTHING);
+            } else {
+                store.checkHeader(path);
+            }
+            return store;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Opens the map in an existing file.
+     * @param path the file holding the map
+     * @return the open store
+     * @throws IOException if the file cannot be opened or mapped
+     * @throws IllegalArgumentException if the file is not a map
+     */
+    public static MappedTileStore open(Path path) throws IOException {
+        int width;
+        int height;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_BYTES) {
+                throw new IllegalArgumentException(path + " is not a tile map");
+            }
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES);
+            width = header.getInt(8);
+            height = header.getInt(12);
+        }
+        return open(path, width, height);
+    }
+
+    /**
+     * Opens a file for the map and copies the tiles of another store into it.
+     * @param path the file to hold the map, which is replaced if it holds a map of the same size
+     * @param source the tiles to copy
+     * @return the open store
+     * @throws IOException if the file cannot be opened or mapped
+     */
+    public static MappedTileStore copyOf(Path path, TileStore source) throws IOException {
+        MappedTileStore store = open(path, source.width(), source.height());
+        int cellCount = source.width() * source.height();
+        for (int i = 0; i < cellCount; i += 1) {
+            store.setId(i, source.getId(i));
+        }
+        return store;
+    }
+
+    @Override
+    public int width() {
+        return width;
+    }
+
+    @Override
+    public int height() {
+        return height;
+    }
+
+    @Override
+    public int getId(int x, int y) {
+        checkBounds(x, y);
+        return cells.getShort(HEADER_BYTES + 2 * (y * width + x));
+    }
+
+    @Override
+    public int getId(int index) {
+        return cells.getShort(offset(index));
+    }
+
+    @Override
+    public void set(int x, int y, TETile tile) {
+        checkBounds(x, y);
+        cells.putShort(HEADER_BYTES + 2 * (y * width + x), idOf(tile.id()));
+    }
+
+    @Override
+    public void setId(int index, int id) {
+        cells.putShort(offset(index), idOf(id));
+    }
+
+    /**
+     * Puts the given tile in every cell.
+     * @param tile the tile
+     */
+    public void fill(TETile tile) {
+        short id = idOf(tile.id());
+        int end = HEADER_BYTES + 2 * width * height;
+        for (int offset = HEADER_BYTES; offset < end; offset += 2) {
+            cells.putShort(offset, id);
+        }
+    }
+
+    /**
+     * Writes any changes still in memory out to the file.
+     */
+    public void force() {
+        cells.force();
+    }
+
+    /**
+     * Writes any changes out to the file and closes it. The store must not be used afterwards.
+     * The mapping itself is released when the store is garbage collected.
+     * @throws IOException if the file cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        force();
+        channel.close();
+    }
+
+    private void checkHeader(Path path) {
+        if (cells.getInt(0) != MAGIC) {
+            throw new IllegalArgumentException(path + " is not a tile map");
+        }
+        if (cells.getInt(4) != VERSION) {
+            throw new IllegalArgumentException(path + " has unsupported version " + cells.getInt(4));
+        }
+        if (cells.getInt(8) != width || cells.getInt(12) != height) {
+            throw new IllegalArgumentException(path + " does not hold a " + width + "x" + height + " map");
+        }
+    }
+
+    private int offset(int index) {
+        if (index < 0 || index >= width * height) {
+            throw new IndexOutOfBoundsException("cell " + index + " is outside the "
+                    + width + "x" + height + " map");
+        }
+        return HEADER_BYTES + 2 * index;
+    }
+
+    private void checkBounds(int x, int y) {
+        if (!isValid(x, y)) {
+            throw new IndexOutOfBoundsException("(" + x + ", " + y + ") is outside the "
+                    + width + "x" + height + " map");
+        }
+    }
+
+    private static short idOf(int id) {
+        if (!Tileset.isRegistered(id)) {
+            throw new IllegalArgumentException("tile id " + id + " is not registered in Tileset");
+        }
+        return (short) id;
+    }
+}
@@ -0,0 +1,231 @@
+package tileengine;
+
+import javax.imageio.ImageIO;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Decodes every image in a sprite directory once and packs them into a single atlas image.
+ * Tiles then draw by copying their region of the atlas instead of resolving and decoding
+ * the image file on every frame.
+ *
+ * Sprites are scaled once, when the atlas is built, from the 16 pixel tiles they were made for to
+ * the atlas' tile size. Paths that are looked up but not in the atlas are remembered as missing,
+ * so callers can fall back to the character representation without retrying the file.
+ *
+ * The packed sprites never change after the atlas is built, and the missing set is concurrent,
+ * so an atlas can be shared between threads.
+ */
+public class SpriteAtlas {
+    public static final String SPRITE_DIRECTORY = "photos";
+    private static final int PADDING = 1;
+    private final BufferedImage atlas;
+    private final Map<String, int[]> regions; // path -> {x, y, width, height} in the atlas
+    private final Set<String> missing = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Holder so the default atlas is built once, on first use, by whichever thread gets there first.
+     */
+    private static class DefaultAtlas {
+        private static final SpriteAtlas INSTANCE = load(SPRITE_DIRECTORY, TERenderer.TILE_SIZE);
+    }
+
+    /**
+     * Builds an atlas from already decoded sprites.
+     * @param sprites the sprites keyed by the path tiles use to refer to them
+     * @param tileSize the size in pixels a tile will be drawn at
+     */
+    public SpriteAtlas(Map<String, BufferedImage> sprites, int tileSize) {
+        double scale = (double) tileSize / TERenderer.TILE_SIZE;
+        List<String> paths = new ArrayList<>(sprites.keySet());
+        Map<String, BufferedImage> scaled = new HashMap<>();
+        for (String path : paths) {
+            scaled.put(path, scale(sprites.get(path), scale));
+        }
+        // Shelf packing: tallest sprites first, rows no wider than the widest sprite or the
+        // side of a square holding all of them.
+        paths.sort((a, b) -> scaled.get(b).getHeight() - scaled.get(a).getHeight());
+        long area = 0;
+        int rowLimit = 1;
+        for (BufferedImage image : scaled.values()) {
+            area += (long) (image.getWidth() + PADDING) * (image.getHeight() + PADDING);
+            rowLimit = Math.max(rowLimit, image.getWidth() + PADDING);
+        }
+        rowLimit = Math.max(rowLimit, (int) Math.ceil(Math.sqrt(area)));
+
+        regions = new HashMap<>();
+        int x = 0;
+        int y = 0;
+        int rowHeight = 0;
+        int atlasWidth = 1;
+        for (String path : paths) {
+            BufferedImage image = scaled.get(path);
+            if (x > 0 && x + image.getWidth() > rowLimit) {
+                x = 0;
+                y += rowHeight + PADDING;
+                rowHeight = 0;
+            }
+            regions.put(path, new int[]{x, y, image.getWidth(), image.getHeight()});
+            x += image.getWidth() + PADDING;
+            rowHeight = Math.max(rowHeight, image.getHeight());
+            atlasWidth = Math.max(atlasWidth, x);
+        }
+
+        atlas = new BufferedImage(atlasWidth, Math.max(1, y + rowHeight), BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = atlas.createGraphics();
+        try {
+            for (String path : paths) {
+                int[] region = regions.get(path);
+                g.drawImage(scaled.get(path), region[0], region[1], null);
+            }
+        } finally {
+            g.dispose();
+        }
+    }
+
+    /**
+     * Returns the shared atlas of every sprite in {@link #SPRITE_DIRECTORY}, at the renderer's
+     * tile size. The first call decodes the images; call it during startup to keep that cost
+     * out of the first frame.
+     * @return the default atlas
+     */
+    public static SpriteAtlas getDefault() {
+        return DefaultAtlas.INSTANCE;
+    }
+
+    /**
+     * Decodes every image in a directory into a new atlas. Like StdDraw, the directory is looked
+     * up on the file system first and on the classpath second. Sprites are keyed by
+     * "directory/filename", the same paths {@link Tileset} uses. A missing directory or an
+     * unreadable file is not an error; those sprites are simply absent from the atlas.
+     * @param directory the sprite directory
+     * @param tileSize the size in pixels a tile will be drawn at
+     * @return the new atlas
+     */
+    public static SpriteAtlas load(String directory, int tileSize) {
+        Map<String, BufferedImage> sprites = new HashMap<>();
+        File[] files = findDirectory(directory).listFiles();
+        if (files != null) {
+            for (File file : files) {
+                try {
+                    BufferedImage image = ImageIO.read(file);
+                    if (image != null) {
+                        sprites.put(directory + "/" + file.getName(), image);
+                    }
+                } catch (IOException e) {
+                    // Unreadable sprites are left out, and the tiles using them draw as characters.
+                }
+            }
+        }
+        return new SpriteAtlas(sprites, tileSize);
+    }
+
+    /**
+     * Checks whether the sprite for a path is in the atlas. Paths that are not are remembered as
+     * missing.
+     * @param path the image path of a tile
+     * @return true if the sprite can be drawn
+     */
+    public boolean contains(String path) {
+        if (regions.containsKey(path)) {
+            return true;
+        }
+        missing.add(path);
+        return false;
+    }
+
+    /**
+     * Returns the paths that have been asked for but are not in the atlas.
+     * @return an unmodifiable view of the missing paths
+     */
+    public Set<String> getMissing() {
+        return Collections.unmodifiableSet(missing);
+    }
+
+    /**
+     * Returns the packed atlas image.
+     * @return the atlas image, which must not be modified
+     */
+    public BufferedImage getImage() {
+        return atlas;
+    }
+
+    /**
+     * Draws a sprite centered on the square cell with its top left corner at pixel (px, py), the
+     * way StdDraw.picture centers an image on a tile.
+     * @param g the graphics context to draw onto
+     * @param path the image path of a tile
+     * @param px x pixel of the cell's left edge
+     * @param py y pixel of the cell's top edge
+     * @param size width and height of the cell in pixels
+     * @return false if the sprite is missing and nothing was drawn
+     */
+    public boolean draw(Graphics2D g, String path, int px, int py, int size) {
+        int[] region = regions.get(path);
+        if (region == null) {
+            missing.add(path);
+            return false;
+        }
+        int dx = px + (size - region[2]) / 2;
+        int dy = py + (size - region[3]) / 2;
+        g.drawImage(atlas, dx, dy, dx + region[2], dy + region[3],
+                region[0], region[1], region[0] + region[2], region[1] + region[3], null);
+        return true;
+    }
+
+    /**
+     * Finds a directory on the file system, or on the classpath if it is not there.
+     * @param directory the directory path
+     * @return the directory, which may not exist
+     */
+    private static File findDirectory(String directory) {
+        File file = new File(directory);
+        if (file.isDirectory()) {
+            return file;
+        }
+        URL url = SpriteAtlas.class.getResource("/" + directory);
+        if (url != null && "file".equals(url.getProtocol())) {
+            try {
+                return new File(url.toURI());
+            } catch (URISyntaxException e) {
+                return file;
+            }
+        }
+        return file;
+    }
+
+    /**
+     * Scales an image by the given factor.
+     * @param image the image to scale
+     * @param scale the scale factor
+     * @return the scaled image, or the image itself if the scale is 1
+     */
+    private static BufferedImage scale(BufferedImage image, double scale) {
+        if (scale == 1.0) {
+            return image;
+        }
+        int width = Math.max(1, (int) Math.round(image.getWidth() * scale));
+        int height = Math.max(1, (int) Math.round(image.getHeight() * scale));
+        BufferedImage scaled = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = scaled.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.drawImage(image, 0, 0, width, height, null);
+        } finally {
+            g.dispose();
+        }
+        return scaled;
+    }
+}
@@ -4,6 +4,8 @@ import edu.princeton.cs.algs4.StdDraw;
 
 import java.awt.Color;
 import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
 
 /**
  * Utility class for rendering tiles. You do not need to modify this file. You're welcome
@@ -12,11 +14,12 @@ import java.awt.Font;
  * allowing scrolling of the screen or tracking the avatar or something similar.
  */
 public class TERenderer {
-    private static final int TILE_SIZE = 16;
+    public static final int TILE_SIZE = 16;
     private int width;
     private int height;
     private int xOffset;
     private int yOffset;
+    private TileGrid lastFrame; // What is currently on the canvas, for drawChangedTiles
 
     /**
      * Same functionality as the other initialization method. The only difference is that the xOff
@@ -33,6 +36,7 @@ public class TERenderer {
         this.xOffset = xOff;
         this.yOffset = yOff;
         StdDraw.setCanvasSize(width * TILE_SIZE, height * TILE_SIZE);
+        SpriteAtlas.getDefault(); // Decode every sprite now rather than during the first frame
         resetFont();
         StdDraw.setXscale(0, width);
         StdDraw.setYscale(0, height);
@@ -41,6 +45,7 @@ public class TERenderer {
 
         StdDraw.enableDoubleBuffering();
         StdDraw.show();
+        lastFrame = null;
     }
 
     /**
@@ -88,6 +93,90 @@ public class TERenderer {
         StdDraw.clear(new Color(0, 0, 0));
         drawTiles(world);
         StdDraw.show();
+        lastFrame = null;
+    }
+
+    /**
+     * Same as {@link #renderFrame(TETile[][])}, for a world stored as a TileGrid or other TileStore.
+     * @param world the grid to render
+     */
+    public void renderFrame(TileStore world) {
+        StdDraw.clear(new Color(0, 0, 0));
+        drawTiles(world);
+        StdDraw.show();
+        lastFrame = TileGrid.copyOf(world);
+    }
+
+    /**
+     * Incremental version of {@link #drawTiles(TileStore)}. Only redraws the tiles that differ
+     * from what this renderer last drew. Every tile id is still read and compared with the last
+     * frame, so a frame costs one pass over the map, but drawing, which is most of the cost,
+     * grows with the number of changed tiles rather than the size of the world. Like drawTiles,
+     * the frame is not shown.
+     *
+     * The first call, a call after {@link #invalidate()}, or a call with a world of a different
+     * size clears the canvas and redraws every tile. Anything else drawn onto the world area in
+     * the meantime (dialogue boxes, overlays) is not tracked, so call invalidate() afterwards.
+     * @param world the grid to render
+     * @return the number of tiles drawn
+     */
+    public int drawChangedTiles(TileStore world) {
+        return drawChangedTiles(world, null);
+    }
+
+    /**
+     * Same as {@link #drawChangedTiles(TileStore)}, for fog of war: only the tiles in a
+     * visibility mask are drawn, and the rest are shown as {@link Tileset#NOTHING}. Hidden tiles
+     * are skipped unless they were visible in the last frame.
+     * @param world the grid to render
+     * @param visible one bit per cell in row-major order, set for the cells that can be seen, or
+     *                null to show every cell
+     * @return the number of tiles drawn
+     */
+    public int drawChangedTiles(TileStore world, long[] visible) {
+        int numXTiles = world.width();
+        int numYTiles = world.height();
+        if (visible == null && (lastFrame == null || lastFrame.width() != numXTiles
+                || lastFrame.height() != numYTiles)) {
+            StdDraw.clear(Color.black);
+            drawTiles(world);
+            lastFrame = TileGrid.copyOf(world);
+            return numXTiles * numYTiles;
+        }
+        if (lastFrame == null || lastFrame.width() != numXTiles || lastFrame.height() != numYTiles) {
+            // A cleared canvas already shows nothing wherever nothing is drawn
+            StdDraw.clear(Color.black);
+            lastFrame = new TileGrid(numXTiles, numYTiles, Tileset.NOTHING);
+        }
+
+        int drawn = 0;
+        short[] lastIds = lastFrame.ids;
+        int nothing = Tileset.NOTHING.id();
+        for (int i = 0; i < lastIds.length; i += 1) {
+            int id = visible == null || (visible[i >>> 6] & (1L << i)) != 0 ? world.getId(i) : nothing;
+            if (id == lastIds[i]) {
+                continue;
+            }
+            int x = i % numXTiles;
+            int y = i / numXTiles;
+            TETile tile = Tileset.byId(id);
+            // Images do not cover the whole cell, so erase whatever was drawn there first.
+            if (tile.filepath() != null) {
+                StdDraw.setPenColor(Color.black);
+                StdDraw.filledSquare(x + xOffset + 0.5, y + yOffset + 0.5, 0.5);
+            }
+            tile.draw(x + xOffset, y + yOffset);
+            lastIds[i] = (short) id;
+            drawn += 1;
+        }
+        return drawn;
+    }
+
+    /**
+     * Forgets what is on the canvas, so the next {@link #drawChangedTiles} redraws everything.
+     */
+    public void invalidate() {
+        lastFrame = null;
     }
 
     /**
@@ -108,6 +197,87 @@ public class TERenderer {
         }
     }
 
+    /**
+     * Same as {@link #drawTiles(TETile[][])}, for a world stored as a TileGrid or other TileStore.
+     * @param world the grid to render
+     */
+    public void drawTiles(TileStore world) {
+        int numXTiles = world.width();
+        int numYTiles = world.height();
+        for (int y = 0; y < numYTiles; y += 1) {
+            int row = y * numXTiles;
+            for (int x = 0; x < numXTiles; x += 1) {
+                Tileset.byId(world.getId(row + x)).draw(x + xOffset, y + yOffset);
+            }
+        }
+    }
+
+    /**
+     * Creates an image that can hold a w by h tile frame, for use with
+     * {@link #drawTiles(TETile[][], BufferedImage)}.
+     * @param w width of the frame in tiles
+     * @param h height of the frame in tiles
+     * @return a blank offscreen image
+     */
+    public static BufferedImage createOffscreenTarget(int w, int h) {
+        return new BufferedImage(w * TILE_SIZE, h * TILE_SIZE, BufferedImage.TYPE_INT_RGB);
+    }
+
+    /**
+     * Draws all world tiles onto an offscreen image instead of the StdDraw window. This does not
+     * need a display, so it works on headless machines. Each tile is TILE_SIZE pixels square and,
+     * as on screen, y = 0 is the bottom row of the image.
+     * @param world the 2D TETile[][] array to render
+     * @param target the image to draw onto
+     */
+    public void drawTiles(TETile[][] world, BufferedImage target) {
+        int numXTiles = world.length;
+        int numYTiles = world[0].length;
+        int rows = target.getHeight() / TILE_SIZE;
+        Graphics2D g = target.createGraphics();
+        try {
+            g.setFont(new Font("Monaco", Font.BOLD, TILE_SIZE - 2));
+            for (int x = 0; x < numXTiles; x += 1) {
+                for (int y = 0; y < numYTiles; y += 1) {
+                    if (world[x][y] == null) {
+                        throw new IllegalArgumentException("Tile at position x=" + x + ", y=" + y
+                                + " is null.");
+                    }
+                    int px = (x + xOffset) * TILE_SIZE;
+                    int py = (rows - 1 - y - yOffset) * TILE_SIZE;
+                    world[x][y].draw(g, px, py, TILE_SIZE);
+                }
+            }
+        } finally {
+            g.dispose();
+        }
+    }
+
+    /**
+     * Same as {@link #drawTiles(TETile[][], BufferedImage)}, for a world stored as a TileGrid or
+     * other TileStore.
+     * @param world the grid to render
+     * @param target the image to draw onto
+     */
+    public void drawTiles(TileStore world, BufferedImage target) {
+        int numXTiles = world.width();
+        int numYTiles = world.height();
+        int rows = target.getHeight() / TILE_SIZE;
+        Graphics2D g = target.createGraphics();
+        try {
+            g.setFont(new Font("Monaco", Font.BOLD, TILE_SIZE - 2));
+            for (int y = 0; y < numYTiles; y += 1) {
+                int row = y * numXTiles;
+                int py = (rows - 1 - y - yOffset) * TILE_SIZE;
+                for (int x = 0; x < numXTiles; x += 1) {
+                    Tileset.byId(world.getId(row + x)).draw(g, (x + xOffset) * TILE_SIZE, py, TILE_SIZE);
+                }
+            }
+        } finally {
+            g.dispose();
+        }
+    }
+
     /**
      * Resets the font to default settings. You should call this method before drawing any tiles
      * if you changed the pen settings.
@@ -1,6 +1,8 @@
 package tileengine;
 
 import java.awt.Color;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
 import java.io.Serializable;
 import java.util.Arrays;
 import java.util.Random;
@@ -23,6 +25,8 @@ import utils.RandomUtils;
  */
 
 public class TETile implements Serializable {
+    // Pinned to the value the JVM computed for the original class, so existing saves still load.
+    private static final long serialVersionUID = -7195990591085074128L;
     private final char character; // Do not rename character or the autograder will break.
     private final Color textColor;
     private final Color backgroundColor;
@@ -90,19 +94,17 @@ public class TETile implements Serializable {
      * back to the character and color representation for the tile.
      *
      * Note that the image provided must be of the right size (16x16). It will not be
-     * automatically resized or truncated.
+     * automatically resized or truncated. Images are looked up in {@link SpriteAtlas#getDefault()},
+     * so files added after it was built are not drawn.
      * @param x x coordinate
      * @param y y coordinate
      */
     public void draw(double x, double y) {
-        if (filepath != null) {
-            try {
-                StdDraw.picture(x + 0.5, y + 0.5, filepath);
-                return;
-            } catch (IllegalArgumentException e) {
-                // Exception happens because the file can't be found. In this case, fail silently
-                // and just use the character and background color for the tile.
-            }
+        // StdDraw can only draw images by path, so the atlas is used to skip missing files
+        // without StdDraw throwing on every frame.
+        if (filepath != null && SpriteAtlas.getDefault().contains(filepath)) {
+            StdDraw.picture(x + 0.5, y + 0.5, filepath);
+            return;
         }
 
         StdDraw.setPenColor(backgroundColor);
@@ -110,6 +112,32 @@ public class TETile implements Serializable {
         StdDraw.setPenColor(textColor);
         StdDraw.text(x + 0.5, y + 0.5, Character.toString(character()));
     }
+
+    /**
+     * Draws the tile onto an offscreen graphics context with its top left corner at pixel
+     * (px, py). Images are copied from the default {@link SpriteAtlas}; like
+     * {@link #draw(double, double)}, this falls back to the character and colors when the image
+     * is missing.
+     * @param g the graphics context to draw onto, with the tile font already set
+     * @param px x pixel of the tile's left edge
+     * @param py y pixel of the tile's top edge
+     * @param size width and height of the tile in pixels
+     */
+    public void draw(Graphics2D g, int px, int py, int size) {
+        if (filepath != null && SpriteAtlas.getDefault().draw(g, filepath, px, py, size)) {
+            return;
+        }
+
+        g.setColor(backgroundColor);
+        g.fillRect(px, py, size, size);
+        g.setColor(textColor);
+        FontMetrics metrics = g.getFontMetrics();
+        String text = Character.toString(character());
+        int textX = px + (size - metrics.stringWidth(text)) / 2;
+        int textY = py + (size - metrics.getHeight()) / 2 + metrics.getAscent();
+        g.drawString(text, textX, textY);
+    }
+
     public Color textColor() {
         return textColor;
     }
@@ -0,0 +1,448 @@
+package tileengine;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * A compact 2D map of tiles. Instead of an array of TETile references per column, the grid keeps
+ * the {@link TETile#id()} of every cell in one short array, row by row, and turns ids back into
+ * tiles with {@link Tileset#byId(int)}. A 70x45 world takes about 6 KB this way, and passes over
+ * the map walk memory in order.
+ *
+ * Because only ids are stored, every tile put into the grid must be registered in
+ * {@link Tileset}, and a tile made with {@link TETile#colorVariant} comes back out as the
+ * registered tile with the same id.
+ *
+ * As with TETile[][] arrays, (0, 0) is the bottom left cell.
+ *
+ * {@link #snapshot()} copies a grid without copying its cells: the two share one array until
+ * either is written to, and the one written to copies the array first. That makes it cheap to
+ * hand the map to another thread, such as a save being written, while the game goes on.
+ *
+ * @see MappedTileStore for the same cells kept in a memory-mapped file
+ */
+public class TileGrid implements TileStore, Serializable {
+    private static final long serialVersionUID = 1L;
+    private final int width;
+    private final int height;
+    short[] ids; // ids[y * width + x], also read and written by the renderer
+    private transient boolean shared; // Whether a snapshot holds ids too, so it is copied before a write
+
+    /**
+     * Creates a grid filled with {@link Tileset#NOTHING}.
+     * @param width width of the grid in tiles
+     * @param height height of the grid in tiles
+     */
+    public TileGrid(int width, int height) {
+        this(width, height, Tileset.NOTHING);
+    }
+
+    /**
+     * Creates a grid filled with the given tile.
+     * @param width width of the grid in tiles
+     * @param height height of the grid in tiles
+     * @param fill the tile to put in every cell
+     */
+    public TileGrid(int width, int height, TETile fill) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("grid must not be empty: " + width + "x" + height);
+        }
+        this.width = width;
+        this.height = height;
+        this.ids = new short[Math.multiplyExact(width, height)];
+        Arrays.fill(ids, idOf(fill));
+    }
+
+    /**
+     * Copy constructor.
+     * @param other the grid to copy
+     */
+    public TileGrid(TileGrid other) {
+        this.width = other.width;
+        this.height = other.height;
+        this.ids = other.ids.clone();
+    }
+
+    private TileGrid(int width, int height, short[] ids) {
+        this.width = width;
+        this.height = height;
+        this.ids = ids;
+        this.shared = true;
+    }
+
+    /**
+     * Makes a grid holding the same tiles as any tile store, such as a {@link MappedTileStore}.
+     * @param store the store to copy
+     * @return the new grid
+     */
+    public static TileGrid copyOf(TileStore store) {
+        if (store instanceof TileGrid grid) {
+            return grid.copy();
+        }
+        TileGrid grid = new TileGrid(store.width(), store.height());
+        for (int i = 0; i < grid.ids.length; i += 1) {
+            grid.ids[i] = idOf(store.getId(i));
+        }
+        return grid;
+    }
+
+    /**
+     * Makes a grid holding the same tiles as a 2D tile array.
+     * @param tiles the array to copy, indexed [x][y]
+     * @return the new grid
+     */
+    public static TileGrid fromArray(TETile[][] tiles) {
+        TileGrid grid = new TileGrid(tiles.length, tiles[0].length);
+        for (int x = 0; x < grid.width; x += 1) {
+            for (int y = 0; y < grid.height; y += 1) {
+                if (tiles[x][y] == null) {
+                    throw new IllegalArgumentException("Tile at position x=" + x + ", y=" + y
+                            + " is null.");
+                }
+                grid.set(x, y, tiles[x][y]);
+            }
+        }
+        return grid;
+    }
+
+    /**
+     * Makes a 2D tile array holding the same tiles as this grid.
+     * @return a new array indexed [x][y]
+     */
+    public TETile[][] toArray() {
+        TETile[][] tiles = new TETile[width][height];
+        for (int y = 0; y < height; y += 1) {
+            int row = y * width;
+            for (int x = 0; x < width; x += 1) {
+                tiles[x][y] = Tileset.byId(ids[row + x]);
+            }
+        }
+        return tiles;
+    }
+
+    /**
+     * Width of the grid.
+     * @return width in tiles
+     */
+    @Override
+    public int width() {
+        return width;
+    }
+
+    /**
+     * Height of the grid.
+     * @return height in tiles
+     */
+    @Override
+    public int height() {
+        return height;
+    }
+
+    /**
+     * Checks whether a position is inside the grid.
+     * @param x the x-coordinate
+     * @param y the y-coordinate
+     * @return true if (x, y) is a cell of the grid
+     */
+    @Override
+    public boolean isValid(int x, int y) {
+        return x >= 0 && x < width && y >= 0 && y < height;
+    }
+
+    /**
+     * Index of a cell in row-major order, as used by {@link #getId(int)}.
+     * @param x the x-coordinate
+     * @param y the y-coordinate
+     * @return y * width + x
+     */
+    @Override
+    public int index(int x, int y) {
+        return y * width + x;
+    }
+
+    /**
+     * Returns the tile at a position.
+     * @param x the x-coordinate
+     * @param y the y-coordinate
+     * @return the tile
+     */
+    @Override
+    public TETile get(int x, int y) {
+        return Tileset.byId(getId(x, y));
+    }
+
+    /**
+     * Returns the id of the tile at a position.
+     * @param x the x-coordinate
+     * @param y the y-coordinate
+     * @return the tile id
+     */
+    @Override
+    public int getId(int x, int y) {
+        checkBounds(x, y);
+        return ids[y * width + x];
+    }
+
+    /**
+     * Returns the id of the tile at a row-major index.
+     * @param index the cell index, see {@link #index(int, int)}
+     * @return the tile id
+     */
+    @Override
+    public int getId(int index) {
+        return ids[index];
+    }
+
+    /**
+     * Checks whether the tile at a position has the same id as the given tile.
+     * @param x the x-coordinate
+     * @param y the y-coordinate
+     * @param tile the tile to compare with
+     * @return true if the cell holds that tile
+     */
+    @Override
+    public boolean is(int x, int y, TETile tile) {
+        return getId(x, y) == tile.id();
+    }
+
+    /**
+     * Puts a tile at a position.
+     * @param x the x-coordinate
+     * @param y the y-coordinate
+     * @param tile the tile, which must be registered in Tileset
+     */
+    @Override
+    public void set(int x, int y, TETile tile) {
+        checkBounds(x, y);
+        own();
+        ids[y * width + x] = idOf(tile);
+    }
+
+    /**
+     * Puts a tile id at a row-major index.
+     * @param index the cell index, see {@link #index(int, int)}
+     * @param id the tile id, which must be registered in Tileset
+     */
+    @Override
+    public void setId(int index, int id) {
+        short value = idOf(id);
+        own();
+        ids[index] = value;
+    }
+
+    /**
+     * Puts the given tile in every cell.
+     * @param tile the tile
+     */
+    public void fill(TETile tile) {
+        short id = idOf(tile);
+        own();
+        Arrays.fill(ids, id);
+    }
+
+    /**
+     * Puts the given tile in every cell of a rectangle.
+     * @param x the x-coordinate of the rectangle's bottom left cell
+     * @param y the y-coordinate of the rectangle's bottom left cell
+     * @param w width of the rectangle
+     * @param h height of the rectangle
+     * @param tile the tile
+     */
+    public void fillRect(int x, int y, int w, int h, TETile tile) {
+        checkRect(x, y, w, h);
+        short id = idOf(tile);
+        own();
+        for (int row = y; row < y + h; row += 1) {
+            int start = row * width + x;
+            Arrays.fill(ids, start, start + w, id);
+        }
+    }
+
+    /**
+     * Finds the cells of a row that hold a tile, as a bitset: bit x % 64 of mask[x / 64] is set
+     * if cell (x, y) holds the tile. Bits past the end of the row are cleared.
+     * @param y the row
+     * @param tile the tile to look for
+     * @param mask receives the bitset, at least (width + 63) / 64 longs
+     */
+    public void rowMask(int y, TETile tile, long[] mask) {
+        checkBounds(0, y);
+        short id = idOf(tile);
+        int row = y * width;
+        int words = (width + 63) >>> 6;
+        for (int word = 0; word < words; word += 1) {
+            int start = row + (word << 6);
+            long bits = 0;
+            // Walk the word's cells from the last, shifting each bit in at the bottom
+            for (int i = Math.min(start + 64, row + width) - 1; i >= start; i -= 1) {
+                bits = bits << 1 | (ids[i] == id ? 1 : 0);
+            }
+            mask[word] = bits;
+        }
+    }
+
+    /**
+     * Replaces one tile with another in the cells of a row whose bits are set, with the same
+     * layout as {@link #rowMask}. Cells holding any other tile, and bits past the end of the row,
+     * are left alone.
+     * @param y the row
+     * @param mask the cells to look at
+     * @param from the tile to replace
+     * @param to the tile to put in its place
+     */
+    public void replaceInRow(int y, long[] mask, TETile from, TETile to) {
+        checkBounds(0, y);
+        short fromId = idOf(from);
+        short toId = idOf(to);
+        own();
+        int row = y * width;
+        int words = (width + 63) >>> 6;
+        for (int word = 0; word < words; word += 1) {
+            long bits = mask[word];
+            int start = word << 6;
+            while (bits != 0) {
+                int x = start + Long.numberOfTrailingZeros(bits);
+                if (x >= width) {
+                    break;
+                }
+                if (ids[row + x] == fromId) {
+                    ids[row + x] = toId;
+                }
+                bits &= bits - 1;
+            }
+        }
+    }
+
+    /**
+     * Copies a rectangle of tiles from another grid (or this one) into this grid.
+     * @param src the grid to copy from
+     * @param srcX the x-coordinate of the source rectangle's bottom left cell
+     * @param srcY the y-coordinate of the source rectangle's bottom left cell
+     * @param destX the x-coordinate in this grid to copy to
+     * @param destY the y-coordinate in this grid to copy to
+     * @param w width of the rectangle
+     * @param h height of the rectangle
+     */
+    public void copyRect(TileGrid src, int srcX, int srcY, int destX, int destY, int w, int h) {
+        src.checkRect(srcX, srcY, w, h);
+        checkRect(destX, destY, w, h);
+        own();
+        if (src == this && srcY < destY) {
+            // Overlapping copy within one grid: go top down so no row is overwritten before it is read.
+            for (int row = h - 1; row >= 0; row -= 1) {
+                copyRow(src, srcX, srcY + row, destX, destY + row, w);
+            }
+        } else {
+            for (int row = 0; row < h; row += 1) {
+                copyRow(src, srcX, srcY + row, destX, destY + row, w);
+            }
+        }
+    }
+
+    /**
+     * Copies a whole row of tiles from another grid of the same width.
+     * @param src the grid to copy from
+     * @param srcY the row to copy
+     * @param destY the row in this grid to copy to
+     */
+    public void copyRow(TileGrid src, int srcY, int destY) {
+        if (src.width != width) {
+            throw new IllegalArgumentException("row widths differ: " + src.width + " and " + width);
+        }
+        copyRect(src, 0, srcY, 0, destY, width, 1);
+    }
+
+    /**
+     * Makes a copy of this grid.
+     * @return the copy
+     */
+    public TileGrid copy() {
+        return new TileGrid(this);
+    }
+
+    /**
+     * Makes a copy of this grid without copying its cells, which this grid and the snapshot share
+     * until either is written to. A snapshot taken on one thread may be read on another while
+     * this grid is written to, as long as it is handed over safely, for example through an
+     * executor; the snapshot itself should then not be written to.
+     * @return the snapshot
+     */
+    public TileGrid snapshot() {
+        shared = true;
+        return new TileGrid(width, height, ids);
+    }
+
+    /**
+     * Converts the grid to a String, top row first, like {@link TETile#toString(TETile[][])}.
+     * @return string representation of the grid
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder((width + 1) * height);
+        for (int y = height - 1; y >= 0; y -= 1) {
+            int row = y * width;
+            for (int x = 0; x < width; x += 1) {
+                sb.append(Tileset.byId(ids[row + x]).character());
+            }
+            sb.append('\n');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Checks if two grids hold the same tiles.
+     * @param o object to compare with
+     * @return boolean representing equality
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (o == this) {
+            return true;
+        }
+        return o instanceof TileGrid other && other.width == width && Arrays.equals(other.ids, ids);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * width + Arrays.hashCode(ids);
+    }
+
+    private void copyRow(TileGrid src, int srcX, int srcY, int destX, int destY, int w) {
+        System.arraycopy(src.ids, srcY * src.width + srcX, ids, destY * width + destX, w);
+    }
+
+    /**
+     * Copies the cells before a write if a snapshot shares them.
+     */
+    private void own() {
+        if (shared) {
+            ids = ids.clone();
+            shared = false;
+        }
+    }
+
+    private void checkBounds(int x, int y) {
+        if (!isValid(x, y)) {
+            throw new IndexOutOfBoundsException("(" + x + ", " + y + ") is outside the "
+                    + width + "x" + height + " grid");
+        }
+    }
+
+    private void checkRect(int x, int y, int w, int h) {
+        if (w < 0 || h < 0 || x < 0 || y < 0 || x + w > width || y + h > height) {
+            throw new IndexOutOfBoundsException("rectangle at (" + x + ", " + y + ") of size "
+                    + w + "x" + h + " is outside the " + width + "x" + height + " grid");
+        }
+    }
+
+    private static short idOf(TETile tile) {
+        return idOf(tile.id());
+    }
+
+    private static short idOf(int id) {
+        if (!Tileset.isRegistered(id)) {
+            throw new IllegalArgumentException("tile id " + id + " is not registered in Tileset");
+        }
+        return (short) id;
+    }
+}
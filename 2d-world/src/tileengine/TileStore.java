@@ -0,0 +1,96 @@
+package tileengine;
+
+/**
+ * The cell operations the game needs from a map of tiles, whatever holds the tiles. A
+ * {@link TileGrid} keeps them in a short array on the heap; a {@link MappedTileStore} keeps them
+ * in a memory-mapped file.
+ *
+ * Cells are stored as tile ids (see {@link TETile#id()}) in row-major order, so every tile put in
+ * a store must be registered in {@link Tileset}. As with TETile[][] arrays, (0, 0) is the bottom
+ * left cell.
+ */
+public interface TileStore {
+
+    /**
+     * Width of the map.
+     * @return width in tiles
+     */
+    int width();
+
+    /**
+     * Height of the map.
+     * @return height in tiles
+     */
+    int height();
+
+    /**
+     * Returns the id of the tile at a position.
+     * @param x the x-coordinate
+     * @param y the y-coordinate
+     * @return the tile id
+     */
+    int getId(int x, int y);
+
+    /**
+     * Returns the id of the tile at a row-major index.
+     * @param index the cell index, see {@link #index(int, int)}
+     * @return the tile id
+     */
+    int getId(int index);
+
+    /**
+     * Puts a tile at a position.
+     * @param x the x-coordinate
+     * @param y the y-coordinate
+     * @param tile the tile, which must be registered in Tileset
+     */
+    void set(int x, int y, TETile tile);
+
+    /**
+     * Puts a tile id at a row-major index.
+     * @param index the cell index, see {@link #index(int, int)}
+     * @param id the tile id, which must be registered in Tileset
+     */
+    void setId(int index, int id);
+
+    /**
+     * Checks whether a position is inside the map.
+     * @param x the x-coordinate
+     * @param y the y-coordinate
+     * @return true if (x, y) is a cell of the map
+     */
+    default boolean isValid(int x, int y) {
+        return x >= 0 && x < width() && y >= 0 && y < height();
+    }
+
+    /**
+     * Index of a cell in row-major order, as used by {@link #getId(int)}.
+     * @param x the x-coordinate
+     * @param y the y-coordinate
+     * @return y * width + x
+     */
+    default int index(int x, int y) {
+        return y * width() + x;
+    }
+
+    /**
+     * Returns the tile at a position.
+     * @param x the x-coordinate
+     * @param y the y-coordinate
+     * @return the tile
+     */
+    default TETile get(int x, int y) {
+        return Tileset.byId(getId(x, y));
+    }
+
+    /**
+     * Checks whether the tile at a position has the same id as the given tile.
+     * @param x the x-coordinate
+     * @param y the y-coordinate
+     * @param tile the tile to compare with
+     * @return true if the cell holds that tile
+     */
+    default boolean is(int x, int y, TETile tile) {
+        return getId(x, y) == tile.id();
+    }
+}
@@ -48,6 +48,79 @@ public class Tileset {
     public static final TETile AVATAR_D = new TETile('@', Color.white, Color.black, "avatar", "photos/avatar_D.png", 17);
     public static final TETile OSKI_D = new TETile('@', Color.white, Color.black, "avatar", "photos/oski_D.png", 18);
 
+    // Every tile above, indexed by id. Add new tiles here too so TileGrid can store them.
+    private static final TETile[] BY_ID = index(WALL, FLOOR, NOTHING, GRASS, WATER, FLOWER, LOCKED_DOOR,
+            UNLOCKED_DOOR, SAND, MOUNTAIN, TREE, CELL, AVATAR, OSKI, BEER, CLIPPER_CARD, AVATAR_D, OSKI_D);
+
+    // Tiles that block sight, as one bit per id
+    private static final long OPAQUE = bits(WALL, LOCKED_DOOR, MOUNTAIN, TREE, CELL);
+
+    /**
+     * Looks up a tile by its id.
+     * @param id the id of the tile
+     * @return the registered tile with that id
+     * @throws IllegalArgumentException if no tile has that id
+     */
+    public static TETile byId(int id) {
+        if (!isRegistered(id)) {
+            throw new IllegalArgumentException("no tile with id " + id);
+        }
+        return BY_ID[id];
+    }
+
+    /**
+     * Checks whether a tile with the given id is registered.
+     * @param id the id to check
+     * @return true if {@link #byId(int)} would find a tile
+     */
+    public static boolean isRegistered(int id) {
+        return id >= 0 && id < BY_ID.length && BY_ID[id] != null;
+    }
+
+    /**
+     * Checks whether a tile blocks sight, so that the tiles behind it cannot be seen.
+     * @param id the id of the tile
+     * @return true for walls and other solid tiles
+     */
+    public static boolean blocksSight(int id) {
+        return id >= 0 && id < Long.SIZE && (OPAQUE & (1L << id)) != 0;
+    }
+
+    /**
+     * Builds a set of tiles as one bit per id.
+     * @param tiles the tiles, whose ids must be below 64
+     * @return the bits
+     */
+    private static long bits(TETile... tiles) {
+        long bits = 0;
+        for (TETile tile : tiles) {
+            if (tile.id() >= Long.SIZE) {
+                throw new IllegalStateException("tile id " + tile.id() + " does not fit in a bit set");
+            }
+            bits |= 1L << tile.id();
+        }
+        return bits;
+    }
+
+    /**
+     * Builds the id lookup table, making sure no two tiles share an id.
+     * @param tiles the tiles to index
+     * @return an array holding each tile at its id
+     */
+    private static TETile[] index(TETile... tiles) {
+        int maxId = 0;
+        for (TETile tile : tiles) {
+            maxId = Math.max(maxId, tile.id());
+        }
+        TETile[] byId = new TETile[maxId + 1];
+        for (TETile tile : tiles) {
+            if (tile.id() < 0 || tile.id() > Short.MAX_VALUE || byId[tile.id()] != null) {
+                throw new IllegalStateException("tile id " + tile.id() + " is invalid or used twice");
+            }
+            byId[tile.id()] = tile;
+        }
+        return byId;
+    }
 
 }
 
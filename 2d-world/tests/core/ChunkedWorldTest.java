@@ -0,0 +1,43 @@
+package core;
+
+import org.junit.jupiter.api.Test;
+import tileengine.TileGrid;
+import tileengine.Tileset;
+
+import java.util.Random;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public class ChunkedWorldTest {
+    @Test
+    public void sameInfiniteScriptPlaysTheSameEveryTime() {
+        // Picking items up changes chunks, which a later game must not find left behind
+        StringBuilder keys = new StringBuilder("I4242S");
+        Random random = new Random(4242);
+        for (int i = 0; i < 300; i++) {
+            char key = "wasd".charAt(random.nextInt(4));
+            for (int steps = random.nextInt(20); steps >= 0; steps--) {
+                keys.append(key).append('e');
+            }
+        }
+        keys.append(":q");
+
+        World first = new World();
+        TileGrid firstMap = first.runHeadless(new ScriptedInput(keys.toString()));
+        World second = new World();
+        TileGrid secondMap = second.runHeadless(new ScriptedInput(keys.toString()));
+
+        assertThat(second.stateHash()).isEqualTo(first.stateHash());
+        assertThat(secondMap).isEqualTo(firstMap);
+    }
+
+    @Test
+    public void changedChunkOutlivesEvictionWithoutChunkDirectory() {
+        ChunkedWorld world = new ChunkedWorld(7, null, 1);
+        world.set(3, 4, Tileset.FLOWER);
+        world.get(10 * ChunkedWorld.CHUNK_SIZE, 0);
+
+        assertThat(world.residentChunks()).isEqualTo(1);
+        assertThat(world.get(3, 4)).isEqualTo(Tileset.FLOWER);
+    }
+}
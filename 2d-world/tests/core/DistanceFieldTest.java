@@ -0,0 +1,111 @@
+package core;
+
+import org.junit.jupiter.api.Test;
+import tileengine.TileGrid;
+import tileengine.Tileset;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Random;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.truth.Truth.assertWithMessage;
+
+public class DistanceFieldTest {
+    private static final int WIDTH = 30;
+    private static final int HEIGHT = 20;
+
+    @Test
+    public void distancesAlongACorridor() {
+        TileGrid world = new TileGrid(10, 3, Tileset.WALL);
+        world.fillRect(0, 1, 10, 1, Tileset.GRASS);
+        DistanceField field = new DistanceField(world, PathFinder.GRASS, 2, 1);
+
+        assertThat(field.distance(2, 1)).isEqualTo(0);
+        assertThat(field.distance(9, 1)).isEqualTo(7);
+        assertThat(field.distance(0, 1)).isEqualTo(2);
+        assertThat(field.distance(5, 0)).isEqualTo(DistanceField.UNREACHABLE);
+        assertThat(field.nextStep(5, 1)).isEqualTo(world.index(4, 1));
+        assertThat(field.nextStep(2, 1)).isEqualTo(-1);
+
+        world.set(4, 1, Tileset.WALL);
+        field.update(4, 1);
+        assertThat(field.distance(9, 1)).isEqualTo(DistanceField.UNREACHABLE);
+
+        field.moveSource(3, 1);
+        assertThat(field.distance(0, 1)).isEqualTo(3);
+    }
+
+    /**
+     * Steps, teleports and tile changes on random maps, with the whole field checked against a
+     * breadth-first search after each one.
+     */
+    @Test
+    public void incrementalRepairMatchesBreadthFirstSearch() {
+        Random random = new Random(17);
+        for (int map = 0; map < 100; map++) {
+            TileGrid world = new TileGrid(WIDTH, HEIGHT);
+            for (int i = 0; i < WIDTH * HEIGHT; i++) {
+                world.setId(i, random.nextInt(100) < 30 ? Tileset.WALL.id() : Tileset.GRASS.id());
+            }
+            int source = random.nextInt(WIDTH * HEIGHT);
+            DistanceField field = new DistanceField(world, PathFinder.GRASS, source % WIDTH, source / WIDTH);
+            assertMatches(field, world, source, "map " + map + " at the start");
+
+            for (int change = 0; change < 200; change++) {
+                int kind = random.nextInt(3);
+                if (kind == 0) {
+                    int x = random.nextInt(WIDTH);
+                    int y = random.nextInt(HEIGHT);
+                    world.set(x, y, world.is(x, y, Tileset.GRASS) ? Tileset.WALL : Tileset.GRASS);
+                    field.update(x, y);
+                } else if (kind == 1) {
+                    int direction = random.nextInt(4);
+                    int x = source % WIDTH + (direction == 0 ? 1 : direction == 1 ? -1 : 0);
+                    int y = source / WIDTH + (direction == 2 ? 1 : direction == 3 ? -1 : 0);
+                    if (world.isValid(x, y) && world.is(x, y, Tileset.GRASS)) {
+                        source = world.index(x, y);
+                        field.moveSource(x, y);
+                    }
+                } else {
+                    source = random.nextInt(WIDTH * HEIGHT);
+                    field.moveSource(source % WIDTH, source / WIDTH);
+                }
+                assertMatches(field, world, source, "map " + map + " after change " + change);
+            }
+        }
+    }
+
+    private static void assertMatches(DistanceField field, TileGrid world, int source, String when) {
+        int[] actual = new int[WIDTH * HEIGHT];
+        for (int cell = 0; cell < actual.length; cell++) {
+            actual[cell] = field.distance(cell % WIDTH, cell / WIDTH);
+        }
+        assertWithMessage(when).that(actual).isEqualTo(breadthFirstSearch(world, source));
+    }
+
+    private static int[] breadthFirstSearch(TileGrid world, int source) {
+        int[] distance = new int[WIDTH * HEIGHT];
+        Arrays.fill(distance, DistanceField.UNREACHABLE);
+        distance[source] = 0;
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        queue.add(source);
+        int[][] moves = {{1, 0}, {-1, 0}, {0, 1}, {0, -1}};
+        while (!queue.isEmpty()) {
+            int cell = queue.poll();
+            for (int[] move : moves) {
+                int x = cell % WIDTH + move[0];
+                int y = cell / WIDTH + move[1];
+                if (!world.isValid(x, y) || !world.is(x, y, Tileset.GRASS)) {
+                    continue;
+                }
+                int next = world.index(x, y);
+                if (distance[next] == DistanceField.UNREACHABLE) {
+                    distance[next] = distance[cell] + 1;
+                    queue.add(next);
+                }
+            }
+        }
+        return distance;
+    }
+}
@@ -0,0 +1,117 @@
+package core;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.truth.Truth.assertWithMessage;
+
+public class EntityIndexTest {
+    @Test
+    public void findsEntitiesNearAPosition() {
+        EntityIndex<String> index = new EntityIndex<>();
+        int beer = index.add("beer", 3, 4);
+        int card = index.add("card", -20, 4);
+        int oski = index.add("oski", 40, -33);
+
+        assertThat(index.within(2, 5, 1)).isEqualTo(new int[]{beer});
+        assertThat(index.withinRect(-20, -40, 40, 4)).isEqualTo(new int[]{card, beer, oski});
+        assertThat(index.nearest(0, 0, 100, value -> true)).isEqualTo(beer);
+        assertThat(index.nearest(0, 0, 100, "oski"::equals)).isEqualTo(oski);
+        assertThat(index.nearest(0, 0, 30, "oski"::equals)).isEqualTo(-1);
+
+        index.move(oski, -19, 5);
+        index.remove(beer);
+        assertThat(index.contains(beer)).isFalse();
+        assertThat(index.size()).isEqualTo(2);
+        assertThat(index.within(-20, 4, 1)).isEqualTo(new int[]{card, oski});
+        assertThat(index.within(40, -33, 5)).isEqualTo(new int[0]);
+    }
+
+    /**
+     * Random adds, moves and removals of a few entities over a wide area, so buckets keep being
+     * emptied and taken out of the table, checked against a plain list after each change.
+     */
+    @Test
+    public void matchesAListAfterRandomChanges() {
+        Random random = new Random(5);
+        EntityIndex<Integer> index = new EntityIndex<>();
+        List<int[]> expected = new ArrayList<>(); // {handle, value, x, y}
+        for (int change = 0; change < 20000; change++) {
+            int kind = random.nextInt(10);
+            int x = random.nextInt(2000) - 1000;
+            int y = random.nextInt(2000) - 1000;
+            if (expected.isEmpty() || kind < 3 && expected.size() < 60) {
+                int value = random.nextInt(3);
+                expected.add(new int[]{index.add(value, x, y), value, x, y});
+            } else if (kind < 6) {
+                int[] entity = expected.remove(random.nextInt(expected.size()));
+                index.remove(entity[0]);
+            } else if (kind < 8) {
+                int[] entity = expected.get(random.nextInt(expected.size()));
+                // Moves within a bucket as well as to another one
+                int nx = kind == 6 ? entity[2] + random.nextInt(3) - 1 : x;
+                int ny = kind == 6 ? entity[3] + random.nextInt(3) - 1 : y;
+                index.move(entity[0], nx, ny);
+                entity[2] = nx;
+                entity[3] = ny;
+            }
+
+            String when = "after change " + change;
+            int radius = random.nextInt(400);
+            int want = random.nextInt(3);
+            assertWithMessage(when).that(index.size()).isEqualTo(expected.size());
+            assertWithMessage(when).that(index.within(x, y, radius)).isEqualTo(within(expected, x, y, radius));
+            int nearest = index.nearest(x, y, radius, value -> value == want);
+            assertWithMessage(when).that(nearest).isEqualTo(nearest(expected, x, y, radius, want));
+        }
+    }
+
+    private static int[] within(List<int[]> entities, int x, int y, int radius) {
+        List<int[]> found = new ArrayList<>();
+        for (int[] entity : entities) {
+            if (distance(entity, x, y) <= radius) {
+                found.add(entity);
+            }
+        }
+        found.sort((a, b) -> a[2] != b[2] ? Integer.compare(a[2], b[2]) : Integer.compare(a[3], b[3]));
+        return found.stream().mapToInt(entity -> entity[0]).toArray();
+    }
+
+    private static int nearest(List<int[]> entities, int x, int y, int radius, int want) {
+        int[] best = null;
+        for (int[] entity : entities) {
+            if (entity[1] != want || distance(entity, x, y) > radius) {
+                continue;
+            }
+            if (best == null || compare(entity, best, x, y) < 0) {
+                best = entity;
+            }
+        }
+        return best == null ? -1 : best[0];
+    }
+
+    /**
+     * Orders entities as {@link EntityIndex#nearest} breaks ties: by distance in moves, then in a
+     * straight line, then by position.
+     */
+    private static int compare(int[] a, int[] b, int x, int y) {
+        int byMoves = Integer.compare(distance(a, x, y), distance(b, x, y));
+        if (byMoves != 0) {
+            return byMoves;
+        }
+        long aSquared = (long) (a[2] - x) * (a[2] - x) + (long) (a[3] - y) * (a[3] - y);
+        long bSquared = (long) (b[2] - x) * (b[2] - x) + (long) (b[3] - y) * (b[3] - y);
+        if (aSquared != bSquared) {
+            return Long.compare(aSquared, bSquared);
+        }
+        return a[2] != b[2] ? Integer.compare(a[2], b[2]) : Integer.compare(a[3], b[3]);
+    }
+
+    private static int distance(int[] entity, int x, int y) {
+        return Math.max(Math.abs(entity[2] - x), Math.abs(entity[3] - y));
+    }
+}
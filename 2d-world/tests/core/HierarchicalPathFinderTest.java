@@ -0,0 +1,127 @@
+package core;
+
+import org.junit.jupiter.api.Test;
+import tileengine.TileGrid;
+import tileengine.Tileset;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Random;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.truth.Truth.assertWithMessage;
+
+public class HierarchicalPathFinderTest {
+    private static final int WIDTH = 70;
+    private static final int HEIGHT = 45;
+
+    @Test
+    public void routeThroughSeveralClusters() {
+        TileGrid world = new TileGrid(WIDTH, HEIGHT, Tileset.WALL);
+        world.fillRect(1, 1, WIDTH - 2, 1, Tileset.GRASS);
+        world.fillRect(WIDTH - 2, 1, 1, HEIGHT - 2, Tileset.GRASS);
+        HierarchicalPathFinder finder = new HierarchicalPathFinder(world, PathFinder.GRASS);
+        assertThat(finder.clusterCount()).isEqualTo(15);
+
+        int moves = walk(world, finder.findRoute(1, 1, WIDTH - 2, HEIGHT - 2), 1, 1, WIDTH - 2, HEIGHT - 2);
+        assertThat(moves).isEqualTo(WIDTH - 3 + HEIGHT - 3);
+
+        world.set(WIDTH - 2, 20, Tileset.WALL);
+        finder.update(WIDTH - 2, 20);
+        assertThat(finder.findRoute(1, 1, WIDTH - 2, HEIGHT - 2)).isNull();
+        assertThat(finder.findRoute(3, 1, 3, 1).hasNext()).isFalse();
+    }
+
+    /**
+     * Random queries on random maps, with tiles changed between them: a route is found exactly
+     * when breadth-first search finds a path, and walking it takes legal moves to the goal.
+     */
+    @Test
+    public void agreesWithBreadthFirstSearchOnReachability() {
+        Random random = new Random(18);
+        for (int map = 0; map < 20; map++) {
+            TileGrid world = new TileGrid(WIDTH, HEIGHT);
+            for (int i = 0; i < WIDTH * HEIGHT; i++) {
+                world.setId(i, random.nextInt(100) < 35 ? Tileset.WALL.id() : Tileset.GRASS.id());
+            }
+            HierarchicalPathFinder finder = new HierarchicalPathFinder(world, PathFinder.GRASS);
+            for (int query = 0; query < 200; query++) {
+                for (int change = random.nextInt(4); change > 0; change--) {
+                    int x = random.nextInt(WIDTH);
+                    int y = random.nextInt(HEIGHT);
+                    world.set(x, y, world.is(x, y, Tileset.GRASS) ? Tileset.WALL : Tileset.GRASS);
+                    finder.update(x, y);
+                }
+                int fromX = random.nextInt(WIDTH);
+                int fromY = random.nextInt(HEIGHT);
+                int toX = random.nextInt(WIDTH);
+                int toY = random.nextInt(HEIGHT);
+                int shortest = shortestPath(world, fromX, fromY, toX, toY);
+                HierarchicalPathFinder.Route route = finder.findRoute(fromX, fromY, toX, toY);
+                String where = "map " + map + ", query " + query + " from (" + fromX + ", " + fromY
+                        + ") to (" + toX + ", " + toY + ")";
+                if (shortest < 0) {
+                    assertWithMessage(where).that(route).isNull();
+                } else {
+                    assertWithMessage(where).that(route).isNotNull();
+                    assertWithMessage(where).that(walk(world, route, fromX, fromY, toX, toY)).isAtLeast(shortest);
+                }
+            }
+        }
+    }
+
+    /**
+     * Walks a route, checking that every move is to a neighbouring passable cell, or the goal.
+     * @return the number of moves taken to reach the goal.
+     */
+    private static int walk(TileGrid world, HierarchicalPathFinder.Route route, int fromX, int fromY,
+                            int toX, int toY) {
+        int cell = world.index(fromX, fromY);
+        int goal = world.index(toX, toY);
+        int moves = 0;
+        while (route.hasNext()) {
+            int next = route.next();
+            int dx = Math.abs(next % WIDTH - cell % WIDTH);
+            int dy = Math.abs(next / WIDTH - cell / WIDTH);
+            assertThat(dx + dy).isEqualTo(1);
+            assertThat(next == goal || world.getId(next) == Tileset.GRASS.id()).isTrue();
+            cell = next;
+            moves++;
+        }
+        assertThat(cell).isEqualTo(goal);
+        return moves;
+    }
+
+    /**
+     * The number of moves on a shortest path, through grass except for the start and goal, or -1.
+     */
+    private static int shortestPath(TileGrid world, int fromX, int fromY, int toX, int toY) {
+        int[] distance = new int[WIDTH * HEIGHT];
+        Arrays.fill(distance, -1);
+        int start = world.index(fromX, fromY);
+        int goal = world.index(toX, toY);
+        distance[start] = 0;
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        queue.add(start);
+        int[][] moves = {{1, 0}, {-1, 0}, {0, 1}, {0, -1}};
+        while (!queue.isEmpty()) {
+            int cell = queue.poll();
+            if (cell == goal) {
+                return distance[cell];
+            }
+            for (int[] move : moves) {
+                int x = cell % WIDTH + move[0];
+                int y = cell / WIDTH + move[1];
+                if (!world.isValid(x, y)) {
+                    continue;
+                }
+                int next = world.index(x, y);
+                if (distance[next] < 0 && (next == goal || world.is(x, y, Tileset.GRASS))) {
+                    distance[next] = distance[cell] + 1;
+                    queue.add(next);
+                }
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,109 @@
+package core;
+
+import org.junit.jupiter.api.Test;
+import tileengine.TETile;
+import tileengine.Tileset;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.truth.Truth.assertWithMessage;
+
+public class ItemIndexTest {
+    @Test
+    public void putPickUpAndRemove() {
+        ItemIndex items = new ItemIndex();
+        items.put(3, 4, Tileset.BEER);
+        items.put(-7, 2, Tileset.CLIPPER_CARD);
+        items.put(5, -1, Tileset.BEER);
+
+        assertThat(items.size()).isEqualTo(3);
+        assertThat(items.get(-7, 2)).isEqualTo(Tileset.CLIPPER_CARD);
+        assertThat(items.get(4, 3)).isNull();
+        assertThat(items.pickUp(3, 4)).isTrue();
+        assertThat(items.pickUp(3, 4)).isFalse();
+        assertThat(items.isPickedUp(3, 4)).isTrue();
+
+        // The last entry takes the removed one's number, and keeps its picked-up flag
+        items.pickUp(5, -1);
+        assertThat(items.remove(3, 4)).isTrue();
+        assertThat(items.remove(3, 4)).isFalse();
+        assertThat(items.size()).isEqualTo(2);
+        assertThat(items.indexOf(5, -1)).isEqualTo(0);
+        assertThat(items.isPickedUp(0)).isTrue();
+        assertThat(items.isPickedUp(1)).isFalse();
+        assertThat(items.contains(3, 4)).isFalse();
+    }
+
+    @Test
+    public void packRoundTrips() {
+        long packed = ItemIndex.pack(-123456, 789);
+        assertThat(ItemIndex.unpackX(packed)).isEqualTo(-123456);
+        assertThat(ItemIndex.unpackY(packed)).isEqualTo(789);
+    }
+
+    /**
+     * Random puts, pick-ups and removals on a small area, so that probe runs collide and the
+     * backward-shift delete has entries to move, checked against a plain list after each one.
+     */
+    @Test
+    public void matchesAListAfterRandomChanges() {
+        Random random = new Random(12);
+        ItemIndex items = new ItemIndex();
+        List<int[]> expected = new ArrayList<>(); // {x, y, tile id, picked up}
+        for (int change = 0; change < 20000; change++) {
+            int x = random.nextInt(24) - 12;
+            int y = random.nextInt(24) - 12;
+            int found = find(expected, x, y);
+            int kind = random.nextInt(10);
+            if (kind < 5) {
+                TETile item = random.nextBoolean() ? Tileset.BEER : Tileset.CLIPPER_CARD;
+                boolean pickedUp = random.nextInt(4) == 0;
+                items.put(x, y, item, pickedUp);
+                int[] entry = {x, y, item.id(), pickedUp ? 1 : 0};
+                if (found < 0) {
+                    expected.add(entry);
+                } else {
+                    expected.set(found, entry);
+                }
+            } else if (kind < 7) {
+                assertThat(items.pickUp(x, y)).isEqualTo(found >= 0 && expected.get(found)[3] == 0);
+                if (found >= 0) {
+                    expected.get(found)[3] = 1;
+                }
+            } else {
+                assertThat(items.remove(x, y)).isEqualTo(found >= 0);
+                if (found >= 0) {
+                    int[] last = expected.remove(expected.size() - 1);
+                    if (found < expected.size()) {
+                        expected.set(found, last);
+                    }
+                }
+            }
+
+            String where = "after change " + change;
+            assertWithMessage(where).that(items.size()).isEqualTo(expected.size());
+            for (int i = 0; i < expected.size(); i++) {
+                int[] entry = expected.get(i);
+                assertWithMessage(where).that(items.indexOf(entry[0], entry[1])).isEqualTo(i);
+                assertWithMessage(where).that(items.item(i).id()).isEqualTo(entry[2]);
+                assertWithMessage(where).that(items.isPickedUp(i)).isEqualTo(entry[3] == 1);
+            }
+            int missingX = random.nextInt(24) - 12;
+            int missingY = random.nextInt(24) - 12;
+            assertWithMessage(where).that(items.contains(missingX, missingY))
+                    .isEqualTo(find(expected, missingX, missingY) >= 0);
+        }
+    }
+
+    private static int find(List<int[]> entries, int x, int y) {
+        for (int i = 0; i < entries.size(); i++) {
+            if (entries.get(i)[0] == x && entries.get(i)[1] == y) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
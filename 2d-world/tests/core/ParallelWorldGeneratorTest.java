@@ -0,0 +1,46 @@
+package core;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static com.google.common.truth.Truth.assertWithMessage;
+
+public class ParallelWorldGeneratorTest {
+    private static final long[] SEEDS = {1, 42, 123456789};
+    private static final int[][] SIZES = {{70, 45}, {64, 64}, {200, 130}, {300, 300}};
+
+    @Test
+    public void sameWorldWhateverTheNumberOfThreads() {
+        ForkJoinPool single = new ForkJoinPool(1);
+        ForkJoinPool many = new ForkJoinPool(8);
+        try {
+            for (long seed : SEEDS) {
+                for (int[] size : SIZES) {
+                    String when = "seed " + seed + ", " + size[0] + "x" + size[1];
+                    GeneratedWorld expected = ParallelWorldGenerator.generate(seed, size[0], size[1], single);
+                    GeneratedWorld actual = ParallelWorldGenerator.generate(seed, size[0], size[1], many);
+
+                    assertWithMessage(when).that(actual.getGrid()).isEqualTo(expected.getGrid());
+                    assertWithMessage(when).that(positions(actual.getHallwayCoords()))
+                            .isEqualTo(positions(expected.getHallwayCoords()));
+                    assertWithMessage(when).that(positions(actual.getAlcoholPositions()))
+                            .isEqualTo(positions(expected.getAlcoholPositions()));
+                    assertWithMessage(when).that(positions(actual.getClipperCardPositions()))
+                            .isEqualTo(positions(expected.getClipperCardPositions()));
+                    assertWithMessage(when).that(actual.getOskiPosition()).isEqualTo(expected.getOskiPosition());
+                    assertWithMessage(when).that(actual.getAvatarPosition()).isEqualTo(expected.getAvatarPosition());
+                }
+            }
+        } finally {
+            single.shutdown();
+            many.shutdown();
+        }
+    }
+
+    private static List<String> positions(List<int[]> positions) {
+        return positions.stream().map(Arrays::toString).toList();
+    }
+}
@@ -0,0 +1,76 @@
+package core;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import tileengine.TileGrid;
+import tileengine.Tileset;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class ReplayTest {
+    private static final long SEED = 12345;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void gameEndedByOskiReplaysToTheSameEnding() {
+        Path log = directory.resolve("game.log");
+        // Asks Oski how he is, refuses to help twice, and is eaten
+        World recorded = record(log, walkToOski() + "e122");
+
+        World replayed = Replay.run(log);
+
+        assertThat(replayed.getState()).isEqualTo(GameState.END_SCREEN);
+        assertThat(replayed.stateHash()).isEqualTo(recorded.stateHash());
+    }
+
+    @Test
+    public void differentEndingIsCaught() throws IOException {
+        Path log = directory.resolve("game.log");
+        record(log, walkToOski() + "e122");
+        // The last choice agrees to help instead, so the game goes on
+        byte[] bytes = Files.readAllBytes(log);
+        int end = bytes.length - 1 - 1 - Long.BYTES;
+        assertThat((int) bytes[end - 1]).isEqualTo((int) '2');
+        bytes[end - 1] = '1';
+        Files.write(log, bytes);
+
+        assertThrows(IllegalStateException.class, () -> Replay.run(log));
+    }
+
+    private World record(Path log, String keys) {
+        World world = new World();
+        world.setDirectory(directory);
+        world.setRecording(log);
+        world.runHeadless(new ScriptedInput("n" + SEED + "s" + keys));
+        return world;
+    }
+
+    /**
+     * Finds the keys that walk the avatar next to Oski on a new map with the seed.
+     */
+    private static String walkToOski() {
+        World world = new World();
+        TileGrid map = world.startGame(SEED, World.WIDTH, World.HEIGHT);
+        int x = world.getAvatar().getX();
+        int y = world.getAvatar().getY();
+        int[] path = PathFinder.findPath(map, x, y, world.getOski().getX(), world.getOski().getY(),
+                PathFinder.GRASS);
+        StringBuilder keys = new StringBuilder();
+        for (int i = 0; i < path.length - 1; i++) {
+            int nextX = path[i] % map.width();
+            int nextY = path[i] / map.width();
+            keys.append(nextX > x ? 'd' : nextX < x ? 'a' : nextY > y ? 'w' : 's');
+            x = nextX;
+            y = nextY;
+        }
+        assertThat(map.is(x, y, Tileset.GRASS)).isTrue();
+        return keys.toString();
+    }
+}
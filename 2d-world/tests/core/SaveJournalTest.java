@@ -0,0 +1,160 @@
+package core;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import tileengine.TETile;
+import tileengine.TileGrid;
+import tileengine.Tileset;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public class SaveJournalTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    public void replaysCommittedBatchesOverTheSave() {
+        Path save = directory.resolve("save.bin");
+        Game game = new Game();
+        try (SaveJournal journal = new SaveJournal(save, game.data())) {
+            game.move(journal, 4, 5);
+            journal.commit();
+            game.pickUp(journal, 7, 3);
+            journal.commit();
+        }
+
+        assertSame(SaveState.loadSaveData(save.toString()), game.data());
+    }
+
+    @Test
+    public void tornLastBatchIsDropped() throws IOException {
+        Path save = directory.resolve("save.bin");
+        Game game = new Game();
+        SaveData afterFirstBatch;
+        try (SaveJournal journal = new SaveJournal(save, game.data())) {
+            game.move(journal, 4, 5);
+            journal.commit();
+            afterFirstBatch = game.data();
+            game.move(journal, 5, 5);
+            journal.commit();
+        }
+        Path journalFile = SaveJournal.journalFor(save);
+        byte[] bytes = Files.readAllBytes(journalFile);
+        Files.write(journalFile, Arrays.copyOf(bytes, bytes.length - 2));
+
+        assertSame(SaveState.loadSaveData(save.toString()), afterFirstBatch);
+    }
+
+    @Test
+    public void journalOfAnotherSaveIsIgnored() throws IOException {
+        Path save = directory.resolve("save.bin");
+        Game game = new Game();
+        try (SaveJournal journal = new SaveJournal(save, game.data())) {
+            game.move(journal, 4, 5);
+            journal.commit();
+        }
+        // As if the game crashed after writing a new save, before starting its journal
+        SaveData other = new SaveData(7, new TileGrid(12, 8, Tileset.GRASS), new int[]{1, 1}, null,
+                new ItemIndex(), List.of());
+        SaveState.write(other, save);
+
+        assertSame(SaveState.loadSaveData(save.toString()), other);
+    }
+
+    @Test
+    public void batchesAfterCompactionGoInTheNewJournal() throws IOException {
+        Path save = directory.resolve("save.bin");
+        Game game = new Game();
+        try (SaveJournal journal = new SaveJournal(save, game.data())) {
+            game.move(journal, 4, 5);
+            journal.commit();
+            journal.compact(game.data());
+            assertThat(journal.hasChanges()).isFalse();
+            game.pickUp(journal, 7, 3);
+            game.move(journal, 6, 6);
+            journal.commit();
+            assertThat(journal.hasChanges()).isTrue();
+        }
+
+        SaveData compacted = SaveState.decode(ByteBuffer.wrap(Files.readAllBytes(save)));
+        assertThat(compacted.getAvatarPosition()).isEqualTo(new int[]{4, 5});
+        assertSame(SaveState.loadSaveData(save.toString()), game.data());
+    }
+
+    @Test
+    public void newGameLeavesTheSaveAloneUntilCompacted() throws IOException {
+        Path save = directory.resolve("save.bin");
+        SaveData saved = new Game().data();
+        SaveState.write(saved, save);
+        byte[] before = Files.readAllBytes(save);
+
+        Game game = new Game();
+        try (SaveJournal journal = new SaveJournal(save)) {
+            game.move(journal, 4, 5);
+            journal.commit();
+            assertThat(journal.hasChanges()).isTrue();
+        }
+        assertThat(Files.readAllBytes(save)).isEqualTo(before);
+        assertThat(Files.exists(SaveJournal.journalFor(save))).isFalse();
+
+        try (SaveJournal journal = new SaveJournal(save)) {
+            journal.compact(game.data());
+        }
+        assertSame(SaveState.loadSaveData(save.toString()), game.data());
+    }
+
+    private static void assertSame(SaveData actual, SaveData expected) {
+        assertThat(actual).isNotNull();
+        assertThat(actual.getTiles()).isEqualTo(expected.getTiles());
+        assertThat(actual.getAvatarPosition()).isEqualTo(expected.getAvatarPosition());
+        assertThat(actual.getInventory()).isEqualTo(expected.getInventory());
+        assertThat(actual.getPickedUpItems().size()).isEqualTo(expected.getPickedUpItems().size());
+    }
+
+    /**
+     * A small game whose changes are journaled the way {@link World} journals them.
+     */
+    private static final class Game {
+        private final TileGrid tiles = new TileGrid(12, 8, Tileset.GRASS);
+        private final ItemIndex items = new ItemIndex();
+        private final List<TETile> inventory = new ArrayList<>();
+        private int[] avatar = {3, 5};
+
+        Game() {
+            tiles.set(avatar[0], avatar[1], Tileset.AVATAR);
+            items.put(7, 3, Tileset.BEER);
+            tiles.set(7, 3, Tileset.BEER);
+        }
+
+        void move(SaveJournal journal, int x, int y) {
+            tiles.set(avatar[0], avatar[1], Tileset.GRASS);
+            tiles.set(x, y, Tileset.AVATAR);
+            journal.tile(avatar[0], avatar[1], Tileset.GRASS);
+            journal.tile(x, y, Tileset.AVATAR);
+            journal.move(x, y);
+            avatar = new int[]{x, y};
+        }
+
+        void pickUp(SaveJournal journal, int x, int y) {
+            TETile item = items.get(x, y);
+            items.pickUp(x, y);
+            inventory.add(item);
+            tiles.set(x, y, Tileset.GRASS);
+            journal.tile(x, y, Tileset.GRASS);
+            journal.pickUp(x, y);
+            journal.item(item);
+        }
+
+        SaveData data() {
+            return new SaveData(42, tiles, avatar, null, items, inventory);
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package core;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import tileengine.TETile;
+import tileengine.TileGrid;
+import tileengine.Tileset;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class SaveStateTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    public void encodedSaveDecodesToTheSameState() {
+        SaveData saved = game();
+
+        SaveData loaded = SaveState.decode(ByteBuffer.wrap(SaveState.encode(saved)));
+
+        assertSame(loaded, saved);
+    }
+
+    @Test
+    public void savedFileLoadsToTheSameState() throws IOException {
+        Path save = directory.resolve(SaveState.SAVE_FILE);
+        SaveData saved = game();
+        SaveState.write(saved, save);
+
+        assertSame(SaveState.loadSaveData(save.toString()), saved);
+    }
+
+    @Test
+    public void saveWithoutMapOrCharactersRoundTrips() {
+        SaveData saved = new SaveData(-3, null, null, null, new ItemIndex(), List.of());
+
+        SaveData loaded = SaveState.decode(ByteBuffer.wrap(SaveState.encode(saved)));
+
+        assertSame(loaded, saved);
+    }
+
+    @Test
+    public void corruptedSaveIsRejected() throws IOException {
+        byte[] bytes = SaveState.encode(game());
+        bytes[bytes.length / 2] ^= 0x10;
+
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> SaveState.decode(ByteBuffer.wrap(bytes)));
+        assertThat(e.getMessage()).contains("checksum");
+
+        Path save = directory.resolve(SaveState.SAVE_FILE);
+        Files.write(save, bytes);
+        assertThat(SaveState.loadSaveData(save.toString())).isNull();
+    }
+
+    @Test
+    public void truncatedSaveIsRejected() {
+        byte[] bytes = SaveState.encode(game());
+
+        assertThrows(IllegalArgumentException.class,
+                () -> SaveState.decode(ByteBuffer.wrap(bytes, 0, bytes.length - 5)));
+        assertThrows(IllegalArgumentException.class, () -> SaveState.decode(ByteBuffer.wrap(bytes, 0, 2)));
+    }
+
+    @Test
+    public void runsThatDoNotFitTheMapAreRejected() {
+        // One tile fills the map, so it is a single run of 8 cells
+        SaveData saved = new SaveData(1, new TileGrid(4, 2, Tileset.GRASS), null, null, new ItemIndex(), List.of());
+
+        for (int length : new int[]{0, 7, 9}) {
+            byte[] bytes = withLastRunLength(SaveState.encode(saved), length);
+            IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                    () -> SaveState.decode(ByteBuffer.wrap(bytes)));
+            assertThat(e.getMessage()).contains("map runs");
+        }
+    }
+
+    @Test
+    public void legacySaveIsReadAndMigrates() throws IOException {
+        Path legacy = directory.resolve("save-file.txt");
+        try (InputStream in = SaveStateTest.class.getResourceAsStream("legacy-save-file.txt")) {
+            assertThat(in).isNotNull();
+            Files.copy(in, legacy);
+        }
+
+        SaveData loaded = SaveState.loadSaveData(legacy.toString());
+
+        assertThat(loaded).isNotNull();
+        assertThat(loaded.getSeed()).isEqualTo(1212112L);
+        assertThat(loaded.getTiles()).isNull();
+        assertThat(loaded.getAvatarPosition()).isEqualTo(new int[]{58, 11});
+        assertThat(loaded.getOskiPosition()).isEqualTo(new int[]{17, 17});
+        assertThat(loaded.getAlcoholPositions().size()).isEqualTo(2);
+        assertThat(loaded.getClipperCardPositions().size()).isEqualTo(1);
+        assertThat(loaded.getPickedUpItems().size()).isEqualTo(0);
+        assertThat(loaded.getInventory()).isEmpty();
+
+        Path save = directory.resolve(SaveState.SAVE_FILE);
+        SaveState.write(loaded, save);
+        assertSame(SaveState.loadSaveData(save.toString()), loaded);
+    }
+
+    /**
+     * A 12x8 map with a room, an avatar and Oski, two items of which one was picked up, and
+     * that item in the inventory.
+     */
+    private static SaveData game() {
+        TileGrid tiles = new TileGrid(12, 8, Tileset.NOTHING);
+        tiles.fillRect(1, 1, 10, 6, Tileset.WALL);
+        tiles.fillRect(2, 2, 8, 4, Tileset.GRASS);
+        tiles.set(4, 3, Tileset.AVATAR);
+        tiles.set(8, 4, Tileset.OSKI);
+        tiles.set(6, 2, Tileset.CLIPPER_CARD);
+        ItemIndex items = new ItemIndex();
+        items.put(3, 4, Tileset.BEER, true);
+        items.put(6, 2, Tileset.CLIPPER_CARD);
+        List<TETile> inventory = List.of(Tileset.BEER);
+        return new SaveData(61, tiles, new int[]{4, 3}, new int[]{8, 4}, items, inventory);
+    }
+
+    /**
+     * Changes the length of the last run of the map in a save with no items or inventory, and
+     * fixes up the checksum so only the run is wrong.
+     */
+    private static byte[] withLastRunLength(byte[] bytes, int length) {
+        // The run's one-byte length comes before the item and inventory counts and the checksum
+        int run = bytes.length - 3 * Integer.BYTES - 1;
+        bytes[run] = (byte) length;
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length - Integer.BYTES);
+        ByteBuffer.wrap(bytes).putInt(bytes.length - Integer.BYTES, (int) crc.getValue());
+        return bytes;
+    }
+
+    private static void assertSame(SaveData actual, SaveData expected) {
+        assertThat(actual).isNotNull();
+        assertThat(actual.getSeed()).isEqualTo(expected.getSeed());
+        assertThat(actual.getTiles()).isEqualTo(expected.getTiles());
+        assertThat(actual.getAvatarPosition()).isEqualTo(expected.getAvatarPosition());
+        assertThat(actual.getOskiPosition()).isEqualTo(expected.getOskiPosition());
+        assertThat(actual.getInventory()).isEqualTo(expected.getInventory());
+        ItemIndex actualItems = actual.getItems();
+        ItemIndex expectedItems = expected.getItems();
+        assertThat(actualItems.size()).isEqualTo(expectedItems.size());
+        for (int i = 0; i < expectedItems.size(); i++) {
+            assertThat(actualItems.item(i)).isEqualTo(expectedItems.item(i));
+            assertThat(actualItems.x(i)).isEqualTo(expectedItems.x(i));
+            assertThat(actualItems.y(i)).isEqualTo(expectedItems.y(i));
+            assertThat(actualItems.isPickedUp(i)).isEqualTo(expectedItems.isPickedUp(i));
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package tileengine;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.truth.Truth.assertWithMessage;
+
+public class TileGridTest {
+    /**
+     * Every way of writing to a grid, each tried as the first write after a snapshot.
+     */
+    private static final List<Consumer<TileGrid>> WRITES = List.of(
+            grid -> grid.set(1, 1, Tileset.WALL),
+            grid -> grid.setId(grid.index(2, 2), Tileset.FLOWER.id()),
+            grid -> grid.fill(Tileset.NOTHING),
+            grid -> grid.fillRect(4, 0, 2, 3, Tileset.WATER),
+            grid -> {
+                long[] mask = new long[2];
+                grid.rowMask(1, Tileset.GRASS, mask);
+                grid.replaceInRow(1, mask, Tileset.GRASS, Tileset.FLOWER);
+            },
+            grid -> grid.copyRect(grid, 0, 0, 0, 2, 70, 1),
+            grid -> grid.copyRow(new TileGrid(70, 3, Tileset.SAND), 0, 1));
+
+    @Test
+    public void writesToTheGridDoNotReachASnapshot() {
+        for (int i = 0; i < WRITES.size(); i++) {
+            TileGrid grid = newGrid();
+            TileGrid snapshot = grid.snapshot();
+            TileGrid before = grid.copy();
+
+            WRITES.get(i).accept(grid);
+            assertWithMessage("write " + i).that(grid).isNotEqualTo(before);
+            assertWithMessage("write " + i).that(snapshot).isEqualTo(before);
+        }
+    }
+
+    @Test
+    public void writesToASnapshotDoNotReachTheGrid() {
+        for (int i = 0; i < WRITES.size(); i++) {
+            TileGrid grid = newGrid();
+            TileGrid snapshot = grid.snapshot();
+            TileGrid before = grid.copy();
+
+            WRITES.get(i).accept(snapshot);
+            assertWithMessage("write " + i).that(snapshot).isNotEqualTo(before);
+            assertWithMessage("write " + i).that(grid).isEqualTo(before);
+        }
+    }
+
+    @Test
+    public void snapshotsTakenBetweenWritesKeepTheirOwnTiles() {
+        TileGrid grid = newGrid();
+        TileGrid first = grid.snapshot();
+        grid.set(1, 1, Tileset.WALL);
+        TileGrid second = grid.snapshot();
+        TileGrid third = grid.snapshot();
+        grid.set(1, 1, Tileset.FLOWER);
+
+        assertThat(first.get(1, 1)).isEqualTo(Tileset.GRASS);
+        assertThat(second.get(1, 1)).isEqualTo(Tileset.WALL);
+        assertThat(third.get(1, 1)).isEqualTo(Tileset.WALL);
+        assertThat(grid.get(1, 1)).isEqualTo(Tileset.FLOWER);
+    }
+
+    private static TileGrid newGrid() {
+        TileGrid grid = new TileGrid(70, 3, Tileset.GRASS);
+        grid.set(65, 1, Tileset.WALL);
+        grid.set(3, 0, Tileset.WALL);
+        return grid;
+    }
+}